@@ -1,9 +1,28 @@
 import com.Server;
+import com.VersionedServer;
 import com.server.ServerImpl;
+import com.server.admission.AdmissionQueue;
+import com.server.algorithm.LandmarkShortestPath;
+import com.server.algorithm.LazyStatefulShortestPath;
 import com.server.algorithm.MemoizedShortestPath;
 import com.server.algorithm.ShortestPathAlgorithm;
 import com.server.algorithm.StatefulShortestPath;
 import com.server.algorithm.StatelessShortestPath;
+import com.server.cache.ResultCache;
+import com.server.graph.ArrayGraphStore;
+import com.server.graph.BfsKernel;
+import com.server.graph.CompressedGraphStore;
+import com.server.graph.GraphStore;
+import com.server.graph.NodeOrdering;
+import com.server.graph.OffHeapGraphStore;
+import com.server.logging.BatchEventLog;
+import com.server.logging.SlowQueryLog;
+import com.server.replication.Replica;
+import com.server.replication.ReplicaLauncher;
+import com.server.shard.Shard;
+import com.server.shard.ShardLauncher;
+import com.server.shard.ShardedShortestPath;
+import com.transport.TcpServer;
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -15,13 +34,19 @@ import org.apache.logging.log4j.core.config.builder.api.ConfigurationBuilderFact
 import org.apache.logging.log4j.core.config.builder.api.LayoutComponentBuilder;
 import org.apache.logging.log4j.core.config.builder.impl.BuiltConfiguration;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
 import java.io.*;
+import java.lang.management.ManagementFactory;
 import java.rmi.AlreadyBoundException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Objects;
 import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Configures and runs RMI registry, the server and clients in separate processes.
@@ -29,8 +54,11 @@ import java.util.Scanner;
 public class Main {
 
     private static final String PROPERTIES_FILE_NAME = "system.properties";
-    private static final String ARTIFACT_PATH = System.getProperty("user.dir") +
-            "\\out\\artifacts\\client_jar";
+    private static final String METRICS_MBEAN_NAME = "com.server:type=ServerMetrics";
+    private static final long PROCESS_STARTUP_TIMEOUT_MILLIS = 60_000;
+    private static final String ARTIFACT_PATH = System.getProperty("user.dir") + File.separator +
+            "out" + File.separator + "artifacts" + File.separator + "client_jar";
+    private static final boolean IS_WINDOWS = System.getProperty("os.name").startsWith("Windows");
     private static Logger logger;
 
     public static void main(String[] args) throws IOException {
@@ -44,10 +72,35 @@ public class Main {
         // Server properties
         final String INITIAL_GRAPH_FILENAME = systemProperties.get("server.initialGraphFileName");
         final String SHORTEST_PATH_ALGORITHM = systemProperties.get("server.shortestPathAlgorithm").toLowerCase();
+        final String SERVER_GRAPH_STORE = systemProperties.get("server.graphStore").toLowerCase();
+        final String SERVER_NODE_ORDERING = systemProperties.get("server.nodeOrdering").toUpperCase();
+        final int SERVER_LANDMARK_COUNT = Integer.parseInt(systemProperties.get("server.landmarkCount"));
         final int MINIMUM_NUMBER_OF_QUERIES_TO_EXECUTE_PARALLEL
                 = Integer.parseInt(systemProperties.get("server.minNumberOfQueriesToExecuteParallel"));
         final String SERVER_REGISTRY_KEY = systemProperties.get("server.registryKey");
+        final String SERVER_TRANSPORT = systemProperties.get("server.transport").toLowerCase();
+        final int SERVER_TCP_PORT_NUMBER = Integer.parseInt(systemProperties.get("server.tcpPortNumber"));
         final int SERVER_NUM_OF_THREADS = Integer.parseInt(systemProperties.get("server.numOfThreads"));
+        final int SERVER_PARALLEL_BFS_THRESHOLD
+                = Integer.parseInt(systemProperties.get("server.parallelBfsThreshold"));
+        final int SERVER_SHARD_COUNT = Integer.parseInt(systemProperties.get("server.shardCount"));
+        final int SERVER_REPLICA_COUNT = Integer.parseInt(systemProperties.get("server.replicaCount"));
+        final long SERVER_REPLICA_MAX_STALENESS
+                = Long.parseLong(systemProperties.get("server.replicaMaxStalenessMillis"));
+        final int SERVER_RESULT_CACHE_SIZE = Integer.parseInt(systemProperties.get("server.resultCacheSize"));
+        final String SERVER_SNAPSHOT_FILE = systemProperties.get("server.snapshotFile");
+        final int SERVER_ADMISSION_QUEUE_DEPTH
+                = Integer.parseInt(systemProperties.get("server.admissionQueueDepth"));
+        final long SERVER_ADMISSION_TIMEOUT
+                = Long.parseLong(systemProperties.get("server.admissionTimeoutMillis"));
+        final int SERVER_LOG_RING_SIZE = Integer.parseInt(systemProperties.get("server.logRingSize"));
+        final int SERVER_LOG_SAMPLING_INTERVAL
+                = Integer.parseInt(systemProperties.get("server.logSamplingInterval"));
+        final int SERVER_LOG_MAX_OPERATIONS = Integer.parseInt(systemProperties.get("server.logMaxOperations"));
+        final long SERVER_SLOW_QUERY_THRESHOLD
+                = Long.parseLong(systemProperties.get("server.slowQueryThresholdMicros"));
+        final int SERVER_SLOW_QUERY_SAMPLING_INTERVAL
+                = Integer.parseInt(systemProperties.get("server.slowQuerySamplingInterval"));
 
         // Client properties
         final int CLIENT_COUNT = Integer.parseInt(systemProperties.get("client.count"));
@@ -57,6 +110,8 @@ public class Main {
         final String CLIENT_NODES_RANGE = systemProperties.get("client.nodesRange");
         final String CLIENT_QUERY_FREQUENCY = systemProperties.get("client.queryFrequency");
         final String CLIENT_ADD_FREQUENCY = systemProperties.get("client.addFrequency");
+        final String CLIENT_MAX_IN_FLIGHT_BATCHES = systemProperties.get("client.maxInFlightBatches");
+        final String CLIENT_READ_YOUR_WRITES = systemProperties.get("client.readYourWrites");
 
         initializeLoggerConfigs();
 
@@ -64,42 +119,93 @@ public class Main {
         logger.info("Starting the RMI registry on localhost and port number [" + REGISTRY_PORT_NUMBER + "]");
         Registry registry = LocateRegistry.createRegistry(REGISTRY_PORT_NUMBER);
 
-        // Creating and binding the remote server object
-        logger.info("Binding the remote server object and reading initial graph");
+        // Creating the server object
+        logger.info("Creating the server object and reading initial graph");
         ShortestPathAlgorithm shortestPathAlgorithm;
         String initialGraphFileName = Objects.requireNonNull(Main.class.getClassLoader().getResource
                 (INITIAL_GRAPH_FILENAME)).getPath();
+        GraphStore graphStore = createGraphStore(SERVER_GRAPH_STORE);
+        BfsKernel.setParallelExpansion(SERVER_PARALLEL_BFS_THRESHOLD, ForkJoinPool.commonPool());
+        NodeOrdering nodeOrdering = parseNodeOrdering(SERVER_NODE_ORDERING);
+        File snapshotFile = SERVER_SNAPSHOT_FILE.equalsIgnoreCase("none") ? null : new File(SERVER_SNAPSHOT_FILE);
         switch (SHORTEST_PATH_ALGORITHM) {
             case "stateless" ->  shortestPathAlgorithm
-                    = new StatelessShortestPath(initialGraphFileName);
+                    = new StatelessShortestPath(initialGraphFileName, graphStore, nodeOrdering);
             case "stateful" -> shortestPathAlgorithm
-                    = new StatefulShortestPath(initialGraphFileName);
+                    = new StatefulShortestPath(initialGraphFileName, graphStore, nodeOrdering, snapshotFile);
             case "memoized" -> shortestPathAlgorithm
-                    = new MemoizedShortestPath(initialGraphFileName);
+                    = new MemoizedShortestPath(initialGraphFileName, graphStore, nodeOrdering, snapshotFile);
+            case "lazy" -> shortestPathAlgorithm
+                    = new LazyStatefulShortestPath(initialGraphFileName, graphStore, nodeOrdering, snapshotFile);
+            case "landmark" -> shortestPathAlgorithm = new LandmarkShortestPath
+                    (initialGraphFileName, graphStore, nodeOrdering, SERVER_LANDMARK_COUNT);
+            case "sharded" -> shortestPathAlgorithm = new ShardedShortestPath(startShards
+                    (registry, SERVER_SHARD_COUNT, REGISTRY_PORT_NUMBER, initialGraphFileName));
             default -> {
                 shortestPathAlgorithm = null;
                 logger.error("Unknown server algorithm configured");
                 System.exit(-1);
             }
         }
-        Server server = new ServerImpl
+        if (graphStore.edgeCount() > 0)
+            logger.info("Graph loaded in the " + SERVER_GRAPH_STORE + " store: " + graphStore.nodeCount()
+                    + " nodes, " + graphStore.edgeCount() + " edges, "
+                    + String.format("%.2f", (double) graphStore.sizeInBytes() / graphStore.edgeCount())
+                    + " bytes per edge");
+        BatchEventLog batchEventLog = new BatchEventLog(logger, SERVER_LOG_RING_SIZE,
+                SERVER_LOG_SAMPLING_INTERVAL, SERVER_LOG_MAX_OPERATIONS);
+        ServerImpl server = new ServerImpl
                 (shortestPathAlgorithm, MINIMUM_NUMBER_OF_QUERIES_TO_EXECUTE_PARALLEL,
-                 SERVER_NUM_OF_THREADS);
-        try {
-            registry.bind(SERVER_REGISTRY_KEY, server);
-        } catch (AlreadyBoundException e) {
-            registry.rebind(SERVER_REGISTRY_KEY, server);
+                 SERVER_NUM_OF_THREADS, batchEventLog);
+        if (SERVER_RESULT_CACHE_SIZE > 0) server.setResultCache(new ResultCache(SERVER_RESULT_CACHE_SIZE));
+        server.setAdmissionQueue(new AdmissionQueue(SERVER_ADMISSION_QUEUE_DEPTH, SERVER_ADMISSION_TIMEOUT));
+        if (SERVER_SLOW_QUERY_THRESHOLD > 0)
+            server.setSlowQueryLog(new SlowQueryLog(logger, SERVER_SLOW_QUERY_THRESHOLD,
+                    SERVER_SLOW_QUERY_SAMPLING_INTERVAL, SERVER_LOG_RING_SIZE));
+        registerMetricsMBean(server);
+        // Stopping the drainer threads of the logs (after logging their pending events)
+        Runtime.getRuntime().addShutdownHook(new Thread(server::shutdown, "server-shutdown"));
+        if (snapshotFile != null) registerSnapshotHook(server, snapshotFile);
+        switch (SERVER_TRANSPORT) {
+            case "rmi" -> {
+                // Binding the remote server object
+                try {
+                    registry.bind(SERVER_REGISTRY_KEY, server);
+                } catch (AlreadyBoundException e) {
+                    registry.rebind(SERVER_REGISTRY_KEY, server);
+                }
+                if (SERVER_REPLICA_COUNT > 0)
+                    startReplicas(server, registry, SERVER_REPLICA_COUNT, REGISTRY_PORT_NUMBER,
+                            SHORTEST_PATH_ALGORITHM, SERVER_GRAPH_STORE, initialGraphFileName,
+                            MINIMUM_NUMBER_OF_QUERIES_TO_EXECUTE_PARALLEL, SERVER_NUM_OF_THREADS,
+                            SERVER_REPLICA_MAX_STALENESS, nodeOrdering, SERVER_LANDMARK_COUNT);
+            }
+            case "tcp" -> {
+                logger.info("Starting the TCP transport on port number [" + SERVER_TCP_PORT_NUMBER + "]");
+                new TcpServer(server, SERVER_TCP_PORT_NUMBER).start();
+            }
+            default -> {
+                logger.error("Unknown server transport configured");
+                System.exit(-1);
+            }
         }
         logger.info("Server started successfully");
 
         for (int clientID = 1 ; clientID <= CLIENT_COUNT ; clientID++) {
-            // Creating and running the clients processes
-            ProcessBuilder processBuilder = new ProcessBuilder
-                    ( "cmd", "/c", "start", "Client " + clientID, "java", "-jar", "client.jar", clientID + "",
-                            REGISTRY_IP_ADDRESS, REGISTRY_PORT_NUMBER + "", SERVER_REGISTRY_KEY,
-                            CLIENT_MAX_COOLDOWN, CLIENT_MIN_COOLDOWN, CLIENT_NUM_OPERATION,
-                            CLIENT_NODES_RANGE, CLIENT_QUERY_FREQUENCY, CLIENT_ADD_FREQUENCY)
+            // Creating and running the clients processes (each in its own console on Windows)
+            List<String> command = new ArrayList<>();
+            if (IS_WINDOWS) command.addAll(List.of("cmd", "/c", "start", "Client " + clientID));
+            command.addAll(List.of("java", "-jar", "client.jar", clientID + "",
+                    REGISTRY_IP_ADDRESS, REGISTRY_PORT_NUMBER + "", SERVER_REGISTRY_KEY,
+                    CLIENT_MAX_COOLDOWN, CLIENT_MIN_COOLDOWN, CLIENT_NUM_OPERATION,
+                    CLIENT_NODES_RANGE, CLIENT_QUERY_FREQUENCY, CLIENT_ADD_FREQUENCY,
+                    SERVER_TRANSPORT, SERVER_TCP_PORT_NUMBER + "", CLIENT_MAX_IN_FLIGHT_BATCHES,
+                    SERVER_REPLICA_COUNT + "", CLIENT_READ_YOUR_WRITES));
+            ProcessBuilder processBuilder = new ProcessBuilder(command)
                     .directory(new File(ARTIFACT_PATH));
+            // The clients log to their own files
+            if (! IS_WINDOWS) processBuilder.redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                                            .redirectError(ProcessBuilder.Redirect.DISCARD);
             processBuilder.start();
         }
     }
@@ -127,6 +233,121 @@ public class Main {
         return systemProperties;
     }
 
+    /**
+     * Returns an empty graph store of the given type (array, compressed, offheap or
+     * mapped where the mapped files are created in the temporary directory).
+     */
+    private static GraphStore createGraphStore(String graphStore) {
+        switch (graphStore) {
+            case "array" -> {
+                return new ArrayGraphStore();
+            }
+            case "compressed" -> {
+                return new CompressedGraphStore();
+            }
+            case "offheap" -> {
+                return new OffHeapGraphStore();
+            }
+            case "mapped" -> {
+                return new OffHeapGraphStore(new File(System.getProperty("java.io.tmpdir")));
+            }
+            default -> {
+                logger.error("Unknown graph store configured");
+                System.exit(-1);
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Returns the order in which the nodes of the initial graph are indexed (none,
+     * bfs or rcm).
+     */
+    private static NodeOrdering parseNodeOrdering(String nodeOrdering) {
+        try {
+            return NodeOrdering.valueOf(nodeOrdering);
+        } catch (IllegalArgumentException e) {
+            logger.error("Unknown node ordering configured");
+            System.exit(-1);
+            return null;
+        }
+    }
+
+    /**
+     * Starts every shard in a separate process on localhost and waits for all of
+     * them to be bound in the registry.
+     */
+    private static Shard[] startShards(Registry registry, int shardCount, int registryPortNumber,
+                                       String initialGraphFileName) {
+        try {
+            for (int shardIndex = 0 ; shardIndex < shardCount ; shardIndex++) {
+                logger.info("Starting shard [" + shardIndex + "]");
+                ShardLauncher.startShardProcess(shardIndex, shardCount, "localhost",
+                        registryPortNumber, initialGraphFileName);
+            }
+            return ShardLauncher.lookupShards(registry, shardCount, PROCESS_STARTUP_TIMEOUT_MILLIS);
+        } catch (Exception e) {
+            logger.error("Couldn't start the shards: " + e.getMessage());
+            System.exit(-1);
+            return null;
+        }
+    }
+
+    /**
+     * Starts every replica in a separate process on localhost and attaches them to
+     * the update stream of the primary server.
+     */
+    private static void startReplicas(ServerImpl server, Registry registry, int replicaCount,
+                                      int registryPortNumber, String shortestPathAlgorithm,
+                                      String graphStore, String initialGraphFileName,
+                                      int minimumNumberOfQueriesToExecuteInParallel,
+                                      int numOfThreads, long maxStalenessMillis,
+                                      NodeOrdering nodeOrdering, int landmarkCount) {
+        try {
+            for (int replicaIndex = 0 ; replicaIndex < replicaCount ; replicaIndex++) {
+                logger.info("Starting replica [" + replicaIndex + "]");
+                ReplicaLauncher.startReplicaProcess(replicaIndex, "localhost", registryPortNumber,
+                        shortestPathAlgorithm, graphStore, initialGraphFileName,
+                        minimumNumberOfQueriesToExecuteInParallel, numOfThreads, maxStalenessMillis,
+                        nodeOrdering, landmarkCount);
+            }
+            for (VersionedServer replica : ReplicaLauncher.lookupReplicas
+                    (registry, replicaCount, PROCESS_STARTUP_TIMEOUT_MILLIS))
+                server.addReplica((Replica) replica);
+        } catch (Exception e) {
+            logger.error("Couldn't start the replicas: " + e.getMessage());
+            System.exit(-1);
+        }
+    }
+
+    /**
+     * Exposes the server metrics as an MBean in the platform MBean server.
+     */
+    private static void registerMetricsMBean(ServerImpl server) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean
+                    (server.getMetrics(), new ObjectName(METRICS_MBEAN_NAME));
+            logger.info("Server metrics are exposed through JMX as [" + METRICS_MBEAN_NAME + "]");
+        } catch (JMException e) {
+            logger.error("Couldn't register the server metrics MBean: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Saves the state of the algorithm in the snapshot file when the server shuts
+     * down, so the next start restores it instead of re-calculating it.
+     */
+    private static void registerSnapshotHook(ServerImpl server, File snapshotFile) {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                if (server.saveSnapshot(snapshotFile))
+                    System.out.println("Saved the algorithm state in the snapshot " + snapshotFile);
+            } catch (IOException e) {
+                System.err.println("Couldn't save the snapshot: " + e.getMessage());
+            }
+        }, "snapshot-writer"));
+    }
+
     /**
      * Sets up the logger configurations
      */
@@ -6,12 +6,42 @@ import java.rmi.RemoteException;
 
 /**
  * Represents an operation in batch sent by the client.
+ *
+ * The query operations are:
+ * 1) QUERY: the shortest path from A to B.
+ * 2) BOUNDED_QUERY: the shortest path from A to B if it's at most limit hops,
+ *    otherwise -1 (the search stops at depth limit).
+ * 3) NEAREST_QUERY: the limit nodes closest to A (B is ignored) ordered by their
+ *    distance then by their id. Its result is the number of the returned nodes
+ *    followed by the nodes themselves.
+ * 4) APPROXIMATE_QUERY: an estimate of the shortest path from A to B whose error is
+ *    at most limit hops. Its result is the estimate followed by a lower bound of
+ *    the shortest path (both are -1 if A and B aren't connected). The estimate is
+ *    the length of an existing path, so the shortest path is between the two and
+ *    it's exact when they are equal.
  */
 public interface Operation extends Remote {
 
     int getA() throws RemoteException;
     int getB() throws RemoteException;
+    int getLimit() throws RemoteException; // Only used by the bounded, nearest and approximate queries
     OperationType getOperationType() throws RemoteException;
 
-    enum OperationType implements Serializable { QUERY, ADD, DELETE }
+    enum OperationType implements Serializable {
+        QUERY, ADD, DELETE, BOUNDED_QUERY, NEAREST_QUERY, APPROXIMATE_QUERY;
+
+        /**
+         * Returns whether the operation only reads the graph.
+         */
+        public boolean isQuery() {
+            return this != ADD && this != DELETE;
+        }
+
+        /**
+         * Returns whether the operation uses the limit.
+         */
+        public boolean hasLimit() {
+            return this == BOUNDED_QUERY || this == NEAREST_QUERY || this == APPROXIMATE_QUERY;
+        }
+    }
 }
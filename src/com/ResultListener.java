@@ -0,0 +1,13 @@
+package com;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+/**
+ * Receives the results of a batch executed in streaming mode. It is called once for
+ * every query transaction as soon as it completes, in the order of the batch.
+ */
+public interface ResultListener extends Remote {
+
+    void onResults(int[] results) throws RemoteException;
+}
@@ -14,4 +14,11 @@ public interface Server extends Remote {
      * returns list of the results of the queries.
      */
     List<Integer> executeBatch(Operation[] batch) throws RemoteException;
+
+    /**
+     * Remote method called by the client to execute a batch of operations while
+     * streaming the results of each query transaction to the listener as soon as it
+     * completes. Returns after the whole batch is executed.
+     */
+    void executeBatchStreaming(Operation[] batch, ResultListener listener) throws RemoteException;
 }
@@ -0,0 +1,28 @@
+package com;
+
+import java.rmi.RemoteException;
+
+/**
+ * Thrown when the server rejects a batch because its admission queue is full or the
+ * batch waited in it longer than the admission timeout. The batch isn't executed
+ * and it can be sent again after the suggested delay.
+ */
+public class ServerOverloadedException extends RemoteException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long retryAfterMillis;
+
+    public ServerOverloadedException(String message, long retryAfterMillis) {
+        super(message);
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    /**
+     * Returns the estimated time (in milliseconds) until the server drains the batches
+     * ahead of a new one.
+     */
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
@@ -0,0 +1,27 @@
+package com;
+
+import java.io.Serializable;
+
+/**
+ * Results of a batch along with the version of the graph they were computed on.
+ */
+public final class VersionedResult implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long version;
+    private final int[] results;
+
+    public VersionedResult(long version, int[] results) {
+        this.version = version;
+        this.results = results;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int[] getResults() {
+        return results;
+    }
+}
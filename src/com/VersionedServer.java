@@ -0,0 +1,19 @@
+package com;
+
+import java.rmi.RemoteException;
+
+/**
+ * Represents a server taking part in a primary/replica deployment. Every update
+ * transaction applied by the primary increments the version of its graph and is
+ * shipped in order to the replicas.
+ */
+public interface VersionedServer extends Server {
+
+    /**
+     * Executes the batch once the server has applied at least minVersion and returns
+     * the results along with the version of the graph they were computed on.
+     * The version returned by the primary can be used as minVersion when querying
+     * the replicas to read your own writes.
+     */
+    VersionedResult executeVersionedBatch(Operation[] batch, long minVersion) throws RemoteException;
+}
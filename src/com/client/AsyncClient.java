@@ -0,0 +1,149 @@
+package com.client;
+
+import com.Operation;
+import com.ResultListener;
+import com.Server;
+import com.server.metrics.LatencyHistogram;
+import com.transport.TcpServerStub;
+
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Asynchronous client API which allows having many batches in flight on the same
+ * connection to the server.
+ *
+ * Notes:
+ * 1) At most maxInFlightBatches batches are sent without receiving their results,
+ *    submitting more batches blocks until one of them completes.
+ * 2) The batches are executed and their futures are completed in the same order
+ *    they were submitted.
+ * 3) Over the TCP transport the batches are pipelined on the connection. Over RMI
+ *    (where every call blocks) the batches are sent one by one by a background thread.
+ * 4) The latency between submitting a batch and completing its future is recorded
+ *    (in nanoseconds).
+ * 5) In streaming mode the results of each query transaction are published to a
+ *    Flow.Subscriber as soon as the server completes it instead of waiting for
+ *    the whole batch.
+ */
+public class AsyncClient implements AutoCloseable {
+
+    private final Server server;
+    private final Semaphore inFlightBatches;
+    private final ExecutorService sender; // Only used for blocking transports
+    private final LatencyHistogram latency;
+
+    public AsyncClient(Server server, int maxInFlightBatches) {
+        this.server = server;
+        this.inFlightBatches = new Semaphore(maxInFlightBatches);
+        this.sender = server instanceof TcpServerStub
+                ? null
+                : Executors.newSingleThreadExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "async-client-sender");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.latency = new LatencyHistogram();
+    }
+
+    /**
+     * Submits the batch and returns a future completed with the results of its
+     * queries. Blocks while the maximum number of in-flight batches is reached.
+     */
+    public CompletableFuture<int[]> submitBatch(Operation[] batch) throws InterruptedException {
+        inFlightBatches.acquire();
+        long submissionTime = System.nanoTime();
+        CompletableFuture<int[]> future;
+        try {
+            future = send(batch);
+        } catch (RemoteException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        return future.whenComplete((result, exception) -> {
+            latency.record(System.nanoTime() - submissionTime);
+            inFlightBatches.release();
+        });
+    }
+
+    /**
+     * Submits the batch in streaming mode. The subscriber receives the results of
+     * each query transaction in order and is completed once the whole batch is
+     * executed, which also completes the returned future.
+     * Note that a slow subscriber applies backpressure on the connection.
+     */
+    public CompletableFuture<Void> submitBatchStreaming(Operation[] batch, Flow.Subscriber<int[]> subscriber)
+            throws InterruptedException {
+        inFlightBatches.acquire();
+        long submissionTime = System.nanoTime();
+        SubmissionPublisher<int[]> publisher = new SubmissionPublisher<>();
+        publisher.subscribe(subscriber);
+        CompletableFuture<int[]> future;
+        try {
+            future = sendStreaming(batch, publisher::submit);
+        } catch (RemoteException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        return future.handle((result, exception) -> {
+            latency.record(System.nanoTime() - submissionTime);
+            inFlightBatches.release();
+            if (exception != null) publisher.closeExceptionally(exception);
+            else publisher.close();
+            return null;
+        });
+    }
+
+    /**
+     * Returns the histogram of the submission to completion latency (in nanoseconds).
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    @Override
+    public void close() {
+        if (sender != null) sender.shutdown();
+    }
+
+    //
+    // Private Methods
+    //
+
+    private CompletableFuture<int[]> send(Operation[] batch) throws RemoteException {
+        if (server instanceof TcpServerStub tcpServerStub)
+            return tcpServerStub.submitBatch(batch);
+        CompletableFuture<int[]> future = new CompletableFuture<>();
+        sender.execute(() -> {
+            try {
+                List<Integer> result = server.executeBatch(batch);
+                future.complete(result.stream().mapToInt(Integer::intValue).toArray());
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    private CompletableFuture<int[]> sendStreaming(Operation[] batch, ResultListener listener)
+            throws RemoteException {
+        if (server instanceof TcpServerStub tcpServerStub)
+            return tcpServerStub.submitBatchStreaming(batch, listener);
+        CompletableFuture<int[]> future = new CompletableFuture<>();
+        sender.execute(() -> {
+            try {
+                // The listener is called back by the server through RMI
+                ResultListener remoteListener = (ResultListener) UnicastRemoteObject.exportObject(listener, 0);
+                try {
+                    server.executeBatchStreaming(batch, remoteListener);
+                } finally {
+                    UnicastRemoteObject.unexportObject(listener, true);
+                }
+                future.complete(new int[0]);
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+}
@@ -1,18 +1,23 @@
 package com.client;
 
+import java.io.IOException;
 import java.rmi.NotBoundException;
-import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.util.Arrays;
-import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import com.Server;
 import com.Operation;
+import com.ServerOverloadedException;
+import com.VersionedServer;
+import com.server.replication.ReplicaLauncher;
+import com.transport.TcpServerStub;
 import org.apache.logging.log4j.core.appender.ConsoleAppender;
 import org.apache.logging.log4j.core.config.Configurator;
 import org.apache.logging.log4j.core.config.builder.api.AppenderComponentBuilder;
@@ -42,20 +47,28 @@ public class Client {
      * 7 -> Nodes range
      * 8 -> Query frequency
      * 9 -> Add frequency
+     * 10 -> Server transport (rmi or tcp)
+     * 11 -> Server TCP port number
+     * 12 -> Maximum number of in-flight batches
+     * 13 -> Number of replicas (RMI transport only)
+     * 14 -> Read your writes when querying the replicas
      */
-    public static void main(String[] args) throws InterruptedException, RemoteException, NotBoundException {
+    public static void main(String[] args) throws InterruptedException, IOException, NotBoundException {
         initializeLoggerConfigs(args[0]);
-        if (args.length != 10) {
+        if (args.length != 15) {
             logger.error("Invalid number of arguments");
             System.exit(-1);
         }
-        Registry registry = LocateRegistry.getRegistry(args[1], Integer.parseInt(args[2]));
-        Server server = (Server) registry.lookup(args[3]);
+        Server server = connectToServer(args[1], Integer.parseInt(args[2]), args[3],
+                                        args[10], Integer.parseInt(args[11]),
+                                        Integer.parseInt(args[13]), Boolean.parseBoolean(args[14]));
         final int maximumCooldown = Integer.parseInt(args[4]);
         final int minimumCooldown = Integer.parseInt(args[5]);
         final BatchGenerator batchGenerator = new BatchGenerator
                 (Integer.parseInt(args[6]), Integer.parseInt(args[7]),
                  Double.parseDouble(args[8]), Double.parseDouble(args[9]));
+        final AsyncClient asyncClient = new AsyncClient(server, Integer.parseInt(args[12]));
+        final AtomicLong retryAfterMillis = new AtomicLong(); // Set when the server rejects a batch
         while(true) {
             long startGenerationTime = System.currentTimeMillis();
             Operation[] batch = batchGenerator.generateBatch();
@@ -64,18 +77,61 @@ public class Client {
                      + Arrays.toString(batch));
 
             long startSubmitTime = System.currentTimeMillis();
-            List<Integer> result = server.executeBatch(batch);
-            logger.info(" Received response after " +
-                        (System.currentTimeMillis() - startSubmitTime)
-                        + "ms -> " + result);
+            asyncClient.submitBatch(batch).whenComplete((result, exception) -> {
+                Throwable cause = exception instanceof CompletionException ? exception.getCause() : exception;
+                if (cause instanceof ServerOverloadedException overloadedException) {
+                    // The batch isn't executed, the next one is delayed by the retry-after
+                    logger.warn("Batch rejected by the overloaded server: " + cause.getMessage());
+                    retryAfterMillis.accumulateAndGet(overloadedException.getRetryAfterMillis(), Math::max);
+                    return;
+                }
+                if (exception != null) {
+                    logger.error("Batch failed: " + exception.getMessage());
+                    System.exit(-1);
+                }
+                logger.info(" Received response after " +
+                            (System.currentTimeMillis() - startSubmitTime)
+                            + "ms -> " + Arrays.toString(result));
+            });
 
-            int cooldown = random.nextInt
-                    (maximumCooldown - minimumCooldown) + minimumCooldown;
+            long cooldown = Math.max(retryAfterMillis.getAndSet(0), random.nextInt
+                    (maximumCooldown - minimumCooldown) + minimumCooldown);
             logger.info(" Sleeping for " + cooldown + " ms");
             Thread.sleep(cooldown);
         }
     }
 
+    /**
+     * Returns the server using the given transport. The server host is the same as
+     * the registry host. If there are replicas, the returned server routes the
+     * query-only batches to them.
+     */
+    private static Server connectToServer(String hostAddress, int registryPortNumber, String registryKey,
+                                          String transport, int tcpPortNumber, int replicaCount,
+                                          boolean readYourWrites)
+            throws IOException, NotBoundException {
+        switch (transport) {
+            case "rmi" -> {
+                Registry registry = LocateRegistry.getRegistry(hostAddress, registryPortNumber);
+                VersionedServer primary = (VersionedServer) registry.lookup(registryKey);
+                if (replicaCount == 0) return primary;
+                VersionedServer[] replicas = new VersionedServer[replicaCount];
+                for (int i = 0 ; i < replicaCount ; i++)
+                    replicas[i] = (VersionedServer) registry.lookup
+                            (ReplicaLauncher.REPLICA_REGISTRY_KEY_PREFIX + i);
+                return new ReplicatedServer(primary, replicas, readYourWrites);
+            }
+            case "tcp" -> {
+                return new TcpServerStub(hostAddress, tcpPortNumber);
+            }
+            default -> {
+                logger.error("Unknown server transport " + transport);
+                System.exit(-1);
+                return null;
+            }
+        }
+    }
+
     /**
      * Sets up the logger configurations
      */
@@ -0,0 +1,304 @@
+package com.client;
+
+import com.Operation;
+import com.Server;
+import com.server.metrics.LatencyHistogram;
+import com.transport.TcpServerStub;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.InputStreamReader;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Load testing driver which runs many simulated clients against a running server
+ * using the workload configured by the client properties (BatchGenerator knobs).
+ *
+ * Modes:
+ * 1) Closed loop: each client sends a batch, waits for its response and then sleeps
+ *    for a random cooldown before sending the next one (as the Client does).
+ * 2) Open loop: the batches are scheduled at a fixed total arrival rate regardless of
+ *    the response time of the server. Each client sends its batches at
+ *    (clients / rate) seconds intervals without waiting for the responses of the
+ *    previous ones (each batch is sent by its own task).
+ *
+ * Latency accounting:
+ * The latency of a batch is measured from the time it was supposed to be sent and not
+ * from the time it was actually sent, otherwise a slow server delays the next
+ * requests and hides the queueing delay (coordinated omission). In open loop mode
+ * the intended send time is given by the schedule. In closed loop mode the samples
+ * which would have been taken while waiting for a slow response are back-filled using
+ * the minimum cooldown as the expected interval.
+ *
+ * The simulated clients can be spread over many processes (loadgen.processes) in
+ * which case each worker process sends its histograms to the driver which merges them.
+ */
+public class LoadGenerator {
+
+    private static final String PROPERTIES_FILE_NAME = "system.properties";
+    private static final String WORKER_ARGUMENT = "worker";
+    private static final String HISTOGRAM_PREFIX = "HISTOGRAM ";
+    private static final long NANOS_PER_MILLI = 1_000_000;
+
+    private final HashMap<String, String> systemProperties;
+    private final LatencyHistogram rawLatency;
+    private final LatencyHistogram correctedLatency;
+    private final LongAdder completedBatches;
+    private final LongAdder failedBatches;
+
+    private LoadGenerator(HashMap<String, String> systemProperties) {
+        this.systemProperties = systemProperties;
+        this.rawLatency = new LatencyHistogram();
+        this.correctedLatency = new LatencyHistogram();
+        this.completedBatches = new LongAdder();
+        this.failedBatches = new LongAdder();
+    }
+
+    /**
+     * Runs the driver when called without arguments. Worker processes are started by
+     * the driver with the arguments: "worker" and their number of clients.
+     */
+    public static void main(String[] args) throws Exception {
+        LoadGenerator loadGenerator = new LoadGenerator(readSystemProperties());
+        loadGenerator.checkArrivalRate();
+        if (args.length == 2 && args[0].equals(WORKER_ARGUMENT))
+            loadGenerator.runWorker(Integer.parseInt(args[1]));
+        else loadGenerator.runDriver();
+        // The generated operations are exported remote objects which keep the JVM alive
+        System.exit(0);
+    }
+
+    //
+    // Private Methods
+    //
+
+    /**
+     * Divides the clients over the processes, runs its own share and reports the
+     * merged results.
+     */
+    private void runDriver() throws Exception {
+        final int clients = Integer.parseInt(systemProperties.get("loadgen.clients"));
+        final int processes = Math.max(1, Integer.parseInt(systemProperties.get("loadgen.processes")));
+        List<Process> workers = new ArrayList<>();
+        for (int i = 1 ; i < processes ; i++) {
+            String javaPath = System.getProperty("java.home") + File.separator
+                    + "bin" + File.separator + "java";
+            workers.add(new ProcessBuilder(javaPath, "-cp", System.getProperty("java.class.path"),
+                    LoadGenerator.class.getName(), WORKER_ARGUMENT, clientsOfProcess(clients, processes, i) + "")
+                    .redirectErrorStream(true)
+                    .start());
+        }
+        long startTime = System.nanoTime();
+        runClients(clientsOfProcess(clients, processes, 0));
+        for (Process worker : workers)
+            readWorkerResults(worker);
+        double elapsedSeconds = (System.nanoTime() - startTime) / 1e9;
+        printReport(clients, elapsedSeconds);
+    }
+
+    /**
+     * Runs the clients of this worker and prints its histograms for the driver.
+     */
+    private void runWorker(int clients) throws Exception {
+        runClients(clients);
+        System.out.println(HISTOGRAM_PREFIX + completedBatches.sum() + " " + failedBatches.sum()
+                + " " + rawLatency.encode() + " " + correctedLatency.encode());
+    }
+
+    /**
+     * Rejects a non positive arrival rate in open loop mode, which would leave no
+     * interval between the batches.
+     */
+    private void checkArrivalRate() {
+        double totalRate = Double.parseDouble(systemProperties.get("loadgen.ratePerSecond"));
+        if (systemProperties.get("loadgen.mode").equalsIgnoreCase("open") && ! (totalRate > 0))
+            throw new IllegalArgumentException
+                    ("loadgen.ratePerSecond must be positive in open loop mode, but is " + totalRate);
+    }
+
+    private static int clientsOfProcess(int clients, int processes, int processIndex) {
+        return clients / processes + (processIndex < clients % processes ? 1 : 0);
+    }
+
+    private void readWorkerResults(Process worker) throws Exception {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(worker.getInputStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (! line.startsWith(HISTOGRAM_PREFIX)) continue;
+                String[] tokens = line.substring(HISTOGRAM_PREFIX.length()).split(" ");
+                completedBatches.add(Long.parseLong(tokens[0]));
+                failedBatches.add(Long.parseLong(tokens[1]));
+                rawLatency.add(LatencyHistogram.decode(tokens[2]));
+                correctedLatency.add(LatencyHistogram.decode(tokens[3]));
+            }
+        }
+        worker.waitFor();
+    }
+
+    /**
+     * Runs the given number of simulated clients (a thread each) until the configured
+     * duration elapses, then waits for the batches still in flight.
+     */
+    private void runClients(int clients) throws Exception {
+        final String mode = systemProperties.get("loadgen.mode").toLowerCase();
+        final long durationNanos = Long.parseLong(systemProperties.get("loadgen.durationSeconds")) * 1_000_000_000L;
+        final double totalRate = Double.parseDouble(systemProperties.get("loadgen.ratePerSecond"));
+        final int totalClients = Integer.parseInt(systemProperties.get("loadgen.clients"));
+        final long intervalNanos = (long) (totalClients / totalRate * 1e9);
+        final long endTime = System.nanoTime() + durationNanos;
+        CountDownLatch finished = new CountDownLatch(clients);
+        ExecutorService senders = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "load-generator-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0 ; i < clients ; i++) {
+            Server server = connectToServer();
+            BatchGenerator batchGenerator = newBatchGenerator();
+            Thread thread = new Thread(() -> {
+                try {
+                    if (mode.equals("open")) runOpenLoop(server, batchGenerator, senders, intervalNanos, endTime);
+                    else runClosedLoop(server, batchGenerator, endTime);
+                } catch (Exception e) {
+                    System.err.println("Simulated client stopped: " + e.getMessage());
+                } finally {
+                    finished.countDown();
+                }
+            }, "simulated-client-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        finished.await();
+        senders.shutdown();
+        senders.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Sends the batches following a fixed schedule, measuring each latency from the
+     * scheduled send time. Each batch is sent by its own task so a slow response
+     * never delays the next batches.
+     */
+    private void runOpenLoop(Server server, BatchGenerator batchGenerator, Executor senders,
+                             long intervalNanos, long endTime) throws Exception {
+        // Spreading the clients over the first interval
+        long intendedStartTime = System.nanoTime() + ThreadLocalRandom.current().nextLong(intervalNanos + 1);
+        while (intendedStartTime < endTime) {
+            Operation[] batch = batchGenerator.generateBatch();
+            long now = System.nanoTime();
+            if (intendedStartTime > now)
+                Thread.sleep((intendedStartTime - now) / NANOS_PER_MILLI,
+                             (int) ((intendedStartTime - now) % NANOS_PER_MILLI));
+            long scheduledTime = intendedStartTime;
+            senders.execute(() -> {
+                long sendTime = System.nanoTime();
+                if (execute(server, batch)) {
+                    long completionTime = System.nanoTime();
+                    rawLatency.record(completionTime - sendTime);
+                    correctedLatency.record(completionTime - scheduledTime);
+                }
+            });
+            intendedStartTime += intervalNanos;
+        }
+    }
+
+    /**
+     * Sends a batch after the previous one completes and a random cooldown.
+     */
+    private void runClosedLoop(Server server, BatchGenerator batchGenerator, long endTime) throws Exception {
+        final int maximumCooldown = Integer.parseInt(systemProperties.get("client.maximumCooldown"));
+        final int minimumCooldown = Integer.parseInt(systemProperties.get("client.minimumCooldown"));
+        final long expectedIntervalNanos = minimumCooldown * NANOS_PER_MILLI;
+        while (System.nanoTime() < endTime) {
+            Operation[] batch = batchGenerator.generateBatch();
+            long sendTime = System.nanoTime();
+            if (execute(server, batch)) {
+                long latency = System.nanoTime() - sendTime;
+                rawLatency.record(latency);
+                correctedLatency.recordWithExpectedInterval(latency, expectedIntervalNanos);
+            }
+            long cooldown = ThreadLocalRandom.current().nextInt(minimumCooldown, maximumCooldown + 1);
+            Thread.sleep(Math.max(0, Math.min(cooldown, (endTime - System.nanoTime()) / NANOS_PER_MILLI)));
+        }
+    }
+
+    private boolean execute(Server server, Operation[] batch) {
+        try {
+            server.executeBatch(batch);
+            completedBatches.increment();
+            return true;
+        } catch (Exception e) {
+            failedBatches.increment();
+            return false;
+        }
+    }
+
+    private void printReport(int clients, double elapsedSeconds) {
+        long batches = completedBatches.sum();
+        int operationsPerBatch = Integer.parseInt(systemProperties.get("client.numberOfOperationPerBatch"));
+        System.out.println("--------------------------");
+        System.out.printf("Mode: %s, clients: %d, duration: %.1f s%n",
+                systemProperties.get("loadgen.mode"), clients, elapsedSeconds);
+        System.out.printf("Completed batches: %d (failed: %d)%n", batches, failedBatches.sum());
+        System.out.printf("Throughput: %.2f batches/s (%.0f operations/s)%n",
+                batches / elapsedSeconds, batches * operationsPerBatch / elapsedSeconds);
+        printLatency("Latency (corrected)", correctedLatency);
+        printLatency("Latency (uncorrected)", rawLatency);
+        System.out.println("--------------------------");
+    }
+
+    private static void printLatency(String label, LatencyHistogram histogram) {
+        System.out.printf("%s ms: p50=%.2f p99=%.2f p99.9=%.2f max=%.2f%n", label,
+                histogram.getValueAtPercentile(50) / 1e6, histogram.getValueAtPercentile(99) / 1e6,
+                histogram.getValueAtPercentile(99.9) / 1e6, histogram.getMax() / 1e6);
+    }
+
+    private BatchGenerator newBatchGenerator() {
+        return new BatchGenerator(
+                Integer.parseInt(systemProperties.get("client.numberOfOperationPerBatch")),
+                Integer.parseInt(systemProperties.get("client.nodesRange")),
+                Double.parseDouble(systemProperties.get("client.queryFrequency")),
+                Double.parseDouble(systemProperties.get("client.addFrequency")));
+    }
+
+    /**
+     * Returns a new connection to the server using the configured transport.
+     */
+    private Server connectToServer() throws Exception {
+        String hostAddress = systemProperties.get("registry.ip");
+        if (systemProperties.get("server.transport").equalsIgnoreCase("tcp"))
+            return new TcpServerStub(hostAddress,
+                    Integer.parseInt(systemProperties.get("server.tcpPortNumber")));
+        Registry registry = LocateRegistry.getRegistry
+                (hostAddress, Integer.parseInt(systemProperties.get("registry.portNumber")));
+        return (Server) registry.lookup(systemProperties.get("server.registryKey"));
+    }
+
+    /**
+     * Returns a map which contains all the system properties.
+     */
+    private static HashMap<String, String> readSystemProperties() throws FileNotFoundException {
+        HashMap<String, String> systemProperties = new HashMap<>();
+        Scanner scanner = new Scanner(new File(Objects.requireNonNull(LoadGenerator.class.getClassLoader()
+                .getResource(PROPERTIES_FILE_NAME)).getPath()));
+        while(scanner.hasNextLine()) {
+            try {
+                String[] lineTokens = scanner.nextLine().split(" ");
+                systemProperties.put(lineTokens[0], lineTokens[2]);
+            } catch (Exception e) {
+                // do nothing (ignore broken lines).
+            }
+        }
+        scanner.close();
+        return systemProperties;
+    }
+}
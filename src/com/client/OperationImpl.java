@@ -11,12 +11,18 @@ import java.rmi.server.UnicastRemoteObject;
 public final class OperationImpl extends UnicastRemoteObject implements Operation {
     private final int A;
     private final int B;
+    private final int limit;
     private final OperationType operationType;
 
     public OperationImpl(int a, int b, OperationType operationType) throws RemoteException {
+        this(a, b, 0, operationType);
+    }
+
+    public OperationImpl(int a, int b, int limit, OperationType operationType) throws RemoteException {
         super();
         this.A = a;
         this.B = b;
+        this.limit = limit;
         this.operationType = operationType;
     }
 
@@ -28,12 +34,17 @@ public final class OperationImpl extends UnicastRemoteObject implements Operatio
         return this.B;
     }
 
+    public int getLimit() throws RemoteException {
+        return this.limit;
+    }
+
     public OperationType getOperationType() throws RemoteException {
         return this.operationType;
     }
 
     @Override
     public String toString() {
-        return "{" + A + ", " + B + ", " + operationType +'}';
+        return "{" + A + ", " + B + ", " + operationType
+                + (operationType.hasLimit() ? ", " + limit : "") + '}';
     }
 }
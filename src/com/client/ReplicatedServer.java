@@ -0,0 +1,85 @@
+package com.client;
+
+import com.Operation;
+import com.ResultListener;
+import com.Server;
+import com.VersionedResult;
+import com.VersionedServer;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Client side router of a primary/replica deployment.
+ *
+ * Steps:
+ * 1) Batches containing updates are sent to the primary. The version returned by
+ *    the primary is remembered as the last written version.
+ * 2) Query-only batches are sent to the replicas in round-robin order.
+ * 3) If readYourWrites is set, the replica must have applied the last written
+ *    version before executing the batch. A replica which can't catch up in time
+ *    rejects the batch and it is sent to the primary instead.
+ *
+ * Notes:
+ * 1) Streamed batches are always sent to the primary, and the updates they contain
+ *    aren't tracked for reading your own writes.
+ */
+public class ReplicatedServer implements Server {
+
+    private final VersionedServer primary;
+    private final VersionedServer[] replicas;
+    private final boolean readYourWrites;
+    private final AtomicInteger nextReplica;
+    private volatile long lastWrittenVersion;
+
+    public ReplicatedServer(VersionedServer primary, VersionedServer[] replicas, boolean readYourWrites) {
+        this.primary = primary;
+        this.replicas = replicas;
+        this.readYourWrites = readYourWrites;
+        this.nextReplica = new AtomicInteger();
+    }
+
+    @Override
+    public List<Integer> executeBatch(Operation[] batch) throws RemoteException {
+        VersionedResult result;
+        if (replicas.length == 0 || ! isQueryOnly(batch))
+            result = executeOnPrimary(batch);
+        else {
+            VersionedServer replica = replicas[Math.floorMod(nextReplica.getAndIncrement(), replicas.length)];
+            try {
+                result = replica.executeVersionedBatch(batch, readYourWrites ? lastWrittenVersion : 0);
+            } catch (RemoteException e) {
+                result = executeOnPrimary(batch);
+            }
+        }
+        List<Integer> resultList = new ArrayList<>(result.getResults().length);
+        for (int value : result.getResults())
+            resultList.add(value);
+        return resultList;
+    }
+
+    @Override
+    public void executeBatchStreaming(Operation[] batch, ResultListener listener) throws RemoteException {
+        primary.executeBatchStreaming(batch, listener);
+    }
+
+    //
+    // Private Methods
+    //
+
+    private VersionedResult executeOnPrimary(Operation[] batch) throws RemoteException {
+        VersionedResult result = primary.executeVersionedBatch(batch, 0);
+        synchronized (this) {
+            lastWrittenVersion = Math.max(lastWrittenVersion, result.getVersion());
+        }
+        return result;
+    }
+
+    private static boolean isQueryOnly(Operation[] batch) throws RemoteException {
+        for (Operation operation : batch)
+            if (! operation.getOperationType().isQuery()) return false;
+        return true;
+    }
+}
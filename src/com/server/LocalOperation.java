@@ -0,0 +1,52 @@
+package com.server;
+
+import com.Operation;
+
+/**
+ * Server side copy of an operation received in a batch. The operations sent by the
+ * client are remote objects, so reading them once into a LocalOperation avoids
+ * issuing remote calls each time the batch is split, logged or executed.
+ */
+public final class LocalOperation implements Operation {
+    private final int A;
+    private final int B;
+    private final int limit;
+    private final OperationType operationType;
+
+    public LocalOperation(int a, int b, OperationType operationType) {
+        this(a, b, 0, operationType);
+    }
+
+    public LocalOperation(int a, int b, int limit, OperationType operationType) {
+        this.A = a;
+        this.B = b;
+        this.limit = limit;
+        this.operationType = operationType;
+    }
+
+    @Override
+    public int getA() {
+        return this.A;
+    }
+
+    @Override
+    public int getB() {
+        return this.B;
+    }
+
+    @Override
+    public int getLimit() {
+        return this.limit;
+    }
+
+    @Override
+    public OperationType getOperationType() {
+        return this.operationType;
+    }
+
+    @Override
+    public String toString() {
+        return "{" + A + ", " + B + ", " + operationType
+                + (operationType.hasLimit() ? ", " + limit : "") + '}';
+    }
+}
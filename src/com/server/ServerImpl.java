@@ -1,53 +1,273 @@
 package com.server;
 
+import com.ResultListener;
 import com.Server;
 import com.Operation;
 import com.Operation.OperationType;
+import com.VersionedResult;
+import com.VersionedServer;
+import com.server.admission.AdmissionQueue;
 import com.server.algorithm.ShortestPathAlgorithm;
+import com.server.cache.ResultCache;
+import com.server.events.BatchEvent;
+import com.server.events.QueryEvent;
+import com.server.events.StateRebuildEvent;
+import com.server.events.TransactionEvent;
+import com.server.graph.BfsKernel;
+import com.server.logging.BatchEventLog;
+import com.server.logging.SlowQueryLog;
+import com.server.metrics.ServerMetrics;
+import com.server.replication.Replica;
+import com.server.replication.UpdateStream;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.File;
+import java.io.IOException;
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
 
 /**
- * Implementation of the Server interface.
+ * Implementation of the Server interface. It acts as the primary when replicas are
+ * attached: every update transaction increments the version of the graph and is
+ * shipped to the replicas through the update stream.
+ * If a result cache is set, the shortest path queries are answered from it when
+ * the graph didn't effectively change since their result was cached.
+ * The batches are decoded then wait in the admission queue, which admits them one
+ * at a time (query-only batches first) and rejects them when it's overloaded.
+ * The batches, their transactions, their queries and the state rebuilds are
+ * recorded as flight recorder events (com.server.*) while a recording runs, and the
+ * slow queries are logged if a slow query log is set.
  */
-public class ServerImpl extends UnicastRemoteObject implements Server {
+public class ServerImpl extends UnicastRemoteObject implements VersionedServer {
+
+    private static final int DEFAULT_LOG_RING_SIZE = 64;
+    private static final int DEFAULT_LOG_SAMPLING_INTERVAL = 1;
+    private static final int DEFAULT_LOG_MAX_OPERATIONS = 100;
 
     private final Logger logger;
     private final ShortestPathAlgorithm shortestPathAlgorithm;
     private final int minimumNumberOfQueriesToExecuteInParallel;
     private final int numOfThreads;
+    private final ThreadPoolExecutor executor;
+    private final ExecutorService resultSenders;
+    private final ServerMetrics metrics;
+    private final BatchEventLog batchEventLog;
+    private final UpdateStream updateStream;
+    private final String algorithmName;
+    protected long version; // Number of update transactions applied (guarded by this)
+    private long graphVersion; // Number of effective changes of the graph (guarded by this)
+    private ResultCache resultCache;
+    private SlowQueryLog slowQueryLog;
+    private volatile AdmissionQueue admissionQueue;
 
     public ServerImpl(ShortestPathAlgorithm shortestPathAlgorithm,
                       int minimumNumberOfQueriesToExecuteInParallel,
                       int numOfThreads) throws RemoteException {
+        this(shortestPathAlgorithm, minimumNumberOfQueriesToExecuteInParallel, numOfThreads,
+             new BatchEventLog(LogManager.getLogger(Server.class), DEFAULT_LOG_RING_SIZE,
+                               DEFAULT_LOG_SAMPLING_INTERVAL, DEFAULT_LOG_MAX_OPERATIONS));
+    }
+
+    public ServerImpl(ShortestPathAlgorithm shortestPathAlgorithm,
+                      int minimumNumberOfQueriesToExecuteInParallel,
+                      int numOfThreads, BatchEventLog batchEventLog) throws RemoteException {
         super();
         this.shortestPathAlgorithm = shortestPathAlgorithm;
         this.minimumNumberOfQueriesToExecuteInParallel
                 = minimumNumberOfQueriesToExecuteInParallel;
         this.numOfThreads = numOfThreads;
         this.logger = LogManager.getLogger(Server.class);
+        this.batchEventLog = batchEventLog;
+        this.updateStream = new UpdateStream();
+        this.algorithmName = shortestPathAlgorithm == null
+                ? "none" : shortestPathAlgorithm.getClass().getSimpleName();
+        this.executor = new ThreadPoolExecutor(numOfThreads, numOfThreads,
+                0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "query-executor");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.resultSenders = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "result-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.metrics = new ServerMetrics();
+        this.admissionQueue = new AdmissionQueue();
+        this.metrics.setExecutorQueueDepthGauge(() -> executor.getQueue().size());
+        this.metrics.setAdmissionQueueDepthGauge(() -> admissionQueue.depth());
+        if (shortestPathAlgorithm != null) {
+            shortestPathAlgorithm.setMetrics(metrics);
+            shortestPathAlgorithm.setExecutor(executor);
+        }
     }
 
     @Override
-    public synchronized List<Integer> executeBatch(Operation[] batch) throws RemoteException {
-        if (shortestPathAlgorithm == null)
-            logger.error("ShortestPathAlgorithm isn't set.");
-        logger.info("Received a batch -> " + getBatchContent(batch));
-        long processingStartTime = System.currentTimeMillis();
-        List<List<Operation>> splitBatch = splitBatch(batch);
-        List<Integer> result = performTransactions(splitBatch);
-        logger.info("Batch processed in " + (System.currentTimeMillis() -
-                processingStartTime) + " ms -> " + result);
-        return result;
+    public List<Integer> executeBatch(Operation[] batch) throws RemoteException {
+        Operation[] localBatch = decodeBatch(batch);
+        AdmissionQueue admissionQueue = admit(localBatch);
+        long executionStartTime = System.nanoTime();
+        try {
+            synchronized (this) {
+                return collectBatch(localBatch);
+            }
+        } finally {
+            admissionQueue.release(System.nanoTime() - executionStartTime);
+        }
+    }
+
+    /**
+     * The results are passed to the listener by a sender thread of this call, so the
+     * server monitor is never held while the (remote) callbacks are sent. The call
+     * waits for the slow listeners after releasing the monitor.
+     */
+    @Override
+    public void executeBatchStreaming(Operation[] batch, ResultListener listener) throws RemoteException {
+        Operation[] localBatch = decodeBatch(batch);
+        AdmissionQueue admissionQueue = admit(localBatch);
+        long executionStartTime = System.nanoTime();
+        StreamingSender sender = new StreamingSender(listener, resultSenders);
+        try {
+            synchronized (this) {
+                processBatch(localBatch, sender, null);
+            }
+        } finally {
+            admissionQueue.release(System.nanoTime() - executionStartTime);
+            sender.close();
+        }
+        sender.awaitSent();
+    }
+
+    /**
+     * Waits for the version before entering the admission queue, so a stale replica
+     * doesn't hold the other batches.
+     */
+    @Override
+    public VersionedResult executeVersionedBatch(Operation[] batch, long minVersion)
+            throws RemoteException {
+        synchronized (this) {
+            awaitVersion(minVersion);
+        }
+        Operation[] localBatch = decodeBatch(batch);
+        AdmissionQueue admissionQueue = admit(localBatch);
+        long executionStartTime = System.nanoTime();
+        try {
+            synchronized (this) {
+                List<Integer> result = collectBatch(localBatch);
+                return new VersionedResult(version, result.stream().mapToInt(Integer::intValue).toArray());
+            }
+        } finally {
+            admissionQueue.release(System.nanoTime() - executionStartTime);
+        }
+    }
+
+    /**
+     * Attaches a replica which receives all the update transactions applied from now on.
+     */
+    public void addReplica(Replica replica) {
+        updateStream.addReplica(replica);
+    }
+
+    /**
+     * Sets the cache of the shortest path results shared by all the batches.
+     */
+    public synchronized void setResultCache(ResultCache resultCache) {
+        this.resultCache = resultCache;
+    }
+
+    /**
+     * Sets the log of the queries slower than its threshold.
+     */
+    public synchronized void setSlowQueryLog(SlowQueryLog slowQueryLog) {
+        this.slowQueryLog = slowQueryLog;
+    }
+
+    /**
+     * Sets the queue admitting the incoming batches. By default, the queue has no
+     * depth limit nor timeout.
+     */
+    public void setAdmissionQueue(AdmissionQueue admissionQueue) {
+        this.admissionQueue = admissionQueue;
+    }
+
+    /**
+     * Saves the state of the algorithm in the given snapshot file between two batches
+     * and returns whether it was saved.
+     */
+    public synchronized boolean saveSnapshot(File snapshotFile) throws IOException {
+        return shortestPathAlgorithm.saveSnapshot(snapshotFile);
+    }
+
+    /**
+     * Closes the batch log and the slow query log (stopping their drainer threads)
+     * once the current batch completes. Must be called when the server shuts down.
+     */
+    public synchronized void shutdown() {
+        batchEventLog.close();
+        if (slowQueryLog != null) slowQueryLog.close();
+    }
+
+    /**
+     * Returns the metrics of this server (exposed through JMX by the driver).
+     */
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    //
+    // Protected Methods
+    //
+
+    /**
+     * Waits until the given version is applied. The primary is always up-to-date.
+     */
+    protected void awaitVersion(long minVersion) throws RemoteException {
+        // Do nothing
+    }
+
+    /**
+     * Returns whether the server accepts batches containing updates.
+     */
+    protected boolean acceptsUpdates() {
+        return true;
+    }
+
+    /**
+     * Performs a single update transaction serially and updates the
+     * ShortestPathAlgorithm state after processing the transaction. Only the
+     * operations which change the graph increment the graph version.
+     */
+    protected void performUpdateTransaction(List<Operation> updateTransaction) throws RemoteException {
+        for (Operation operation : updateTransaction) {
+            boolean graphChanged = false;
+            switch (operation.getOperationType()) {
+                case ADD -> graphChanged =
+                        shortestPathAlgorithm.addNewEdge(operation.getA(), operation.getB());
+                case DELETE -> graphChanged =
+                        shortestPathAlgorithm.deleteEdge(operation.getA(), operation.getB());
+                default -> {
+                    logger.error("Received query operation in update transaction");
+                    System.exit(-1);
+                }
+            }
+            if (graphChanged) graphVersion++;
+        }
+        StateRebuildEvent event = new StateRebuildEvent();
+        BfsKernel bfsKernel = event.isEnabled() ? BfsKernel.forCurrentThread() : null;
+        long visitedBefore = bfsKernel == null ? 0 : bfsKernel.getTotalVisitedCount();
+        event.begin();
+        long rebuildStartTime = System.nanoTime();
+        shortestPathAlgorithm.updateStateIfAny();
+        metrics.stateRebuildLatency.record(System.nanoTime() - rebuildStartTime);
+        if (event.shouldCommit()) {
+            event.algorithm = algorithmName;
+            event.visitedNodes = bfsKernel.getTotalVisitedCount() - visitedBefore;
+            event.commit();
+        }
     }
 
     //
@@ -55,77 +275,304 @@ public class ServerImpl extends UnicastRemoteObject implements Server {
     //
 
     /**
-     * Performs update transactions serially and query transactions parallel
+     * Waits until the decoded batch is admitted and returns the admission queue
+     * which must be released once the batch is executed. Query-only batches are
+     * admitted before the batches containing updates.
      */
-    private List<Integer> performTransactions(List<List<Operation>> splitBatch) throws RemoteException {
+    private AdmissionQueue admit(Operation[] localBatch) throws RemoteException {
+        boolean queryOnly = true;
+        for (Operation operation : localBatch) {
+            if (! operation.getOperationType().isQuery()) {
+                queryOnly = false;
+                break;
+            }
+        }
+        AdmissionQueue admissionQueue = this.admissionQueue;
+        try {
+            metrics.admissionWaitLatency.record(admissionQueue.admit(queryOnly));
+        } catch (RemoteException e) {
+            metrics.admissionRejections.increment();
+            throw e;
+        }
+        return admissionQueue;
+    }
+
+    /**
+     * Executes the decoded batch and returns the results of all its queries.
+     */
+    private List<Integer> collectBatch(Operation[] localBatch) throws RemoteException {
         List<Integer> result = new ArrayList<>();
+        processBatch(localBatch, partialResult -> {
+            for (int value : partialResult)
+                result.add(value);
+        }, result);
+        return result;
+    }
+
+    /**
+     * Executes the decoded batch and passes the results of each query transaction to
+     * the listener. The collected result (if any) is only used for logging.
+     */
+    private void processBatch(Operation[] localBatch, ResultListener listener,
+                              List<Integer> collectedResult) throws RemoteException {
+        if (shortestPathAlgorithm == null)
+            logger.error("ShortestPathAlgorithm isn't set.");
+        BatchEvent event = new BatchEvent();
+        event.begin();
+        long batchStartTime = System.nanoTime();
+        long batchId = batchEventLog.nextBatchId();
+        batchEventLog.batchReceived(batchId, localBatch);
+        long processingStartTime = System.currentTimeMillis();
+        long splitStartTime = System.nanoTime();
+        List<List<Operation>> splitBatch = splitBatch(localBatch);
+        metrics.splitBatchLatency.record(System.nanoTime() - splitStartTime);
+        if (! acceptsUpdates()) {
+            for (List<Operation> transaction : splitBatch)
+                if (! transaction.get(0).getOperationType().isQuery())
+                    throw new RemoteException("This server only accepts query-only batches");
+        }
+        int resultCount = performTransactions(splitBatch, listener, batchId);
+        metrics.batches.increment();
+        metrics.operations.add(localBatch.length);
+        metrics.batchLatency.record(System.nanoTime() - batchStartTime);
+        if (event.shouldCommit()) {
+            event.batchId = batchId;
+            event.operations = localBatch.length;
+            event.transactions = splitBatch.size();
+            event.results = resultCount;
+            event.commit();
+        }
+        long processingTime = System.currentTimeMillis() - processingStartTime;
+        if (collectedResult != null)
+            batchEventLog.batchProcessed(batchId, collectedResult, processingTime);
+        else batchEventLog.batchProcessed(batchId, resultCount, processingTime);
+    }
+
+    /**
+     * Performs update transactions serially and query transactions parallel and
+     * returns the number of results passed to the listener.
+     */
+    private int performTransactions(List<List<Operation>> splitBatch, ResultListener listener, long batchId)
+            throws RemoteException {
+        int resultCount = 0;
         for (List<Operation> transaction : splitBatch) {
-            if (transaction.get(0).getOperationType() == OperationType.QUERY)
-                result.addAll(performQueryTransaction(transaction));
-            else performUpdateTransaction(transaction);
+            TransactionEvent event = new TransactionEvent();
+            event.begin();
+            long transactionStartTime = System.nanoTime();
+            boolean query = transaction.get(0).getOperationType().isQuery();
+            if (query) {
+                int[] transactionResult = performQueryTransaction(transaction, batchId);
+                listener.onResults(transactionResult);
+                resultCount += transactionResult.length;
+                metrics.queries.add(transaction.size());
+                metrics.queryTransactionLatency.record(System.nanoTime() - transactionStartTime);
+            }
+            else {
+                performUpdateTransaction(transaction);
+                version++;
+                updateStream.publish(version, transaction);
+                metrics.updateTransactionLatency.record(System.nanoTime() - transactionStartTime);
+            }
+            if (event.shouldCommit()) {
+                event.batchId = batchId;
+                event.query = query;
+                event.operations = transaction.size();
+                event.commit();
+            }
         }
-        return result;
+        return resultCount;
     }
 
     /**
      *  Performs a single query transaction parallel if the batch queries >=
      *  MINIMUM_NUMBER_OF_QUERIES_TO_EXECUTE_PARALLEL. Otherwise, performs it
      *  serially to overcome the overhead of the parallel execution.
-     *  It appends the query results in the given list.
+     *  Each part of the transaction writes its results directly in its own range
+     *  of the returned array. The nearest nodes and approximate queries (whose
+     *  results have more than one value) write them aside and they are merged once
+     *  all the parts finish.
      */
-    private List<Integer> performQueryTransaction(List<Operation> queryTransaction) throws RemoteException {
-        List<Integer> transactionResult = new ArrayList<>(queryTransaction.size());
+    private int[] performQueryTransaction(List<Operation> queryTransaction, long batchId) throws RemoteException {
+        int[] transactionResult = new int[queryTransaction.size()];
+        int[][] multipleValues = null;
+        for (Operation operation : queryTransaction) {
+            OperationType operationType = operation.getOperationType();
+            if (operationType == OperationType.NEAREST_QUERY || operationType == OperationType.APPROXIMATE_QUERY) {
+                multipleValues = new int[queryTransaction.size()][];
+                break;
+            }
+        }
+        final int[][] multipleValuesResult = multipleValues;
         if (queryTransaction.size() < minimumNumberOfQueriesToExecuteInParallel) {
-            for (Operation operation : queryTransaction)
-                transactionResult.add(performQueryOperation(operation));
+            for (int i = 0 ; i < transactionResult.length ; i++)
+                performQueryOperation(queryTransaction.get(i), i, transactionResult,
+                                      multipleValuesResult, batchId);
         }
         else {
             List<List<Operation>> dividedList = divideList(queryTransaction, numOfThreads);
-            ConcurrentHashMap<Integer, List<Integer>> partialResults = new ConcurrentHashMap<>(numOfThreads);
-            ExecutorService executor = Executors.newFixedThreadPool(numOfThreads);
-            for (int i = 0 ; i < numOfThreads ; i++) {
-                List<Operation> queryOperations = dividedList.get(i);
-                final int finalI = i;
-                executor.submit(() -> {
-                    List<Integer> result = new ArrayList<>(queryOperations.size());
-                    for (Operation queryOperation : queryOperations) {
-                        try {
-                            result.add(performQueryOperation(queryOperation));
-                        } catch (RemoteException e) {
-                            logger.error(e.getMessage());
-                            System.exit(-1);
-                        }
-                    }
-                    partialResults.put(finalI, result);
-                });
+            List<Future<?>> partialResults = new ArrayList<>(dividedList.size());
+            int offset = 0;
+            for (List<Operation> queryOperations : dividedList) {
+                final int partOffset = offset;
+                partialResults.add(executor.submit(() -> {
+                    for (int i = 0 ; i < queryOperations.size() ; i++)
+                        performQueryOperation(queryOperations.get(i), partOffset + i,
+                                              transactionResult, multipleValuesResult, batchId);
+                    return null;
+                }));
+                offset += queryOperations.size();
             }
-            executor.shutdown();
             try {
-                boolean finishedExecution = executor.awaitTermination(2, TimeUnit.MINUTES);
-                if (! finishedExecution) {
-                    logger.error("Executor didn't wait for all tasks to finish execution");
-                    System.exit(-1);
-                }
-            } catch (InterruptedException exception) {
+                for (Future<?> partialResult : partialResults)
+                    partialResult.get(2, TimeUnit.MINUTES);
+            } catch (TimeoutException exception) {
+                logger.error("Executor didn't wait for all tasks to finish execution");
+                System.exit(-1);
+            } catch (InterruptedException | ExecutionException exception) {
                 logger.error(exception.getMessage());
                 System.exit(-1);
             }
-            for (int i = 0 ; i < numOfThreads ; i++)
-                transactionResult.addAll(partialResults.get(i));
         }
-        return transactionResult;
+        return multipleValues == null ? transactionResult
+                : mergeMultipleValues(queryTransaction, transactionResult, multipleValues);
+    }
+
+    /**
+     * Performs a single query operation and records it as a flight recorder event
+     * and in the slow query log (if any). The number of visited nodes is read from
+     * the BFS kernel of the thread only if one of them is enabled.
+     */
+    private void performQueryOperation(Operation queryOperation, int index, int[] transactionResult,
+                                       int[][] multipleValues, long batchId) throws RemoteException {
+        QueryEvent event = new QueryEvent();
+        SlowQueryLog slowQueryLog = this.slowQueryLog;
+        if (slowQueryLog == null && ! event.isEnabled()) {
+            executeQueryOperation(queryOperation, index, transactionResult, multipleValues);
+            return;
+        }
+        BfsKernel bfsKernel = BfsKernel.forCurrentThread();
+        long visitedBefore = bfsKernel.getTotalVisitedCount();
+        event.begin();
+        long queryStartTime = System.nanoTime();
+        executeQueryOperation(queryOperation, index, transactionResult, multipleValues);
+        long elapsedTime = System.nanoTime() - queryStartTime;
+        event.end();
+        long visitedNodes = bfsKernel.getTotalVisitedCount() - visitedBefore;
+        int maxFrontierSize = visitedNodes == 0 ? 0 : bfsKernel.getMaxFrontierSize();
+        if (event.shouldCommit()) {
+            event.batchId = batchId;
+            event.operationType = queryOperation.getOperationType().name();
+            event.a = queryOperation.getA();
+            event.b = queryOperation.getB();
+            event.algorithm = algorithmName;
+            event.visitedNodes = visitedNodes;
+            event.maxFrontierSize = maxFrontierSize;
+            event.commit();
+        }
+        if (slowQueryLog != null)
+            slowQueryLog.record(batchId, queryOperation.getOperationType(), queryOperation.getA(),
+                    queryOperation.getB(), algorithmName, visitedNodes, maxFrontierSize, elapsedTime);
+    }
+
+    /**
+     * Executes a single query operation and writes its result at the given index of
+     * either the transaction result or the multiple values.
+     */
+    private void executeQueryOperation(Operation queryOperation, int index,
+                                       int[] transactionResult, int[][] multipleValues)
+            throws RemoteException {
+        int a = queryOperation.getA(), b = queryOperation.getB();
+        switch (queryOperation.getOperationType()) {
+            case QUERY -> transactionResult[index] = queryShortestPath(a, b);
+            case BOUNDED_QUERY -> transactionResult[index] =
+                    queryBoundedShortestPath(a, b, queryOperation.getLimit());
+            case NEAREST_QUERY -> multipleValues[index] =
+                    shortestPathAlgorithm.queryNearestNodes(a, queryOperation.getLimit());
+            case APPROXIMATE_QUERY -> multipleValues[index] =
+                    queryApproximateShortestPath(a, b, queryOperation.getLimit());
+            default -> {
+                logger.error("Received UPDATE operation in query transaction");
+                System.exit(-1);
+            }
+        }
     }
 
     /**
-     * Performs a single query operation and appends the result to the list.
+     * Returns the shortest path from the result cache if it's cached at the current
+     * graph version. Otherwise, calculates and caches it.
      */
-    private int performQueryOperation(Operation queryOperation) throws RemoteException {
-        if (queryOperation.getOperationType() != OperationType.QUERY) {
-            logger.error("Received UPDATE operation in query transaction");
-            System.exit(-1);
+    private int queryShortestPath(int a, int b) {
+        if (resultCache == null) return shortestPathAlgorithm.queryShortestPath(a, b);
+        int path = resultCache.get(a, b, graphVersion);
+        if (path != ResultCache.MISSING) {
+            metrics.resultCacheHits.increment();
+            return path;
         }
-        return shortestPathAlgorithm.queryShortestPath
-                (queryOperation.getA(), queryOperation.getB());
+        metrics.resultCacheMisses.increment();
+        path = shortestPathAlgorithm.queryShortestPath(a, b);
+        resultCache.put(a, b, graphVersion, path);
+        return path;
+    }
+
+    /**
+     * Returns the bounded shortest path using the cached shortest path if any. A
+     * found path is the shortest path so it's cached too.
+     */
+    private int queryBoundedShortestPath(int a, int b, int maxHops) {
+        if (resultCache == null) return shortestPathAlgorithm.queryBoundedShortestPath(a, b, maxHops);
+        int path = resultCache.get(a, b, graphVersion);
+        if (path != ResultCache.MISSING) {
+            metrics.resultCacheHits.increment();
+            return path <= maxHops ? path : -1;
+        }
+        metrics.resultCacheMisses.increment();
+        path = shortestPathAlgorithm.queryBoundedShortestPath(a, b, maxHops);
+        if (path != -1) resultCache.put(a, b, graphVersion, path);
+        return path;
+    }
+
+    /**
+     * Returns the approximate shortest path using the cached shortest path if any
+     * (which is exact). An exact result of the algorithm is cached too.
+     */
+    private int[] queryApproximateShortestPath(int a, int b, int maxError) {
+        if (resultCache == null) return shortestPathAlgorithm.queryApproximateShortestPath(a, b, maxError);
+        int path = resultCache.get(a, b, graphVersion);
+        if (path != ResultCache.MISSING) {
+            metrics.resultCacheHits.increment();
+            return new int[] {path, path};
+        }
+        metrics.resultCacheMisses.increment();
+        int[] estimate = shortestPathAlgorithm.queryApproximateShortestPath(a, b, maxError);
+        if (estimate[0] == estimate[1]) resultCache.put(a, b, graphVersion, estimate[0]);
+        return estimate;
+    }
+
+    /**
+     * Replaces the result of each nearest nodes query by the number of nodes
+     * followed by the nodes, and the result of each approximate query by its
+     * estimate followed by its lower bound.
+     */
+    private int[] mergeMultipleValues(List<Operation> queryTransaction, int[] transactionResult,
+                                      int[][] multipleValues) throws RemoteException {
+        int length = 0;
+        for (int i = 0 ; i < transactionResult.length ; i++) {
+            if (multipleValues[i] == null) length++;
+            else if (queryTransaction.get(i).getOperationType() == OperationType.NEAREST_QUERY)
+                length += 1 + multipleValues[i].length;
+            else length += multipleValues[i].length;
+        }
+        int[] mergedResult = new int[length];
+        for (int i = 0, j = 0 ; i < transactionResult.length ; i++) {
+            if (multipleValues[i] == null) mergedResult[j++] = transactionResult[i];
+            else {
+                if (queryTransaction.get(i).getOperationType() == OperationType.NEAREST_QUERY)
+                    mergedResult[j++] = multipleValues[i].length;
+                System.arraycopy(multipleValues[i], 0, mergedResult, j, multipleValues[i].length);
+                j += multipleValues[i].length;
+            }
+        }
+        return mergedResult;
     }
 
     /**
@@ -143,41 +590,17 @@ public class ServerImpl extends UnicastRemoteObject implements Server {
     }
 
     /**
-     * Performs a single update transaction serially and updates the
-     * ShortestPathAlgorithm state after processing the transaction.
-     */
-    private void performUpdateTransaction(List<Operation> updateTransaction) throws RemoteException {
-        for (Operation operation : updateTransaction) {
-            switch (operation.getOperationType()) {
-                case ADD ->
-                        shortestPathAlgorithm.addNewEdge(operation.getA(), operation.getB());
-                case DELETE ->
-                        shortestPathAlgorithm.deleteEdge(operation.getA(), operation.getB());
-                default -> {
-                    logger.error("Received QUERY operation in update transaction");
-                    System.exit(-1);
-                }
-            }
-        }
-        shortestPathAlgorithm.updateStateIfAny();
-    }
-
-    /**
-     * Accumulates consecutive updates in a single list and consecutive queries
-     * in a single list in order to discriminate between these two types of operations.
+     * Accumulates consecutive updates in a single list and consecutive queries (of
+     * any query type) in a single list in order to discriminate between these two
+     * types of operations.
      */
     private List<List<Operation>> splitBatch(Operation[] batch) throws RemoteException {
         List<List<Operation>> splitList = new ArrayList<>();
         List<Operation> currentSplit = new ArrayList<>();
         for (Operation currentOperation : batch) {
-            OperationType currentOperationType = currentOperation.getOperationType();
-            OperationType currentSplitType = currentSplit.isEmpty()
-                    ? null
-                    : currentSplit.get(0).getOperationType();
             if (currentSplit.isEmpty()
-                    || currentOperationType == currentSplitType
-                    || currentOperationType == OperationType.ADD && currentSplitType == OperationType.DELETE
-                    || currentOperationType == OperationType.DELETE && currentSplitType == OperationType.ADD)
+                    || currentOperation.getOperationType().isQuery()
+                       == currentSplit.get(0).getOperationType().isQuery())
                 currentSplit.add(currentOperation);
             else {
                 splitList.add(currentSplit);
@@ -189,17 +612,26 @@ public class ServerImpl extends UnicastRemoteObject implements Server {
         return splitList;
     }
 
-    private String getBatchContent(Operation[] batch) throws RemoteException {
-        StringBuilder sb = new StringBuilder();
-        sb.append("[");
-        for (int i = 0; i < batch.length; i++) {
+    /**
+     * Reads all the operations of the batch (which might be remote objects) into
+     * local operations. It's done before admitting the batch so the remote calls
+     * don't hold the server.
+     */
+    private Operation[] decodeBatch(Operation[] batch) throws RemoteException {
+        long decodeStartTime = System.nanoTime();
+        Operation[] localBatch = new Operation[batch.length];
+        for (int i = 0 ; i < batch.length ; i++) {
             Operation operation = batch[i];
-            sb.append("{").append(operation.getA()).append(", ")
-                    .append(operation.getB()).append(", ")
-                    .append(operation.getOperationType()).append('}');
-            if (i < batch.length - 1)  sb.append(", ");
+            if (operation instanceof LocalOperation) {
+                localBatch[i] = operation;
+                continue;
+            }
+            // The limit is only read when it's used to save a remote call
+            OperationType operationType = operation.getOperationType();
+            localBatch[i] = new LocalOperation(operation.getA(), operation.getB(),
+                    operationType.hasLimit() ? operation.getLimit() : 0, operationType);
         }
-        sb.append("]");
-        return sb.toString();
+        metrics.decodeLatency.record(System.nanoTime() - decodeStartTime);
+        return localBatch;
     }
 }
@@ -0,0 +1,98 @@
+package com.server;
+
+import com.ResultListener;
+
+import java.rmi.RemoteException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Passes the results of a batch executed in streaming mode to its listener (usually a
+ * remote callback) from a separate thread, so the server never waits for the
+ * listener while it holds its monitor (and every other client).
+ *
+ * Notes:
+ * 1) The results are only pending while the listener is behind, so a listener
+ *    keeping up holds little memory. A slow listener holds at most the results of
+ *    its batch (like a batch which isn't streamed), and the server only waits for it
+ *    after releasing its monitor.
+ * 2) The results are sent in their order and all of them are sent before the
+ *    streaming call returns.
+ * 3) If the listener fails, its failure is thrown to the server on the next results
+ *    (stopping the batch) and the pending results are discarded.
+ */
+final class StreamingSender implements ResultListener {
+
+    private static final int[] END = new int[0];
+
+    private final ResultListener listener;
+    private final LinkedBlockingQueue<int[]> pendingResults;
+    private final CompletableFuture<Void> sent;
+    private volatile RemoteException failure;
+
+    StreamingSender(ResultListener listener, Executor executor) {
+        this.listener = listener;
+        this.pendingResults = new LinkedBlockingQueue<>();
+        this.sent = new CompletableFuture<>();
+        executor.execute(this::send);
+    }
+
+    /**
+     * Queues the results without waiting for the listener.
+     */
+    @Override
+    public void onResults(int[] results) throws RemoteException {
+        if (failure != null) throw failure;
+        pendingResults.add(results);
+    }
+
+    /**
+     * Marks the end of the results, it must be called once the batch is executed
+     * (even if it failed) so the sending thread is released.
+     */
+    void close() {
+        pendingResults.add(END);
+    }
+
+    /**
+     * Waits until all the results are sent and throws the failure of the listener
+     * (if any).
+     */
+    void awaitSent() throws RemoteException {
+        try {
+            sent.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Interrupted while streaming the results");
+        } catch (ExecutionException e) {
+            throw new RemoteException("Failed to stream the results", e.getCause());
+        }
+        if (failure != null) throw failure;
+    }
+
+    //
+    // Private Methods
+    //
+
+    private void send() {
+        try {
+            while (true) {
+                int[] results = pendingResults.take();
+                if (results == END) break;
+                if (failure != null) continue; // Discarding the results after a failure
+                try {
+                    listener.onResults(results);
+                } catch (RemoteException e) {
+                    failure = e;
+                } catch (RuntimeException e) {
+                    failure = new RemoteException("Result listener failed", e);
+                }
+            }
+            sent.complete(null);
+        } catch (Throwable e) {
+            sent.completeExceptionally(e);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.server.admission;
+
+import com.ServerOverloadedException;
+
+import java.rmi.RemoteException;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded queue admitting the incoming batches one at a time, so bursts of clients
+ * wait in a queue of known depth instead of piling up on the server monitor.
+ *
+ * Steps:
+ * 1) A batch arriving while the server is idle (and nothing waits) is admitted
+ *    right away.
+ * 2) Otherwise, it's rejected immediately if maxDepth batches are already waiting,
+ *    with a retry-after estimated from the batches ahead and the average execution
+ *    time of the last batches.
+ * 3) A waiting batch is ordered by its arrival time. Batches containing updates are
+ *    ordered as if they arrived half the timeout later, so query-only batches go
+ *    first while the updates still can't be starved longer than that.
+ * 4) Releasing the server wakes up the head of the queue only. A batch which isn't
+ *    admitted within the timeout leaves the queue and is rejected.
+ *
+ * Notes:
+ * 1) Rejected batches are never executed, so the client can safely send them again.
+ */
+public class AdmissionQueue {
+
+    private static final int AVERAGE_WEIGHT_SHIFT = 3; // Weight of a new sample is 1/8
+
+    private final int maxDepth;
+    private final long timeoutNanos;
+    private final ReentrantLock lock;
+    private final PriorityQueue<Ticket> waitingBatches; // Guarded by lock
+    private boolean busy; // Whether an admitted batch is executing (guarded by lock)
+    private long nextSequence; // Guarded by lock
+    private long averageExecutionNanos; // Guarded by lock
+
+    /**
+     * Creates a queue holding at most maxDepth waiting batches, each waiting at most
+     * timeoutMillis (0 means no timeout).
+     */
+    public AdmissionQueue(int maxDepth, long timeoutMillis) {
+        this.maxDepth = maxDepth;
+        this.timeoutNanos = timeoutMillis <= 0 ? Long.MAX_VALUE : TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        this.lock = new ReentrantLock();
+        this.waitingBatches = new PriorityQueue<>();
+    }
+
+    /**
+     * Creates a queue without a depth limit nor a timeout.
+     */
+    public AdmissionQueue() {
+        this(Integer.MAX_VALUE, 0);
+    }
+
+    /**
+     * Waits until the batch is admitted and returns the time it waited in
+     * nanoseconds. The caller must call release() once the batch is executed.
+     */
+    public long admit(boolean queryOnly) throws RemoteException {
+        long arrivalTime = System.nanoTime();
+        lock.lock();
+        try {
+            if (! busy && waitingBatches.isEmpty()) {
+                busy = true;
+                return 0;
+            }
+            if (waitingBatches.size() >= maxDepth)
+                throw new ServerOverloadedException("Admission queue is full (" + maxDepth
+                        + " waiting batches)", retryAfterMillis());
+            long priorityTime = queryOnly || timeoutNanos == Long.MAX_VALUE
+                    ? arrivalTime : arrivalTime + timeoutNanos / 2;
+            Ticket ticket = new Ticket(priorityTime, nextSequence++, lock.newCondition());
+            waitingBatches.add(ticket);
+            try {
+                long remaining = timeoutNanos;
+                while (busy || waitingBatches.peek() != ticket) {
+                    if (remaining <= 0) {
+                        waitingBatches.remove(ticket);
+                        signalHead();
+                        throw new ServerOverloadedException("Batch waited more than "
+                                + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + " ms to be admitted",
+                                retryAfterMillis());
+                    }
+                    remaining = ticket.admitted.awaitNanos(remaining);
+                }
+            } catch (InterruptedException e) {
+                waitingBatches.remove(ticket);
+                signalHead();
+                Thread.currentThread().interrupt();
+                throw new RemoteException("Interrupted while waiting to be admitted");
+            }
+            waitingBatches.poll();
+            busy = true;
+            return System.nanoTime() - arrivalTime;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Releases the server after executing an admitted batch which took the given
+     * time and admits the next waiting batch.
+     */
+    public void release(long executionNanos) {
+        lock.lock();
+        try {
+            averageExecutionNanos += (executionNanos - averageExecutionNanos) >> AVERAGE_WEIGHT_SHIFT;
+            busy = false;
+            signalHead();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of batches waiting to be admitted.
+     */
+    public int depth() {
+        lock.lock();
+        try {
+            return waitingBatches.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //
+    // Private Methods
+    //
+
+    private void signalHead() {
+        Ticket head = waitingBatches.peek();
+        if (head != null && ! busy) head.admitted.signal();
+    }
+
+    /**
+     * Returns the estimated time to execute the running batch and the waiting ones.
+     */
+    private long retryAfterMillis() {
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis((waitingBatches.size() + 1) * averageExecutionNanos));
+    }
+
+    /**
+     * Waiting batch ordered by its priority time then by its arrival order.
+     */
+    private static final class Ticket implements Comparable<Ticket> {
+        private final long priorityTime;
+        private final long sequence;
+        private final Condition admitted;
+
+        private Ticket(long priorityTime, long sequence, Condition admitted) {
+            this.priorityTime = priorityTime;
+            this.sequence = sequence;
+            this.admitted = admitted;
+        }
+
+        @Override
+        public int compareTo(Ticket other) {
+            int comparison = Long.compare(priorityTime - other.priorityTime, 0); // Overflow safe
+            return comparison != 0 ? comparison : Long.compare(sequence, other.sequence);
+        }
+    }
+}
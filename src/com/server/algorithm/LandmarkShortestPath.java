@@ -0,0 +1,327 @@
+package com.server.algorithm;
+
+import com.server.graph.ArrayGraphStore;
+import com.server.graph.BfsKernel;
+import com.server.graph.GraphStore;
+import com.server.graph.NodeOrdering;
+
+import java.io.FileNotFoundException;
+import java.util.Arrays;
+
+/**
+ * This implementation keeps the distances from and to a few landmark nodes and uses
+ * them (with the triangle inequality) to estimate the shortest paths in constant
+ * time per landmark.
+ *
+ * Steps:
+ * 1) After loading the graph, the landmarks are selected one by one: the first is
+ *    the node of maximum degree, then each next one is the node farthest from the
+ *    selected landmarks (the nodes they don't reach at all first), ties going to
+ *    the node of maximum degree.
+ * 2) The distances from each landmark L are calculated by a BFS over the graph and
+ *    the distances to L by a BFS over a reversed copy of the graph.
+ * 3) For each landmark, the shortest path from A to B is at most d(A, L) + d(L, B)
+ *    and at least both d(L, B) - d(L, A) and d(A, L) - d(B, L). If L reaches A but
+ *    not B (or B reaches L but A doesn't), A and B aren't connected.
+ * 4) An approximate query returns the smallest upper bound (the estimate) and the
+ *    largest lower bound. If the landmarks don't give an upper bound or the bounds
+ *    are more than the accepted error apart, it falls back to an exact search.
+ * 5) An exact query (or a fallback) is answered by a BFS which stops at the upper
+ *    bound, and it's skipped if the landmarks already prove the answer.
+ * 6) Adding an edge propagates the shorter distances from its end (or to its start)
+ *    for every landmark. Deleting an edge marks a landmark to be re-calculated only
+ *    if the edge was its only shortest path to the end of the edge (or from its
+ *    start), so most deletions don't cost anything.
+ *
+ * Notes:
+ * 1) Uses two rows of distances per landmark, so it works with large graphs and
+ *    the latency of an approximate query doesn't depend on the graph size.
+ * 2) The error bound is tight when one of the nodes is close to a landmark and
+ *    loose for nodes far from all of them, more landmarks give tighter bounds.
+ * 3) Same as the other implementations, the shortest path from a node to itself is
+ *    -1, so it's -1 for the approximate queries as well.
+ */
+public class LandmarkShortestPath extends ShortestPathAlgorithm {
+
+    public static final int DEFAULT_LANDMARK_COUNT = 16;
+    private static final int UNREACHED = -1;
+
+    private final GraphStore reverseGraph; // Reversed edges with the same node indices
+    private final int[] landmarks; // Indices of the landmarks
+    private final int[][] distancesFrom; // Distances from each landmark by node index (-1 if unreached)
+    private final int[][] distancesTo; // Distances to each landmark by node index (-1 if unreached)
+    private final boolean[] staleFrom; // Landmarks whose distances from them must be re-calculated
+    private final boolean[] staleTo; // Landmarks whose distances to them must be re-calculated
+    private int[] queue; // Used to propagate the distances after adding an edge
+    private boolean shouldUpdateState;
+
+    public LandmarkShortestPath(String initialGraphFilePath) throws FileNotFoundException {
+        this(initialGraphFilePath, new ArrayGraphStore());
+    }
+
+    public LandmarkShortestPath(String initialGraphFilePath, GraphStore graph) throws FileNotFoundException {
+        this(initialGraphFilePath, graph, NodeOrdering.NONE, DEFAULT_LANDMARK_COUNT);
+    }
+
+    /**
+     * Creates the algorithm indexing the nodes of the initial graph in the given
+     * order and selecting the given number of landmarks (at most the number of nodes).
+     */
+    public LandmarkShortestPath(String initialGraphFilePath, GraphStore graph, NodeOrdering nodeOrdering,
+                                int landmarkCount) throws FileNotFoundException {
+        super(initialGraphFilePath, graph, nodeOrdering);
+        this.reverseGraph = new ArrayGraphStore();
+        addNewNodes();
+        int[] buffer = new int[16];
+        for (int index = 0 ; index < graph.nodeCount() ; index++) {
+            int degree = graph.degree(index);
+            if (buffer.length < degree) buffer = new int[Math.max(degree, buffer.length * 2)];
+            int[] neighbours = graph.neighbours(index, buffer);
+            for (int i = 0 ; i < degree ; i++)
+                reverseGraph.addEdge(graph.nodeAt(neighbours[i]), graph.nodeAt(index));
+        }
+        reverseGraph.compact();
+
+        int count = Math.max(0, Math.min(landmarkCount, graph.nodeCount()));
+        this.landmarks = new int[count];
+        this.distancesFrom = new int[count][];
+        this.distancesTo = new int[count][];
+        this.staleFrom = new boolean[count];
+        this.staleTo = new boolean[count];
+        this.queue = new int[graph.nodeCount()];
+        selectLandmarks();
+    }
+
+    @Override
+    public boolean addNewEdge(int a, int b) {
+        if (! graph.addEdge(a, b)) return false; // The edge existed before
+        addNewNodes();
+        reverseGraph.addEdge(b, a);
+        int indexA = graph.indexOf(a), indexB = graph.indexOf(b);
+        for (int l = 0 ; l < landmarks.length ; l++) {
+            int[] from = distancesFrom[l], to = distancesTo[l];
+            if (! staleFrom[l] && from[indexA] != UNREACHED
+                    && (from[indexB] == UNREACHED || from[indexA] + 1 < from[indexB])) {
+                from[indexB] = from[indexA] + 1;
+                propagate(graph, from, indexB);
+            }
+            if (! staleTo[l] && to[indexB] != UNREACHED
+                    && (to[indexA] == UNREACHED || to[indexB] + 1 < to[indexA])) {
+                to[indexA] = to[indexB] + 1;
+                propagate(reverseGraph, to, indexA);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean deleteEdge(int a, int b) {
+        if (! graph.removeEdge(a, b)) return false;
+        reverseGraph.removeEdge(b, a);
+        int indexA = graph.indexOf(a), indexB = graph.indexOf(b);
+        for (int l = 0 ; l < landmarks.length ; l++) {
+            int[] from = distancesFrom[l], to = distancesTo[l];
+            if (! staleFrom[l] && from[indexA] != UNREACHED && from[indexB] == from[indexA] + 1
+                    && ! hasParent(reverseGraph, from, indexB)) {
+                staleFrom[l] = true;
+                shouldUpdateState = true;
+            }
+            if (! staleTo[l] && to[indexB] != UNREACHED && to[indexA] == to[indexB] + 1
+                    && ! hasParent(graph, to, indexA)) {
+                staleTo[l] = true;
+                shouldUpdateState = true;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int queryShortestPath(int a, int b) {
+        return queryBoundedShortestPath(a, b, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int queryBoundedShortestPath(int a, int b, int maxHops) {
+        // Either A or B doesn't exist in the graph
+        int indexA = graph.indexOf(a), indexB = graph.indexOf(b);
+        if (indexA == -1 || indexB == -1 || indexA == indexB) return -1;
+        return search(indexA, indexB, maxHops, bounds(indexA, indexB));
+    }
+
+    /**
+     * Returns the bounds given by the landmarks if they are at most maxError apart.
+     * Otherwise, returns the exact shortest path as both.
+     */
+    @Override
+    public int[] queryApproximateShortestPath(int a, int b, int maxError) {
+        int indexA = graph.indexOf(a), indexB = graph.indexOf(b);
+        if (indexA == -1 || indexB == -1 || indexA == indexB) return new int[] {-1, -1};
+        int[] bounds = bounds(indexA, indexB);
+        int upperBound = bounds[0], lowerBound = bounds[1];
+        if (upperBound != Integer.MAX_VALUE && (long) upperBound - lowerBound <= maxError) {
+            metrics.approximateAnswers.increment();
+            return bounds;
+        }
+        metrics.approximateFallbacks.increment();
+        int path = search(indexA, indexB, Integer.MAX_VALUE, bounds);
+        return new int[] {path, path};
+    }
+
+    @Override
+    public int[] queryNearestNodes(int a, int k) {
+        return findNearestNodes(a, k, null);
+    }
+
+    /**
+     * Re-calculates the distances of the landmarks marked by the deletions.
+     */
+    @Override
+    public void updateStateIfAny() {
+        if (shouldUpdateState) {
+            this.shouldUpdateState = false;
+            for (int l = 0 ; l < landmarks.length ; l++) {
+                if (staleFrom[l]) calculateDistances(graph, landmarks[l], distancesFrom[l]);
+                if (staleTo[l]) calculateDistances(reverseGraph, landmarks[l], distancesTo[l]);
+                staleFrom[l] = staleTo[l] = false;
+            }
+        }
+    }
+
+    //
+    // Private Methods
+    //
+
+    /**
+     * Returns the smallest upper bound (Integer.MAX_VALUE if none) and the largest
+     * lower bound of the shortest path between two different nodes given by the
+     * landmarks, or -1 as both if they prove that the nodes aren't connected.
+     */
+    private int[] bounds(int indexA, int indexB) {
+        int upperBound = Integer.MAX_VALUE, lowerBound = 1;
+        for (int l = 0 ; l < landmarks.length ; l++) {
+            int[] from = distancesFrom[l], to = distancesTo[l];
+            int fromA = from[indexA], fromB = from[indexB], toA = to[indexA], toB = to[indexB];
+            if (toA != UNREACHED && fromB != UNREACHED)
+                upperBound = Math.min(upperBound, toA + fromB);
+            if (fromA != UNREACHED) {
+                if (fromB == UNREACHED) return new int[] {-1, -1};
+                lowerBound = Math.max(lowerBound, fromB - fromA);
+            }
+            if (toB != UNREACHED) {
+                if (toA == UNREACHED) return new int[] {-1, -1};
+                lowerBound = Math.max(lowerBound, toA - toB);
+            }
+        }
+        return new int[] {upperBound, lowerBound};
+    }
+
+    /**
+     * Returns the shortest path if it's at most maxHops and -1 otherwise, performing
+     * a BFS only if the bounds don't prove the answer.
+     */
+    private int search(int indexA, int indexB, int maxHops, int[] bounds) {
+        int upperBound = bounds[0], lowerBound = bounds[1];
+        if (upperBound == -1 || lowerBound > maxHops) return -1;
+        if (upperBound == lowerBound) return upperBound;
+        BfsKernel bfsKernel = BfsKernel.forCurrentThread();
+        int path = bfsKernel.search(graph, indexA, indexB, Math.min(maxHops, upperBound), null);
+        metrics.bfsVisitedNodes.record(bfsKernel.getVisitedCount());
+        return path;
+    }
+
+    /**
+     * Adds the nodes added to the graph to the reversed graph (in the same order so
+     * they have the same indices) and grows the distances rows if necessary.
+     */
+    private void addNewNodes() {
+        for (int index = reverseGraph.nodeCount() ; index < graph.nodeCount() ; index++)
+            reverseGraph.addNode(graph.nodeAt(index));
+        if (distancesFrom == null || queue.length >= graph.nodeCount()) return;
+        int capacity = Math.max(graph.nodeCount(), queue.length * 2);
+        queue = new int[capacity];
+        for (int l = 0 ; l < landmarks.length ; l++) {
+            distancesFrom[l] = grow(distancesFrom[l], capacity);
+            distancesTo[l] = grow(distancesTo[l], capacity);
+        }
+    }
+
+    private static int[] grow(int[] distances, int capacity) {
+        int length = distances.length;
+        distances = Arrays.copyOf(distances, capacity);
+        Arrays.fill(distances, length, capacity, UNREACHED);
+        return distances;
+    }
+
+    /**
+     * Selects the landmarks and calculates their distances.
+     */
+    private void selectLandmarks() {
+        int nodeCount = graph.nodeCount();
+        int[] closest = new int[nodeCount]; // Distance to the closest landmark in any direction
+        Arrays.fill(closest, Integer.MAX_VALUE);
+        for (int l = 0 ; l < landmarks.length ; l++) {
+            int landmark = 0;
+            for (int index = 1 ; index < nodeCount ; index++) {
+                if (closest[index] > closest[landmark] || (closest[index] == closest[landmark]
+                        && totalDegree(index) > totalDegree(landmark))) landmark = index;
+            }
+            landmarks[l] = landmark;
+            distancesFrom[l] = new int[nodeCount];
+            distancesTo[l] = new int[nodeCount];
+            calculateDistances(graph, landmark, distancesFrom[l]);
+            calculateDistances(reverseGraph, landmark, distancesTo[l]);
+            for (int index = 0 ; index < nodeCount ; index++) {
+                int from = distancesFrom[l][index], to = distancesTo[l][index];
+                if (from != UNREACHED) closest[index] = Math.min(closest[index], from);
+                if (to != UNREACHED) closest[index] = Math.min(closest[index], to);
+            }
+        }
+    }
+
+    private int totalDegree(int index) {
+        return graph.degree(index) + reverseGraph.degree(index);
+    }
+
+    /**
+     * Writes the distances from the landmark over the given graph (or reversed graph).
+     */
+    private static void calculateDistances(GraphStore graph, int landmark, int[] distances) {
+        Arrays.fill(distances, UNREACHED);
+        BfsKernel.forCurrentThread().search(graph, landmark, -1, Integer.MAX_VALUE, distances);
+        distances[landmark] = 0;
+    }
+
+    /**
+     * Propagates the shortened distance of the given node to the nodes it reaches by
+     * a BFS which only visits the nodes whose distance becomes shorter.
+     */
+    private void propagate(GraphStore graph, int[] distances, int start) {
+        int head = 0, tail = 0;
+        queue[tail++] = start;
+        int[] buffer = new int[16];
+        while (head < tail) {
+            int index = queue[head++], degree = graph.degree(index);
+            if (buffer.length < degree) buffer = new int[Math.max(degree, buffer.length * 2)];
+            int[] neighbours = graph.neighbours(index, buffer);
+            int distance = distances[index] + 1;
+            for (int i = 0 ; i < degree ; i++) {
+                int neighbour = neighbours[i];
+                if (distances[neighbour] != UNREACHED && distances[neighbour] <= distance) continue;
+                distances[neighbour] = distance;
+                queue[tail++] = neighbour;
+            }
+        }
+    }
+
+    /**
+     * Returns whether the node still has a neighbour (over the given graph) one hop
+     * closer to the landmark, so its distance is unchanged.
+     */
+    private static boolean hasParent(GraphStore graph, int[] distances, int index) {
+        int degree = graph.degree(index);
+        int[] neighbours = graph.neighbours(index, new int[degree]);
+        for (int i = 0 ; i < degree ; i++)
+            if (distances[neighbours[i]] == distances[index] - 1) return true;
+        return false;
+    }
+}
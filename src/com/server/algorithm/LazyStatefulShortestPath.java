@@ -0,0 +1,335 @@
+package com.server.algorithm;
+
+import com.server.graph.ArrayGraphStore;
+import com.server.graph.BfsKernel;
+import com.server.graph.GraphStore;
+import com.server.graph.NodeOrdering;
+import com.server.snapshot.DistanceSnapshot;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Lazy variant of the StatefulShortestPath. Instead of re-calculating the distances
+ * from every node after each change, it keeps a row of distances per queried source
+ * and only re-calculates the rows which are used.
+ *
+ * Steps:
+ * 1) Every change of the graph increments its generation, which marks all the rows
+ *    (built at older generations) as stale without touching them.
+ * 2) When a query comes, the answer is fetched from the row of its source. If the
+ *    row is missing or stale, it's re-calculated (BFS) synchronously first.
+ * 3) After an update transaction, the stale rows are refreshed in the background
+ *    by the idle threads of the query executor, the most recently used rows first.
+ *    A refresh task yields to the query transactions waiting in the executor queue.
+ * 4) The graph is guarded by a read/write lock since the background refresh runs
+ *    while the next update transaction modifies the graph.
+ *
+ * Notes:
+ * 1) The update transactions only pay for the graph changes so their latency is
+ *    almost zero compared to re-calculating the whole state.
+ * 2) Only the rows of the queried sources are kept in memory.
+ * 3) If a snapshot file is given, the rows saved in it are restored at the initial
+ *    generation, so a restarted server keeps its warm rows.
+ */
+public class LazyStatefulShortestPath extends ShortestPathAlgorithm {
+
+    private final ReentrantReadWriteLock graphLock;
+    private final AtomicLong useClock;
+    private final AtomicInteger queuedRefreshTasks;
+    private volatile Row[] rows; // Row of each source by node index (grown under graphLock)
+    private volatile long generation; // Number of changes done to the graph (guarded by graphLock)
+    private long scheduledGeneration; // Last generation whose refresh is scheduled
+    private ThreadPoolExecutor executor;
+
+    public LazyStatefulShortestPath(String initialGraphFilePath) throws FileNotFoundException {
+        this(initialGraphFilePath, new ArrayGraphStore());
+    }
+
+    public LazyStatefulShortestPath(String initialGraphFilePath, GraphStore graph) throws FileNotFoundException {
+        this(initialGraphFilePath, graph, NodeOrdering.NONE);
+    }
+
+    /**
+     * Creates the algorithm restoring its rows from the given snapshot file if it
+     * matches the initial graph.
+     */
+    public LazyStatefulShortestPath(String initialGraphFilePath, GraphStore graph, File snapshotFile)
+            throws IOException {
+        this(initialGraphFilePath, graph, NodeOrdering.NONE, snapshotFile);
+    }
+
+    /**
+     * Creates the algorithm indexing the nodes of the initial graph in the given
+     * order and restoring its rows from the given snapshot file (if any).
+     */
+    public LazyStatefulShortestPath(String initialGraphFilePath, GraphStore graph, NodeOrdering nodeOrdering,
+                                    File snapshotFile) throws IOException {
+        this(initialGraphFilePath, graph, nodeOrdering);
+        DistanceSnapshot snapshot = snapshotFile == null ? null : DistanceSnapshot.read
+                (snapshotFile, getClass().getSimpleName(), getInitialFingerprint(), graph.nodeCount());
+        if (snapshot != null) {
+            int[][] savedRows = snapshot.getRows();
+            for (int source = 0 ; source < savedRows.length ; source++)
+                if (savedRows[source] != null) rows[source] = new Row(savedRows[source], 0);
+        }
+    }
+
+    /**
+     * Creates the algorithm without rows, indexing the nodes of the initial graph in
+     * the given order.
+     */
+    private LazyStatefulShortestPath(String initialGraphFilePath, GraphStore graph, NodeOrdering nodeOrdering)
+            throws FileNotFoundException {
+        super(initialGraphFilePath, graph, nodeOrdering);
+        this.graphLock = new ReentrantReadWriteLock();
+        this.useClock = new AtomicLong();
+        this.queuedRefreshTasks = new AtomicInteger();
+        this.rows = new Row[graph.nodeCount()];
+    }
+
+    @Override
+    public void setExecutor(ThreadPoolExecutor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public boolean addNewEdge(int a, int b) {
+        graphLock.writeLock().lock();
+        try {
+            if (! graph.addEdge(a, b)) return false; // The edge existed before
+            generation++;
+            if (rows.length < graph.nodeCount())
+                rows = Arrays.copyOf(rows, Math.max(graph.nodeCount(), rows.length * 2));
+            return true;
+        } finally {
+            graphLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean deleteEdge(int a, int b) {
+        graphLock.writeLock().lock();
+        try {
+            if (! graph.removeEdge(a, b)) return false;
+            generation++;
+            return true;
+        } finally {
+            graphLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int queryShortestPath(int a, int b) {
+        // Either A or B doesn't exist in the graph
+        int indexA, indexB;
+        graphLock.readLock().lock();
+        try {
+            indexA = graph.indexOf(a);
+            indexB = graph.indexOf(b);
+        } finally {
+            graphLock.readLock().unlock();
+        }
+        if (indexA == -1 || indexB == -1) return -1;
+
+        // If the answer is in the row of A return it. Otherwise, return -1
+        int path = getFreshRow(indexA).distances[indexB];
+        return path == 0 ? -1 : path;
+    }
+
+    @Override
+    public int queryBoundedShortestPath(int a, int b, int maxHops) {
+        int path = queryShortestPath(a, b);
+        return path <= maxHops ? path : -1;
+    }
+
+    @Override
+    public int[] queryNearestNodes(int a, int k) {
+        int indexA;
+        graphLock.readLock().lock();
+        try {
+            indexA = graph.indexOf(a);
+        } finally {
+            graphLock.readLock().unlock();
+        }
+        if (indexA == -1) return new int[0];
+        int[] distances = getFreshRow(indexA).distances;
+        graphLock.readLock().lock();
+        try {
+            return BfsKernel.forCurrentThread().selectNearest(graph, distances, k);
+        } finally {
+            graphLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Saves the fresh rows if the graph is the initial one (a snapshot of another
+     * graph would never be restored).
+     */
+    @Override
+    public boolean saveSnapshot(File snapshotFile) throws IOException {
+        graphLock.readLock().lock();
+        try {
+            if (! isInitialGraph()) return false;
+            Row[] currentRows = rows;
+            int[][] freshRows = new int[currentRows.length][];
+            for (int source = 0 ; source < currentRows.length ; source++) {
+                Row row = currentRows[source];
+                if (row != null && row.generation == generation) freshRows[source] = row.distances;
+            }
+            DistanceSnapshot.write(snapshotFile, getClass().getSimpleName(), getInitialFingerprint(),
+                                   graph.nodeCount(), freshRows, null);
+            return true;
+        } finally {
+            graphLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Schedules the background refresh of the stale rows if the graph changed.
+     */
+    @Override
+    public void updateStateIfAny() {
+        long currentGeneration = generation;
+        if (currentGeneration == scheduledGeneration || executor == null) return;
+        scheduledGeneration = currentGeneration;
+        queuedRefreshTasks.incrementAndGet();
+        executor.execute(new RefreshTask(currentGeneration, null));
+    }
+
+    //
+    // Private Methods
+    //
+
+    /**
+     * Returns the row of the given source after re-calculating it if it's stale.
+     */
+    private Row getFreshRow(int source) {
+        Row row = rows[source];
+        if (row != null && row.generation == generation) metrics.cacheHits.increment();
+        else {
+            metrics.cacheMisses.increment();
+            row = calculateRow(source);
+        }
+        row.lastUsed = useClock.incrementAndGet();
+        return row;
+    }
+
+    /**
+     * Performs BFS from the given source and saves its row unless a newer one was
+     * saved meanwhile.
+     */
+    private Row calculateRow(int source) {
+        graphLock.readLock().lock();
+        try {
+            int[] distances = new int[graph.nodeCount()];
+            BfsKernel bfsKernel = BfsKernel.forCurrentThread();
+            bfsKernel.search(graph, source, -1, Integer.MAX_VALUE, distances);
+            metrics.bfsVisitedNodes.record(bfsKernel.getVisitedCount());
+            Row row = new Row(distances, generation);
+            synchronized (this) {
+                Row previousRow = rows[source];
+                if (previousRow == null) return rows[source] = row;
+                row.lastUsed = previousRow.lastUsed;
+                if (previousRow.generation > row.generation) return previousRow;
+                return rows[source] = row;
+            }
+        } finally {
+            graphLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Distances from a single source by node index (0 if not connected) calculated
+     * at a given generation of the graph.
+     */
+    private static final class Row {
+        private final int[] distances;
+        private final long generation;
+        private volatile long lastUsed;
+
+        private Row(int[] distances, long generation) {
+            this.distances = distances;
+            this.generation = generation;
+        }
+    }
+
+    /**
+     * Refreshes the stale rows of a generation. The first task orders the sources by
+     * recency and starts a task per executor thread sharing the same sources. The
+     * tasks stop once the generation changes.
+     */
+    private final class RefreshTask implements Runnable {
+        private final long taskGeneration;
+        private RefreshQueue sources;
+
+        private RefreshTask(long taskGeneration, RefreshQueue sources) {
+            this.taskGeneration = taskGeneration;
+            this.sources = sources;
+        }
+
+        @Override
+        public void run() {
+            queuedRefreshTasks.decrementAndGet();
+            if (taskGeneration != generation) return;
+            if (sources == null) {
+                sources = new RefreshQueue(rows);
+                for (int i = 1 ; i < executor.getMaximumPoolSize() ; i++)
+                    schedule(new RefreshTask(taskGeneration, sources));
+            }
+            int source;
+            while (taskGeneration == generation) {
+                // Yielding to the query transactions waiting for the executor
+                if (executor.getQueue().size() > queuedRefreshTasks.get()) {
+                    schedule(this);
+                    return;
+                }
+                if ((source = sources.poll()) == -1) return;
+                Row row = rows[source];
+                if (row != null && row.generation != taskGeneration) calculateRow(source);
+            }
+        }
+
+        private void schedule(RefreshTask refreshTask) {
+            queuedRefreshTasks.incrementAndGet();
+            executor.execute(refreshTask);
+        }
+    }
+
+    /**
+     * Sources having rows ordered from the most recently used.
+     */
+    private static final class RefreshQueue {
+        private final int[] sources;
+        private final AtomicInteger next;
+
+        private RefreshQueue(Row[] rows) {
+            // Sorting by the negated recency with the source index in the low bits
+            long[] keys = new long[rows.length];
+            int count = 0;
+            for (int source = 0 ; source < rows.length ; source++) {
+                Row row = rows[source];
+                if (row != null) keys[count++] = (-row.lastUsed << 32) | source;
+            }
+            Arrays.sort(keys, 0, count);
+            this.sources = new int[count];
+            for (int i = 0 ; i < count ; i++)
+                sources[i] = (int) keys[i];
+            this.next = new AtomicInteger();
+        }
+
+        /**
+         * Returns the next source to refresh or -1 if there are none.
+         */
+        private int poll() {
+            int index = next.getAndIncrement();
+            return index < sources.length ? sources[index] : -1;
+        }
+    }
+}
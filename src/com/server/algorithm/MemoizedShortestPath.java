@@ -1,8 +1,16 @@
 package com.server.algorithm;
 
+import com.server.graph.ArrayGraphStore;
+import com.server.graph.BfsKernel;
+import com.server.graph.GraphStore;
+import com.server.graph.NodeOrdering;
+import com.server.snapshot.DistanceSnapshot;
+
+import java.io.File;
 import java.io.FileNotFoundException;
-import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * This implementation is compromise between the two extremes StatefulShortestPath &
@@ -17,91 +25,164 @@ import java.util.concurrent.ConcurrentHashMap;
  *    proceed finding the shortest path between A and other nodes).
  *    OPTIONAL: We can save state where to carry on execution next time but adds more overhead.
  * 5) If the execution is completed and wasn't broken (because B isn't connected to A).
- *    Marks that the execution for node A is completed (handled in completedExecution HashSet).
+ *    Marks that the execution for node A is completed (handled in the completed flag of its row).
  *    Such that if the state didn't contain an entry for the query while having the
  *    execution for A finished, we would know that A & B aren't connected.
- * 6) If the graph is modified (either by adding or removing edges), the state is
- *    cleared along with the completedExecution set except in the following cases:
+ * 6) The bounded and nearest queries cache the distances they find the same way,
+ *    but a bounded BFS which stops at its depth limit doesn't complete the execution.
+ * 7) If the graph is modified (either by adding or removing edges), the state is
+ *    cleared along with the completed flags except in the following cases:
  *        i) Edges which existed before are added.
- *        ii) Edges which involve creating a new node are added.
+ *        ii) Edges which involve creating a new node are added (only the
+ *            completed flags are reset since the new node becomes reachable).
  *        iii) Edges which didn't exist before are deleted.
+ * 8) If a snapshot file is given, the cached rows (with their completed executions)
+ *    are restored from it, so a restarted server doesn't start cold.
  *
  * Notes:
  * 1) Has the best performance in normal circumstances.
  * 2) Has the most code complexity.
+ * 3) Concurrent queries from the same source share its row. A row is installed by a
+ *    compare-and-set so it's never lost, and its completed flag is a volatile field
+ *    of the row itself, so it only refers to the distances written before it.
  */
 public class MemoizedShortestPath extends ShortestPathAlgorithm {
 
-    private final ConcurrentHashMap<Integer, ConcurrentHashMap<Integer, Integer>> state;
-    private final ConcurrentHashMap<Integer, Boolean> completedExecution;
+    private AtomicReferenceArray<Row> state; // Cached row of each source by node index
     private boolean shouldUpdateState;
+    private boolean shouldResetCompletedExecution;
 
     public MemoizedShortestPath(String initialGraphFilePath) throws FileNotFoundException {
-        super(initialGraphFilePath);
-        this.state = new ConcurrentHashMap<>();
-        this.completedExecution = new ConcurrentHashMap<>();
-        this.shouldUpdateState = false;
+        this(initialGraphFilePath, new ArrayGraphStore());
     }
 
-    @Override
-    public void addNewEdge(int a, int b) {
-        if (graph.containsKey(a) && graph.containsKey(b)) {
-            HashSet<Integer> neighbours = graph.get(a);
-            if (! neighbours.contains(b)) { // The edge didn't exist before
-                neighbours.add(b);
-                shouldUpdateState = true;
+    public MemoizedShortestPath(String initialGraphFilePath, GraphStore graph) throws FileNotFoundException {
+        this(initialGraphFilePath, graph, NodeOrdering.NONE);
+    }
+
+    /**
+     * Creates the algorithm restoring its cached rows from the given snapshot file
+     * if it matches the initial graph.
+     */
+    public MemoizedShortestPath(String initialGraphFilePath, GraphStore graph, File snapshotFile)
+            throws IOException {
+        this(initialGraphFilePath, graph, NodeOrdering.NONE, snapshotFile);
+    }
+
+    /**
+     * Creates the algorithm indexing the nodes of the initial graph in the given
+     * order and restoring its cached rows from the given snapshot file (if any).
+     */
+    public MemoizedShortestPath(String initialGraphFilePath, GraphStore graph, NodeOrdering nodeOrdering,
+                                File snapshotFile) throws IOException {
+        this(initialGraphFilePath, graph, nodeOrdering);
+        DistanceSnapshot snapshot = snapshotFile == null ? null : DistanceSnapshot.read
+                (snapshotFile, getClass().getSimpleName(), getInitialFingerprint(), graph.nodeCount());
+        if (snapshot != null) {
+            int[][] rows = snapshot.getRows();
+            boolean[] completeRows = snapshot.getCompleteRows();
+            for (int source = 0 ; source < rows.length ; source++) {
+                if (rows[source] == null) continue;
+                Row row = new Row(rows[source]);
+                row.completed = completeRows[source];
+                state.set(source, row);
             }
         }
-        else {
-            graph.putIfAbsent(a, new HashSet<>());
-            graph.putIfAbsent(b, new HashSet<>());
-            graph.get(a).add(b);
-        }
+    }
+
+    /**
+     * Creates the algorithm with an empty state, indexing the nodes of the initial
+     * graph in the given order.
+     */
+    private MemoizedShortestPath(String initialGraphFilePath, GraphStore graph, NodeOrdering nodeOrdering)
+            throws FileNotFoundException {
+        super(initialGraphFilePath, graph, nodeOrdering);
+        this.state = new AtomicReferenceArray<>(graph.nodeCount());
+        this.shouldUpdateState = false;
     }
 
     @Override
-    public void deleteEdge(int a, int b) {
-        if (graph.containsKey(a) && graph.get(a).contains(b)) {
-            graph.get(a).remove(b);
-            shouldUpdateState = true;
-        }
+    public boolean addNewEdge(int a, int b) {
+        boolean nodesExisted = graph.indexOf(a) != -1 && graph.indexOf(b) != -1;
+        if (! graph.addEdge(a, b)) return false; // The edge existed before
+        if (nodesExisted) shouldUpdateState = true;
+        else shouldResetCompletedExecution = true;
+        return true;
+    }
+
+    @Override
+    public boolean deleteEdge(int a, int b) {
+        if (! graph.removeEdge(a, b)) return false;
+        shouldUpdateState = true;
+        return true;
     }
 
     @Override
     public int queryShortestPath(int a, int b) {
+        return queryBoundedShortestPath(a, b, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int queryBoundedShortestPath(int a, int b, int maxHops) {
         // Either A or B doesn't exist in the graph
-        if (! graph.containsKey(a) || ! graph.containsKey(b)) return -1;
+        int indexA = graph.indexOf(a), indexB = graph.indexOf(b);
+        if (indexA == -1 || indexB == -1) return -1;
 
-        // Checking the state
-        state.putIfAbsent(a, new ConcurrentHashMap<>());
-        ConcurrentHashMap<Integer, Integer> stateA = state.get(a);
-        if (stateA.containsKey(b)) return stateA.get(b);
+        // Checking the state (the flag is read first so the distances written before it are visible)
+        Row row = getRowOf(indexA);
+        boolean completed = row.completed;
+        int cachedPath = row.distances[indexB];
+        if (cachedPath != 0) {
+            metrics.cacheHits.increment();
+            return cachedPath <= maxHops ? cachedPath : -1;
+        }
 
         // Checking if they are not connected
-        if (completedExecution.contains(a)) return -1;
+        if (completed) {
+            metrics.cacheHits.increment();
+            return -1;
+        }
+        metrics.cacheMisses.increment();
 
         // Performing BFS while updating the state
-        Queue<Integer> queue = new LinkedList<>(graph.get(a));
-        HashSet<Integer> visitedNodes = new HashSet<>();
-        visitedNodes.add(a);
-        int path = 1, size = queue.size();
-        while (! queue.isEmpty()) {
-            while(size-- > 0) {
-                int neighbour = queue.poll();
-                if (! visitedNodes.contains(neighbour)) {
-                    visitedNodes.add(neighbour);
-                    stateA.put(neighbour, path);
-                    if (b == neighbour) return path;
-                    queue.addAll(graph.get(neighbour));
-                }
-            }
-            size = queue.size();
-            path++;
-        }
+        BfsKernel bfsKernel = BfsKernel.forCurrentThread();
+        int path = bfsKernel.search(graph, indexA, indexB, maxHops, row.distances);
+        metrics.bfsVisitedNodes.record(bfsKernel.getVisitedCount());
+
+        // They are not connected (the execution is completed only if it wasn't bounded)
+        if (path == -1 && bfsKernel.isExhausted()) row.completed = true;
+        return path;
+    }
+
+    /**
+     * Caches the distances of all the nodes reached while finding the nearest nodes.
+     */
+    @Override
+    public int[] queryNearestNodes(int a, int k) {
+        int indexA = graph.indexOf(a);
+        if (indexA == -1) return new int[0];
+        return findNearestNodes(a, k, getRowOf(indexA).distances);
+    }
 
-        // They are not connected
-        completedExecution.put(a, true);
-        return -1;
+    /**
+     * Saves the cached rows if the graph is the initial one (a snapshot of another
+     * graph would never be restored).
+     */
+    @Override
+    public boolean saveSnapshot(File snapshotFile) throws IOException {
+        if (! isInitialGraph()) return false;
+        updateStateIfAny();
+        int[][] rows = new int[state.length()][];
+        boolean[] completeRows = new boolean[state.length()];
+        for (int source = 0 ; source < rows.length ; source++) {
+            Row row = state.get(source);
+            if (row == null) continue;
+            completeRows[source] = row.completed;
+            rows[source] = row.distances;
+        }
+        DistanceSnapshot.write(snapshotFile, getClass().getSimpleName(), getInitialFingerprint(),
+                               graph.nodeCount(), rows, completeRows);
+        return true;
     }
 
     /**
@@ -109,10 +190,58 @@ public class MemoizedShortestPath extends ShortestPathAlgorithm {
      */
     @Override
     public void updateStateIfAny() {
+        int nodeCount = graph.nodeCount();
         if (shouldUpdateState) {
-            this.state.clear();
-            this.completedExecution.clear();
+            this.state = new AtomicReferenceArray<>(nodeCount);
             this.shouldUpdateState = false;
         }
+        else if (state.length() < nodeCount) {
+            AtomicReferenceArray<Row> extendedState = new AtomicReferenceArray<>(nodeCount);
+            for (int source = 0 ; source < state.length() ; source++)
+                extendedState.set(source, state.get(source));
+            this.state = extendedState;
+        }
+        if (shouldResetCompletedExecution) {
+            for (int source = 0 ; source < state.length() ; source++) {
+                Row row = state.get(source);
+                if (row != null) row.completed = false;
+            }
+            this.shouldResetCompletedExecution = false;
+        }
+    }
+
+    //
+    // Private Methods
+    //
+
+    /**
+     * Returns the cached row of the given source, the row is created (or extended
+     * when nodes were added) on demand. A thread losing the race to install a row
+     * uses the row of the winner, and threads sharing a row only write the same
+     * distances.
+     */
+    private Row getRowOf(int source) {
+        int nodeCount = graph.nodeCount();
+        Row row = state.get(source);
+        while (row == null || row.distances.length < nodeCount) {
+            // An extended row isn't completed since the new nodes might be reachable
+            Row newRow = new Row(row == null ? new int[nodeCount] : Arrays.copyOf(row.distances, nodeCount));
+            if (state.compareAndSet(source, row, newRow)) return newRow;
+            row = state.get(source);
+        }
+        return row;
+    }
+
+    /**
+     * Cached distances from a source by node index (0 if unknown) and whether the BFS
+     * from the source completed while filling them.
+     */
+    private static final class Row {
+        private final int[] distances;
+        private volatile boolean completed;
+
+        private Row(int[] distances) {
+            this.distances = distances;
+        }
     }
 }
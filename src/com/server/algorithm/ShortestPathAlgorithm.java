@@ -1,23 +1,95 @@
 package com.server.algorithm;
 
+import com.server.graph.ArrayGraphStore;
+import com.server.graph.BfsKernel;
+import com.server.graph.GraphStore;
+import com.server.graph.NodeOrdering;
+import com.server.metrics.ServerMetrics;
+
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.io.IOException;
 import java.util.Scanner;
+import java.util.concurrent.ThreadPoolExecutor;
 
 /**
  * Abstract class for algorithms to find the shortest path between nodes in a
  * dynamic directed unweighted graph. The main algorithm used is BFS but the key
  * difference between the different implementations in teh use of cache.
+ * The graph is kept in a GraphStore and traversed using the BfsKernel of the
+ * current thread, so the queries don't allocate memory per visited node.
  */
 public abstract class ShortestPathAlgorithm {
 
-    protected final HashMap<Integer, HashSet<Integer>> graph;
+    protected final GraphStore graph;
+    protected ServerMetrics metrics;
+    private long initialFingerprint; // Fingerprint of the graph after loading it
 
     public ShortestPathAlgorithm(String initialGraphFilePath) throws FileNotFoundException {
-        this.graph = new HashMap<>();
-        initializeGraph(initialGraphFilePath);
+        this(initialGraphFilePath, new ArrayGraphStore());
+    }
+
+    /**
+     * Creates an algorithm keeping the graph in the given (empty) store.
+     */
+    public ShortestPathAlgorithm(String initialGraphFilePath, GraphStore graph) throws FileNotFoundException {
+        this(initialGraphFilePath, graph, NodeOrdering.NONE);
+    }
+
+    /**
+     * Creates an algorithm keeping the graph in the given (empty) store where the
+     * nodes of the initial graph are indexed in the given order.
+     */
+    public ShortestPathAlgorithm(String initialGraphFilePath, GraphStore graph, NodeOrdering nodeOrdering)
+            throws FileNotFoundException {
+        this.graph = graph;
+        this.metrics = new ServerMetrics();
+        initializeGraph(initialGraphFilePath, nodeOrdering);
+        this.initialFingerprint = fingerprintGraph();
+    }
+
+    /**
+     * Creates an algorithm with an empty graph, used by the implementations which
+     * don't keep the graph in this process.
+     */
+    protected ShortestPathAlgorithm() {
+        this.graph = new ArrayGraphStore();
+        this.metrics = new ServerMetrics();
+        this.initialFingerprint = fingerprintGraph();
+    }
+
+    /**
+     * Sets the metrics where the algorithm records its BFS and cache statistics.
+     */
+    public void setMetrics(ServerMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Gives the algorithm the executor running the query transactions whose idle
+     * threads can be used for background work. It's ignored by default.
+     */
+    public void setExecutor(ThreadPoolExecutor executor) {
+        // Do nothing
+    }
+
+    /**
+     * Saves the state of the algorithm in the given snapshot file and returns
+     * whether it was saved. Algorithms without a state don't save anything.
+     */
+    public boolean saveSnapshot(File snapshotFile) throws IOException {
+        return false;
+    }
+
+    /**
+     * Returns an estimate of the shortest path between two nodes whose error is at
+     * most maxError followed by a lower bound of the shortest path (both are -1 if
+     * the two nodes aren't connected). By default, the exact shortest path is
+     * returned as both.
+     */
+    public int[] queryApproximateShortestPath(int a, int b, int maxError) {
+        int path = queryShortestPath(a, b);
+        return new int[] {path, path};
     }
 
     //
@@ -25,14 +97,14 @@ public abstract class ShortestPathAlgorithm {
     //
 
     /**
-     * Adds a new edge in the graph.
+     * Adds a new edge in the graph and returns whether it didn't exist before.
      */
-    public abstract void addNewEdge(int a, int b);
+    public abstract boolean addNewEdge(int a, int b);
 
     /**
-     * Deletes an edge.
+     * Deletes an edge and returns whether it existed.
      */
-    public abstract void deleteEdge(int a, int b);
+    public abstract boolean deleteEdge(int a, int b);
 
     /**
      * Returns the shortest path between two nodes and -1 if the two nodes aren't
@@ -40,20 +112,95 @@ public abstract class ShortestPathAlgorithm {
      */
     public abstract int queryShortestPath(int a, int b);
 
+    /**
+     * Returns the shortest path between two nodes if it's at most maxHops and -1
+     * otherwise. The search doesn't go deeper than maxHops.
+     */
+    public abstract int queryBoundedShortestPath(int a, int b, int maxHops);
+
+    /**
+     * Returns at most k nodes reachable from the given node (excluding itself)
+     * ordered by their distance then by their id.
+     */
+    public abstract int[] queryNearestNodes(int a, int k);
+
     /**
      * Updates the state, and it is invoked after finishing a set of updates
      * on the graph.
      */
     public abstract void updateStateIfAny();
 
+    //
+    // Protected methods
+    //
+
+    /**
+     * Returns at most k nodes closest to the given node ordered by their distance
+     * then by their id. The distance of every reached node is written in the given
+     * distances array (if any) at its index.
+     */
+    protected int[] findNearestNodes(int a, int k, int[] distances) {
+        int indexA = graph.indexOf(a);
+        if (indexA == -1 || k <= 0) return new int[0];
+        BfsKernel bfsKernel = BfsKernel.forCurrentThread();
+        int[] nearestNodes = bfsKernel.nearest(graph, indexA, k, distances);
+        metrics.bfsVisitedNodes.record(bfsKernel.getVisitedCount());
+        return nearestNodes;
+    }
+
+    /**
+     * Returns a fingerprint of the nodes (with their indices) and the edges of the
+     * graph. It doesn't depend on the order of the edges, so the same graph file
+     * always has the same fingerprint across restarts.
+     */
+    protected long fingerprintGraph() {
+        long fingerprint = graph.nodeCount() * 31L + graph.edgeCount();
+        int[] buffer = new int[16];
+        for (int index = 0 ; index < graph.nodeCount() ; index++) {
+            fingerprint += mix(((long) index << 32) | (graph.nodeAt(index) & 0xFFFFFFFFL));
+            int degree = graph.degree(index);
+            if (buffer.length < degree) buffer = new int[Math.max(degree, buffer.length * 2)];
+            graph.neighbours(index, buffer);
+            for (int i = 0 ; i < degree ; i++)
+                fingerprint += mix(~(((long) index << 32) | buffer[i]));
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Returns whether the graph is still the one loaded from the initial graph file.
+     */
+    protected boolean isInitialGraph() {
+        return fingerprintGraph() == initialFingerprint;
+    }
+
+    /**
+     * Returns the fingerprint of the graph loaded from the initial graph file.
+     */
+    protected long getInitialFingerprint() {
+        return initialFingerprint;
+    }
+
     //
     // Private methods
     //
 
     /**
-     * Initializes the graph with the given file path.
+     * Scrambles the bits of the given value (the finalizer of SplitMix64).
+     */
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+        return value ^ (value >>> 31);
+    }
+
+    /**
+     * Initializes the graph with the given file path. If the nodes are reordered, the
+     * file is loaded in a temporary store first then copied in the new order.
      */
-    private void initializeGraph(String initialGraphFilePath) throws FileNotFoundException {
+    private void initializeGraph(String initialGraphFilePath, NodeOrdering nodeOrdering)
+            throws FileNotFoundException {
+        GraphStore loadedGraph = nodeOrdering == NodeOrdering.NONE ? graph : new ArrayGraphStore();
         Scanner scanner = new Scanner(new File(initialGraphFilePath));
         while (scanner.hasNextLine()) {
             String line = scanner.nextLine();
@@ -62,10 +209,11 @@ public abstract class ShortestPathAlgorithm {
                 String[] splitLine = line.split(" ");
                 int leftOperand = Integer.parseInt(splitLine[0]);
                 int rightOperand = Integer.parseInt(splitLine[1]);
-                graph.putIfAbsent(leftOperand, new HashSet<>());
-                graph.get(leftOperand).add(rightOperand);
+                loadedGraph.addEdge(leftOperand, rightOperand);
             }
         }
         scanner.close();
+        if (loadedGraph != graph) nodeOrdering.copy(loadedGraph, graph);
+        graph.compact();
     }
 }
\ No newline at end of file
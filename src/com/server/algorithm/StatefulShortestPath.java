@@ -1,10 +1,15 @@
 package com.server.algorithm;
 
+import com.server.graph.ArrayGraphStore;
+import com.server.graph.BfsKernel;
+import com.server.graph.GraphStore;
+import com.server.graph.NodeOrdering;
+import com.server.snapshot.DistanceSnapshot;
+
+import java.io.File;
 import java.io.FileNotFoundException;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedList;
-import java.util.Queue;
+import java.io.IOException;
+import java.util.Arrays;
 
 /**
  * This implementation always pre-calculates all the answers in advance and when a
@@ -17,6 +22,9 @@ import java.util.Queue;
  * 3) After updating the graph, updates the state to be consistent.
  * 4) Doesn't update the state if the updates done involves adding an edge which
  *    already exists or removing an edge which didn't exist before.
+ * 5) The bounded and nearest queries are answered from the state as well.
+ * 6) If a snapshot file is given, the initial state is restored from it instead of
+ *    being calculated. Otherwise, it's calculated then saved in the snapshot.
  *
  * Notes:
  * 1) The fastest implementation when there are large number of queries and low
@@ -25,80 +33,124 @@ import java.util.Queue;
  */
 public class StatefulShortestPath extends ShortestPathAlgorithm {
 
-    private final HashMap<Integer, HashMap<Integer, Integer>> state;
+    private int[][] state; // Distances from each source by node index (0 if not connected)
     private boolean shouldUpdateState;
 
     public StatefulShortestPath(String initialGraphFilePath) throws FileNotFoundException {
-        super(initialGraphFilePath);
-        this.state = new HashMap<>();
+        this(initialGraphFilePath, new ArrayGraphStore());
+    }
+
+    public StatefulShortestPath(String initialGraphFilePath, GraphStore graph) throws FileNotFoundException {
+        super(initialGraphFilePath, graph);
+        this.state = new int[0][];
         this.shouldUpdateState = true;
         this.updateStateIfAny();
     }
 
-    @Override
-    public void addNewEdge(int a, int b) {
-        if (graph.containsKey(a) && graph.containsKey(b)) {
-            HashSet<Integer> neighbours = graph.get(a);
-            if (! neighbours.contains(b)) { // The edge didn't exist before
-                neighbours.add(b);
-                shouldUpdateState = true;
-            }
+    /**
+     * Creates the algorithm restoring its state from the given snapshot file if it
+     * matches the initial graph.
+     */
+    public StatefulShortestPath(String initialGraphFilePath, GraphStore graph, File snapshotFile)
+            throws IOException {
+        this(initialGraphFilePath, graph, NodeOrdering.NONE, snapshotFile);
+    }
+
+    /**
+     * Creates the algorithm indexing the nodes of the initial graph in the given
+     * order and restoring its state from the given snapshot file (if any).
+     */
+    public StatefulShortestPath(String initialGraphFilePath, GraphStore graph, NodeOrdering nodeOrdering,
+                                File snapshotFile) throws IOException {
+        super(initialGraphFilePath, graph, nodeOrdering);
+        DistanceSnapshot snapshot = snapshotFile == null ? null : DistanceSnapshot.read
+                (snapshotFile, getClass().getSimpleName(), getInitialFingerprint(), graph.nodeCount());
+        if (snapshot != null) {
+            this.state = snapshot.getRows();
+            this.shouldUpdateState = false;
         }
         else {
-            graph.putIfAbsent(a, new HashSet<>());
-            graph.putIfAbsent(b, new HashSet<>());
-            graph.get(a).add(b);
-            shouldUpdateState = true;
+            this.state = new int[0][];
+            this.shouldUpdateState = true;
+            this.updateStateIfAny();
+            if (snapshotFile != null) this.saveSnapshot(snapshotFile);
         }
     }
 
     @Override
-    public void deleteEdge(int a, int b) {
-        if (graph.containsKey(a) && graph.get(a).contains(b)) {
-            graph.get(a).remove(b);
-            shouldUpdateState = true;
-        }
+    public boolean addNewEdge(int a, int b) {
+        if (! graph.addEdge(a, b)) return false; // The edge existed before
+        shouldUpdateState = true;
+        return true;
+    }
+
+    @Override
+    public boolean deleteEdge(int a, int b) {
+        if (! graph.removeEdge(a, b)) return false;
+        shouldUpdateState = true;
+        return true;
     }
 
     @Override
     public int queryShortestPath(int a, int b) {
         // Either A or B doesn't exist in the graph
-        if (! graph.containsKey(a) || ! graph.containsKey(b)) return -1;
+        int indexA = graph.indexOf(a), indexB = graph.indexOf(b);
+        if (indexA == -1 || indexB == -1) return -1;
 
         // If the answer is in the state return it. Otherwise, return -1
-        return state.get(a).getOrDefault(b, -1);
+        int path = state[indexA][indexB];
+        return path == 0 ? -1 : path;
+    }
+
+    @Override
+    public int queryBoundedShortestPath(int a, int b, int maxHops) {
+        int path = queryShortestPath(a, b);
+        return path <= maxHops ? path : -1;
+    }
+
+    /**
+     * Selects the nearest nodes from the distances saved in the state.
+     */
+    @Override
+    public int[] queryNearestNodes(int a, int k) {
+        int indexA = graph.indexOf(a);
+        if (indexA == -1) return new int[0];
+        return BfsKernel.forCurrentThread().selectNearest(graph, state[indexA], k);
+    }
+
+    /**
+     * Saves the state if the graph is the initial one (a snapshot of another graph
+     * would never be restored).
+     */
+    @Override
+    public boolean saveSnapshot(File snapshotFile) throws IOException {
+        if (! isInitialGraph()) return false;
+        updateStateIfAny();
+        DistanceSnapshot.write(snapshotFile, getClass().getSimpleName(), getInitialFingerprint(),
+                               graph.nodeCount(), state, null);
+        return true;
     }
 
     /**
-     * Clears the old state re-calculates the new one if necessary.
+     * Re-calculates the state if necessary. The rows of the old state are reused
+     * unless the graph has more nodes than they can hold.
      */
     @Override
     public void updateStateIfAny() {
         if (shouldUpdateState) {
-            // Clears the state
-            this.state.clear();
             this.shouldUpdateState = false;
+            int nodeCount = graph.nodeCount();
+            if (state.length < nodeCount)
+                state = Arrays.copyOf(state, nodeCount);
 
             // Performs BFS for all nodes
-            for (int node : graph.keySet()) {
-                HashMap<Integer, Integer> stateForNode = new HashMap<>();
-                Queue<Integer> queue = new LinkedList<>(graph.get(node));
-                HashSet<Integer> visitedNodes = new HashSet<>();
-                visitedNodes.add(node);
-                this.state.put(node, stateForNode);
-                int path = 1, size = queue.size();
-                while (! queue.isEmpty()) {
-                    while(size-- > 0) {
-                        int neighbour = queue.poll();
-                        if (! visitedNodes.contains(neighbour)) {
-                            visitedNodes.add(neighbour);
-                            stateForNode.put(neighbour, path);
-                            queue.addAll(graph.get(neighbour));
-                        }
-                    }
-                    size = queue.size();
-                    path++;
-                }
+            BfsKernel bfsKernel = BfsKernel.forCurrentThread();
+            for (int node = 0 ; node < nodeCount ; node++) {
+                int[] stateForNode = state[node];
+                if (stateForNode == null || stateForNode.length < nodeCount)
+                    state[node] = stateForNode = new int[nodeCount];
+                else Arrays.fill(stateForNode, 0);
+                bfsKernel.search(graph, node, -1, Integer.MAX_VALUE, stateForNode);
             }
         }
     }
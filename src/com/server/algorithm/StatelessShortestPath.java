@@ -1,9 +1,11 @@
 package com.server.algorithm;
 
+import com.server.graph.ArrayGraphStore;
+import com.server.graph.BfsKernel;
+import com.server.graph.GraphStore;
+import com.server.graph.NodeOrdering;
+
 import java.io.FileNotFoundException;
-import java.util.HashSet;
-import java.util.LinkedList;
-import java.util.Queue;
 
 /**
  * This implementation doesn't keep any state or cache and calculates all the
@@ -22,47 +24,49 @@ import java.util.Queue;
 public class StatelessShortestPath extends ShortestPathAlgorithm {
 
     public StatelessShortestPath(String initialGraphFilePath) throws FileNotFoundException {
-        super(initialGraphFilePath);
+        this(initialGraphFilePath, new ArrayGraphStore());
+    }
+
+    public StatelessShortestPath(String initialGraphFilePath, GraphStore graph) throws FileNotFoundException {
+        super(initialGraphFilePath, graph);
+    }
+
+    public StatelessShortestPath(String initialGraphFilePath, GraphStore graph, NodeOrdering nodeOrdering)
+            throws FileNotFoundException {
+        super(initialGraphFilePath, graph, nodeOrdering);
     }
 
     @Override
-    public void addNewEdge(int a, int b) {
-        graph.putIfAbsent(a, new HashSet<>());
-        graph.putIfAbsent(b, new HashSet<>());
-        graph.get(a).add(b);
+    public boolean addNewEdge(int a, int b) {
+        return graph.addEdge(a, b);
     }
 
     @Override
-    public void deleteEdge(int a, int b) {
-        if (graph.containsKey(a))
-            graph.get(a).remove(b);
+    public boolean deleteEdge(int a, int b) {
+        return graph.removeEdge(a, b);
     }
 
     @Override
     public int queryShortestPath(int a, int b) {
+        return queryBoundedShortestPath(a, b, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int queryBoundedShortestPath(int a, int b, int maxHops) {
         // Either A or B doesn't exist in the graph
-        if (! graph.containsKey(a) || ! graph.containsKey(b)) return -1;
+        int indexA = graph.indexOf(a), indexB = graph.indexOf(b);
+        if (indexA == -1 || indexB == -1) return -1;
 
         // Performing BFS
-        Queue<Integer> queue = new LinkedList<>(graph.get(a));
-        HashSet<Integer> visitedNodes = new HashSet<>();
-        visitedNodes.add(a);
-        int path = 1, size = queue.size();
-        while (! queue.isEmpty()) {
-            while(size-- > 0) {
-                int neighbour = queue.poll();
-                if (! visitedNodes.contains(neighbour)) {
-                    visitedNodes.add(neighbour);
-                    if (b == neighbour) return path;
-                    queue.addAll(graph.get(neighbour));
-                }
-            }
-            size = queue.size();
-            path++;
-        }
+        BfsKernel bfsKernel = BfsKernel.forCurrentThread();
+        int path = bfsKernel.search(graph, indexA, indexB, maxHops, null);
+        metrics.bfsVisitedNodes.record(bfsKernel.getVisitedCount());
+        return path;
+    }
 
-        // Nodes aren't connected
-        return -1;
+    @Override
+    public int[] queryNearestNodes(int a, int k) {
+        return findNearestNodes(a, k, null);
     }
 
     @Override
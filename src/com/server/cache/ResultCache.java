@@ -0,0 +1,133 @@
+package com.server.cache;
+
+import java.util.Arrays;
+
+/**
+ * Fixed size cache of the shortest path results keyed by (a, b, graph version),
+ * shared by the threads answering the queries of any ShortestPathAlgorithm.
+ *
+ * Steps:
+ * 1) The pair (a, b) is packed in a long key and hashed to a group of GROUP_SIZE
+ *    consecutive slots of an open addressing table. A lookup probes the slots of
+ *    the group only, so an entry is never moved nor deleted.
+ * 2) Every entry holds the graph version it was calculated at. It's a hit only if
+ *    it equals the current version, so bumping the version invalidates the whole
+ *    cache at once without touching it.
+ * 3) An insertion takes the slot of the same key, an empty slot or a stale slot
+ *    in this order. Otherwise, a clock hand sweeps the group evicting the first
+ *    entry which wasn't used since the last sweep (second chance).
+ * 4) The groups are guarded by striped locks.
+ *
+ * Notes:
+ * 1) The version must only be bumped by effective changes of the graph (adding
+ *    an edge which didn't exist or removing an edge which existed).
+ */
+public class ResultCache {
+
+    public static final int MISSING = Integer.MIN_VALUE;
+    private static final int GROUP_SIZE = 8;
+    private static final int LOCK_STRIPES = 64;
+
+    private final long[] keys;
+    private final long[] versions; // Version of each slot (-1 for an empty slot)
+    private final int[] results;
+    private final boolean[] referenced;
+    private final byte[] clockHands; // Next slot to sweep in each group
+    private final Object[] locks;
+    private final int groupMask;
+
+    /**
+     * Creates a cache holding at least the given number of results.
+     */
+    public ResultCache(int capacity) {
+        int groupCount = Integer.highestOneBit
+                (Math.max(1, (capacity + GROUP_SIZE - 1) / GROUP_SIZE - 1)) << 1;
+        this.keys = new long[groupCount * GROUP_SIZE];
+        this.versions = new long[groupCount * GROUP_SIZE];
+        this.results = new int[groupCount * GROUP_SIZE];
+        this.referenced = new boolean[groupCount * GROUP_SIZE];
+        this.clockHands = new byte[groupCount];
+        this.locks = new Object[LOCK_STRIPES];
+        this.groupMask = groupCount - 1;
+        Arrays.fill(versions, -1);
+        for (int i = 0 ; i < LOCK_STRIPES ; i++)
+            locks[i] = new Object();
+    }
+
+    /**
+     * Returns the number of results the cache holds.
+     */
+    public int capacity() {
+        return keys.length;
+    }
+
+    /**
+     * Returns the cached shortest path between a and b calculated at the given
+     * version, or MISSING.
+     */
+    public int get(int a, int b, long version) {
+        long key = key(a, b);
+        int group = group(key), start = group * GROUP_SIZE;
+        synchronized (locks[group & (LOCK_STRIPES - 1)]) {
+            for (int slot = start ; slot < start + GROUP_SIZE ; slot++) {
+                if (versions[slot] == -1) return MISSING;
+                if (keys[slot] == key) {
+                    if (versions[slot] != version) return MISSING;
+                    referenced[slot] = true;
+                    return results[slot];
+                }
+            }
+        }
+        return MISSING;
+    }
+
+    /**
+     * Caches the shortest path between a and b calculated at the given version.
+     */
+    public void put(int a, int b, long version, int result) {
+        long key = key(a, b);
+        int group = group(key), start = group * GROUP_SIZE;
+        synchronized (locks[group & (LOCK_STRIPES - 1)]) {
+            int freeSlot = -1;
+            for (int slot = start ; slot < start + GROUP_SIZE ; slot++) {
+                if (versions[slot] == -1 || keys[slot] == key) {
+                    freeSlot = slot;
+                    break;
+                }
+                if (freeSlot == -1 && versions[slot] != version) freeSlot = slot;
+            }
+            if (freeSlot == -1) freeSlot = sweep(group);
+            keys[freeSlot] = key;
+            versions[freeSlot] = version;
+            results[freeSlot] = result;
+            referenced[freeSlot] = false;
+        }
+    }
+
+    //
+    // Private Methods
+    //
+
+    /**
+     * Moves the clock hand of the group to the first slot which isn't referenced
+     * (clearing the references on its way) and returns it.
+     */
+    private int sweep(int group) {
+        int start = group * GROUP_SIZE;
+        while (true) {
+            int slot = start + clockHands[group];
+            clockHands[group] = (byte) ((clockHands[group] + 1) & (GROUP_SIZE - 1));
+            if (! referenced[slot]) return slot;
+            referenced[slot] = false;
+        }
+    }
+
+    private int group(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 32) & groupMask;
+    }
+
+    private static long key(int a, int b) {
+        return ((long) a << 32) | (b & 0xFFFFFFFFL);
+    }
+}
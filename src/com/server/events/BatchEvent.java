@@ -0,0 +1,31 @@
+package com.server.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event covering the execution of a batch (after its admission).
+ */
+@Name("com.server.Batch")
+@Label("Batch")
+@Category({"Shortest Path", "Server"})
+@Description("Execution of a batch of operations")
+@StackTrace(false)
+public class BatchEvent extends Event {
+
+    @Label("Batch Id")
+    public long batchId;
+
+    @Label("Operations")
+    public int operations;
+
+    @Label("Transactions")
+    public int transactions;
+
+    @Label("Results")
+    public int results;
+}
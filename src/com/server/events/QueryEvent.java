@@ -0,0 +1,45 @@
+package com.server.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight recorder event covering a single query operation. Only the queries taking
+ * at least the threshold (1 ms by default) are recorded.
+ */
+@Name("com.server.Query")
+@Label("Query")
+@Category({"Shortest Path", "Server"})
+@Description("Execution of a query operation with the BFS work it caused")
+@StackTrace(false)
+@Threshold("1 ms")
+public class QueryEvent extends Event {
+
+    @Label("Batch Id")
+    public long batchId;
+
+    @Label("Operation Type")
+    public String operationType;
+
+    @Label("A")
+    public int a;
+
+    @Label("B")
+    public int b;
+
+    @Label("Algorithm")
+    public String algorithm;
+
+    @Label("Visited Nodes")
+    @Description("Number of nodes visited by the BFS performed to answer the query")
+    public long visitedNodes;
+
+    @Label("Max Frontier Size")
+    @Description("Largest number of nodes in a BFS level")
+    public int maxFrontierSize;
+}
@@ -0,0 +1,27 @@
+package com.server.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event covering the update of the algorithm state after an update
+ * transaction.
+ */
+@Name("com.server.StateRebuild")
+@Label("State Rebuild")
+@Category({"Shortest Path", "Server"})
+@Description("Update of the algorithm state (updateStateIfAny) after an update transaction")
+@StackTrace(false)
+public class StateRebuildEvent extends Event {
+
+    @Label("Algorithm")
+    public String algorithm;
+
+    @Label("Visited Nodes")
+    @Description("Number of nodes visited by the BFS performed to rebuild the state")
+    public long visitedNodes;
+}
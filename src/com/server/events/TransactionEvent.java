@@ -0,0 +1,28 @@
+package com.server.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event covering a query or an update transaction of a batch.
+ */
+@Name("com.server.Transaction")
+@Label("Transaction")
+@Category({"Shortest Path", "Server"})
+@Description("Execution of consecutive queries (in parallel) or consecutive updates of a batch")
+@StackTrace(false)
+public class TransactionEvent extends Event {
+
+    @Label("Batch Id")
+    public long batchId;
+
+    @Label("Query Transaction")
+    public boolean query;
+
+    @Label("Operations")
+    public int operations;
+}
@@ -0,0 +1,117 @@
+package com.server.graph;
+
+import java.util.Arrays;
+
+/**
+ * Uncompressed graph store keeping the neighbours of each node in a growable int
+ * array, so no integer is boxed while the graph is traversed.
+ *
+ * Notes:
+ * 1) Adding an edge scans the neighbours of its source to skip duplicates.
+ * 2) Removing an edge moves the last neighbour in its place.
+ */
+public class ArrayGraphStore implements GraphStore {
+
+    private static final int[] NO_NEIGHBOURS = new int[0];
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final IntIndexMap indices;
+    private int[] nodes; // Node id of each index
+    private int[][] adjacency;
+    private int[] degrees;
+    private int nodeCount;
+    private long edgeCount;
+
+    public ArrayGraphStore() {
+        this.indices = new IntIndexMap(INITIAL_CAPACITY);
+        this.nodes = new int[INITIAL_CAPACITY];
+        this.adjacency = new int[INITIAL_CAPACITY][];
+        this.degrees = new int[INITIAL_CAPACITY];
+    }
+
+    @Override
+    public int indexOf(int node) {
+        return indices.get(node);
+    }
+
+    @Override
+    public int nodeAt(int index) {
+        return nodes[index];
+    }
+
+    @Override
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    @Override
+    public long edgeCount() {
+        return edgeCount;
+    }
+
+    @Override
+    public int addNode(int node) {
+        int index = indices.get(node);
+        if (index != -1) return index;
+        if (nodeCount == nodes.length) {
+            int capacity = nodes.length * 2;
+            nodes = Arrays.copyOf(nodes, capacity);
+            adjacency = Arrays.copyOf(adjacency, capacity);
+            degrees = Arrays.copyOf(degrees, capacity);
+        }
+        nodes[nodeCount] = node;
+        adjacency[nodeCount] = NO_NEIGHBOURS;
+        indices.put(node, nodeCount);
+        return nodeCount++;
+    }
+
+    @Override
+    public boolean addEdge(int a, int b) {
+        int indexA = addNode(a), indexB = addNode(b);
+        int[] neighbours = adjacency[indexA];
+        int degree = degrees[indexA];
+        for (int i = 0 ; i < degree ; i++)
+            if (neighbours[i] == indexB) return false;
+        if (degree == neighbours.length)
+            adjacency[indexA] = neighbours = Arrays.copyOf(neighbours, Math.max(4, degree * 2));
+        neighbours[degree] = indexB;
+        degrees[indexA]++;
+        edgeCount++;
+        return true;
+    }
+
+    @Override
+    public boolean removeEdge(int a, int b) {
+        int indexA = indices.get(a), indexB = indices.get(b);
+        if (indexA == -1 || indexB == -1) return false;
+        int[] neighbours = adjacency[indexA];
+        int degree = degrees[indexA];
+        for (int i = 0 ; i < degree ; i++) {
+            if (neighbours[i] == indexB) {
+                neighbours[i] = neighbours[degree - 1];
+                degrees[indexA]--;
+                edgeCount--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int degree(int index) {
+        return degrees[index];
+    }
+
+    @Override
+    public int[] neighbours(int index, int[] buffer) {
+        return adjacency[index];
+    }
+
+    @Override
+    public long sizeInBytes() {
+        long size = 4L * nodes.length * 3 + indices.sizeInBytes();
+        for (int index = 0 ; index < nodeCount ; index++)
+            if (adjacency[index].length > 0) size += 16 + 4L * adjacency[index].length;
+        return size;
+    }
+}
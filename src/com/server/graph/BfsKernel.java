@@ -0,0 +1,258 @@
+package com.server.graph;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * BFS over a GraphStore using reusable scratch space, one kernel per thread.
+ *
+ * Steps:
+ * 1) The queue is an int array holding node indices. Each node is queued at most
+ *    once per search, so it never needs more room than the number of nodes.
+ * 2) A node is visited in the current search if its stamp in the visited array
+ *    equals the epoch of the search. Starting a search only increments the epoch
+ *    so the visited array is never cleared (except when the epoch wraps around).
+ * 3) The scratch arrays only grow when the graph grows, so a search allocates
+ *    nothing in steady state.
+ * 4) A level of search() having at least parallelThreshold nodes is expanded in
+ *    parallel by the ParallelFrontier (claiming the visited stamps atomically),
+ *    so a single huge traversal uses all the cores. The next levels go back to the
+ *    serial expansion once they are smaller.
+ *
+ * Notes:
+ * 1) Same as the original implementations, the source node is visited before the
+ *    search starts so the distance from a node to itself is -1.
+ * 2) A kernel must not be shared between threads, use forCurrentThread.
+ */
+public final class BfsKernel {
+
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 8192;
+    private static final ThreadLocal<BfsKernel> KERNELS = ThreadLocal.withInitial(BfsKernel::new);
+    private static volatile int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+    private static volatile ForkJoinPool parallelPool = ForkJoinPool.commonPool();
+
+    private int[] queue;
+    private int[] visitedEpochs;
+    private int[] neighbourBuffer;
+    private long[] sortBuffer;
+    private int epoch;
+    private int visitedCount; // Number of nodes reached by the last search
+    private int maxFrontierSize; // Largest level of the last search
+    private long totalVisitedCount; // Number of nodes reached by all the searches of the kernel
+    private boolean exhausted; // Whether the last search reached all the reachable nodes
+    private int parallelLevels; // Number of levels of the last search expanded in parallel
+    private ParallelFrontier parallelFrontier; // Created on the first parallel level
+
+    private BfsKernel() {
+        this.queue = new int[0];
+        this.visitedEpochs = new int[0];
+        this.neighbourBuffer = new int[16];
+        this.sortBuffer = new long[0];
+    }
+
+    /**
+     * Returns the kernel of the current thread.
+     */
+    public static BfsKernel forCurrentThread() {
+        return KERNELS.get();
+    }
+
+    /**
+     * Sets the minimum number of nodes of a level for it to be expanded in parallel
+     * (Integer.MAX_VALUE disables the parallel expansion) and the pool whose workers
+     * expand it, for all the kernels. By default, the common pool is used.
+     */
+    public static void setParallelExpansion(int frontierSize, ForkJoinPool pool) {
+        parallelPool = pool;
+        parallelThreshold = Math.max(ParallelFrontier.MIN_CHUNK_SIZE, frontierSize);
+    }
+
+    /**
+     * Returns the distance from source to target (node indices) if it's at most
+     * maxHops and -1 otherwise. If target is -1 all the nodes reachable within
+     * maxHops are visited. The distance of every reached node is written in the
+     * given distances array (if any) at its index.
+     */
+    public int search(GraphStore graph, int source, int target, int maxHops, int[] distances) {
+        int tail = startSearch(graph, source), head = 0, path = 1, maxFrontier = 0;
+        int threshold = parallelThreshold;
+        while (head < tail && path <= maxHops) {
+            int levelEnd = tail;
+            maxFrontier = Math.max(maxFrontier, levelEnd - head);
+            if (levelEnd - head >= threshold && ParallelFrontier.isAvailable(parallelPool)) {
+                boolean targetVisited = target == -1 || visitedEpochs[target] == epoch;
+                tail = expandInParallel(graph, head, levelEnd, path, distances);
+                head = levelEnd;
+                if (! targetVisited && visitedEpochs[target] == epoch) {
+                    finishSearch(tail, false, maxFrontier);
+                    return path;
+                }
+                path++;
+                continue;
+            }
+            while (head < levelEnd) {
+                int node = queue[head++];
+                int degree = graph.degree(node);
+                int[] neighbours = graph.neighbours(node, bufferFor(degree));
+                for (int i = 0 ; i < degree ; i++) {
+                    int neighbour = neighbours[i];
+                    if (visitedEpochs[neighbour] == epoch) continue;
+                    visitedEpochs[neighbour] = epoch;
+                    if (distances != null) distances[neighbour] = path;
+                    queue[tail++] = neighbour;
+                    if (neighbour == target) {
+                        finishSearch(tail, false, maxFrontier);
+                        return path;
+                    }
+                }
+            }
+            path++;
+        }
+        finishSearch(tail, head == tail, maxFrontier);
+        return -1;
+    }
+
+    /**
+     * Returns the ids of at most k nodes closest to the source (node index) ordered
+     * by their distance then by their id. The distance of every reached node is
+     * written in the given distances array (if any) at its index.
+     */
+    public int[] nearest(GraphStore graph, int source, int k, int[] distances) {
+        int[] nearestNodes = new int[Math.max(0, k)];
+        int count = 0, tail = startSearch(graph, source), head = 0, path = 1, maxFrontier = 0;
+        while (head < tail && count < k) {
+            int levelEnd = tail;
+            maxFrontier = Math.max(maxFrontier, levelEnd - head);
+            while (head < levelEnd) {
+                int node = queue[head++];
+                int degree = graph.degree(node);
+                int[] neighbours = graph.neighbours(node, bufferFor(degree));
+                for (int i = 0 ; i < degree ; i++) {
+                    int neighbour = neighbours[i];
+                    if (visitedEpochs[neighbour] == epoch) continue;
+                    visitedEpochs[neighbour] = epoch;
+                    if (distances != null) distances[neighbour] = path;
+                    queue[tail++] = neighbour;
+                }
+            }
+            // The nodes of the level are queue[levelEnd, tail)
+            int levelSize = tail - levelEnd;
+            for (int i = 0 ; i < levelSize ; i++)
+                sortBuffer[i] = graph.nodeAt(queue[levelEnd + i]);
+            Arrays.sort(sortBuffer, 0, levelSize);
+            for (int i = 0 ; i < levelSize && count < k ; i++)
+                nearestNodes[count++] = (int) sortBuffer[i];
+            path++;
+        }
+        finishSearch(tail, head == tail, maxFrontier);
+        return count == nearestNodes.length ? nearestNodes : Arrays.copyOf(nearestNodes, count);
+    }
+
+    /**
+     * Returns the ids of at most k nodes of a distances array (filled by search,
+     * where 0 means unreached) ordered by their distance then by their id.
+     */
+    public int[] selectNearest(GraphStore graph, int[] distances, int k) {
+        int count = 0, nodeCount = Math.min(graph.nodeCount(), distances.length);
+        ensureCapacity(nodeCount);
+        for (int index = 0 ; index < nodeCount ; index++)
+            if (distances[index] > 0)
+                sortBuffer[count++] = ((long) distances[index] << 32)
+                        | ((graph.nodeAt(index) ^ Integer.MIN_VALUE) & 0xFFFFFFFFL);
+        Arrays.sort(sortBuffer, 0, count);
+        int[] nearestNodes = new int[Math.max(0, Math.min(k, count))];
+        for (int i = 0 ; i < nearestNodes.length ; i++)
+            nearestNodes[i] = (int) sortBuffer[i] ^ Integer.MIN_VALUE;
+        return nearestNodes;
+    }
+
+    /**
+     * Returns the number of nodes reached by the last search (including the source).
+     */
+    public int getVisitedCount() {
+        return visitedCount;
+    }
+
+    /**
+     * Returns the largest number of nodes in a level (expanded together) of the last
+     * search.
+     */
+    public int getMaxFrontierSize() {
+        return maxFrontierSize;
+    }
+
+    /**
+     * Returns the number of levels of the last search which were expanded in parallel.
+     */
+    public int getParallelLevels() {
+        return parallelLevels;
+    }
+
+    /**
+     * Returns the number of nodes reached by all the searches of this kernel, so the
+     * work of a query is the difference before and after it.
+     */
+    public long getTotalVisitedCount() {
+        return totalVisitedCount;
+    }
+
+    /**
+     * Returns whether the last search reached all the nodes reachable from the
+     * source (it wasn't stopped by its target, depth or k).
+     */
+    public boolean isExhausted() {
+        return exhausted;
+    }
+
+    //
+    // Private Methods
+    //
+
+    /**
+     * Starts a new epoch, queues the source and returns the queue tail.
+     */
+    private int startSearch(GraphStore graph, int source) {
+        ensureCapacity(graph.nodeCount());
+        if (++epoch == 0) {
+            Arrays.fill(visitedEpochs, 0);
+            epoch = 1;
+        }
+        visitedEpochs[source] = epoch;
+        queue[0] = source;
+        parallelLevels = 0;
+        return 1;
+    }
+
+    /**
+     * Expands the level queue[head, levelEnd) in parallel and returns the new tail.
+     */
+    private int expandInParallel(GraphStore graph, int head, int levelEnd, int path, int[] distances) {
+        ForkJoinPool pool = parallelPool;
+        if (parallelFrontier == null || parallelFrontier.getPool() != pool)
+            parallelFrontier = new ParallelFrontier(pool);
+        parallelLevels++;
+        return parallelFrontier.expand(graph, queue, head, levelEnd, visitedEpochs, epoch, path, distances);
+    }
+
+    private void finishSearch(int tail, boolean exhausted, int maxFrontierSize) {
+        this.visitedCount = tail;
+        this.exhausted = exhausted;
+        this.maxFrontierSize = maxFrontierSize;
+        this.totalVisitedCount += tail;
+    }
+
+    private void ensureCapacity(int nodeCount) {
+        if (queue.length >= nodeCount) return;
+        int capacity = Math.max(nodeCount, queue.length * 2);
+        queue = new int[capacity];
+        visitedEpochs = new int[capacity]; // Stamps of the old array are useless
+        sortBuffer = new long[capacity];
+        epoch = 0;
+    }
+
+    private int[] bufferFor(int degree) {
+        if (neighbourBuffer.length < degree)
+            neighbourBuffer = new int[Math.max(degree, neighbourBuffer.length * 2)];
+        return neighbourBuffer;
+    }
+}
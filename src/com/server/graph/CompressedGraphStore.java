@@ -0,0 +1,280 @@
+package com.server.graph;
+
+import java.util.Arrays;
+
+/**
+ * Compressed graph store for graphs which don't fit in the heap using the
+ * uncompressed store. The neighbours of every node are kept in a single byte array
+ * in the style of WebGraph, and the recent changes are kept in a small mutable
+ * overflow area until the next compaction.
+ *
+ * Steps:
+ * 1) The neighbour indices of each node are sorted and encoded as gaps: the first
+ *    one as is, then the difference to the previous one minus one (the neighbours
+ *    are distinct). The list starts with its length and every value is written as
+ *    a varint, 7 bits per byte and the high bit set on all the bytes except the last.
+ * 2) An added edge which isn't in the compressed list goes to the added overflow
+ *    list of its source. A removed edge of the compressed list goes to the removed
+ *    overflow list of its source (the compressed list isn't touched).
+ * 3) Listing the neighbours decodes the compressed list into the caller's buffer
+ *    skipping the removed ones, then appends the added ones.
+ * 4) Once the overflow area holds more than 1/8 of the compressed edges, all the
+ *    lists are re-encoded with their changes applied.
+ *
+ * Notes:
+ * 1) The gaps are small when the neighbours have close indices, so the size per
+ *    edge depends on the locality of the node indices.
+ * 2) The compressed area is limited to 2 GB (int offsets).
+ * 3) Decoding is slower than reading the uncompressed arrays, so BFS throughput is
+ *    traded for memory.
+ */
+public class CompressedGraphStore implements GraphStore {
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int MIN_OVERFLOW_EDGES_TO_COMPACT = 1 << 16;
+    private static final int EMPTY_LIST_OFFSET = 0; // The data always starts with an empty list
+
+    private final IntIndexMap indices;
+    private int[] nodes; // Node id of each index
+    private byte[] data; // Compressed lists, each one is its length followed by the gaps
+    private int[] offsets; // Start of the compressed list of each index in data
+    private int[][] addedNeighbours; // Overflow area, the count followed by the neighbours (or null)
+    private int[][] removedNeighbours; // Overflow area, the count followed by the neighbours (or null)
+    private int nodeCount;
+    private long edgeCount;
+    private long compressedEdgeCount;
+    private long overflowEdgeCount;
+
+    public CompressedGraphStore() {
+        this.indices = new IntIndexMap(INITIAL_CAPACITY);
+        this.nodes = new int[INITIAL_CAPACITY];
+        this.data = new byte[] {0};
+        this.offsets = new int[INITIAL_CAPACITY];
+        this.addedNeighbours = new int[INITIAL_CAPACITY][];
+        this.removedNeighbours = new int[INITIAL_CAPACITY][];
+    }
+
+    @Override
+    public int indexOf(int node) {
+        return indices.get(node);
+    }
+
+    @Override
+    public int nodeAt(int index) {
+        return nodes[index];
+    }
+
+    @Override
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    @Override
+    public long edgeCount() {
+        return edgeCount;
+    }
+
+    @Override
+    public int addNode(int node) {
+        int index = indices.get(node);
+        if (index != -1) return index;
+        if (nodeCount == nodes.length) {
+            int capacity = nodes.length * 2;
+            nodes = Arrays.copyOf(nodes, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+            addedNeighbours = Arrays.copyOf(addedNeighbours, capacity);
+            removedNeighbours = Arrays.copyOf(removedNeighbours, capacity);
+        }
+        nodes[nodeCount] = node;
+        offsets[nodeCount] = EMPTY_LIST_OFFSET;
+        indices.put(node, nodeCount);
+        return nodeCount++;
+    }
+
+    @Override
+    public boolean addEdge(int a, int b) {
+        int indexA = addNode(a), indexB = addNode(b);
+        if (indexOf(addedNeighbours[indexA], indexB) != -1) return false;
+        if (compressedListContains(indexA, indexB)) {
+            // Restoring a removed edge of the compressed list
+            int position = indexOf(removedNeighbours[indexA], indexB);
+            if (position == -1) return false;
+            removeAt(removedNeighbours[indexA], position);
+            overflowEdgeCount--;
+            edgeCount++;
+            return true;
+        }
+        addedNeighbours[indexA] = append(addedNeighbours[indexA], indexB);
+        overflowEdgeCount++;
+        edgeCount++;
+        compactIfNeeded();
+        return true;
+    }
+
+    @Override
+    public boolean removeEdge(int a, int b) {
+        int indexA = indices.get(a), indexB = indices.get(b);
+        if (indexA == -1 || indexB == -1) return false;
+        int position = indexOf(addedNeighbours[indexA], indexB);
+        if (position != -1) {
+            removeAt(addedNeighbours[indexA], position);
+            overflowEdgeCount--;
+            edgeCount--;
+            return true;
+        }
+        if (!compressedListContains(indexA, indexB) || indexOf(removedNeighbours[indexA], indexB) != -1)
+            return false;
+        removedNeighbours[indexA] = append(removedNeighbours[indexA], indexB);
+        overflowEdgeCount++;
+        edgeCount--;
+        compactIfNeeded();
+        return true;
+    }
+
+    @Override
+    public int degree(int index) {
+        int position = offsets[index], compressedDegree = 0, shift = 0;
+        byte next;
+        do {
+            next = data[position++];
+            compressedDegree |= (next & 0x7F) << shift;
+            shift += 7;
+        } while (next < 0);
+        return compressedDegree - count(removedNeighbours[index]) + count(addedNeighbours[index]);
+    }
+
+    @Override
+    public int[] neighbours(int index, int[] buffer) {
+        int[] removed = removedNeighbours[index], added = addedNeighbours[index];
+        int count = 0, position = offsets[index], remaining = 0, neighbour = -1, shift = 0;
+        byte next;
+        do {
+            next = data[position++];
+            remaining |= (next & 0x7F) << shift;
+            shift += 7;
+        } while (next < 0);
+        for ( ; remaining > 0 ; remaining--) {
+            int gap = 0;
+            shift = 0;
+            do {
+                next = data[position++];
+                gap |= (next & 0x7F) << shift;
+                shift += 7;
+            } while (next < 0);
+            neighbour += gap + 1;
+            if (removed == null || indexOf(removed, neighbour) == -1)
+                buffer[count++] = neighbour;
+        }
+        if (added != null) System.arraycopy(added, 1, buffer, count, added[0]);
+        return buffer;
+    }
+
+    /**
+     * Re-encodes all the lists with the changes of the overflow area applied.
+     */
+    @Override
+    public void compact() {
+        byte[] newData = new byte[Math.max(16, data.length)];
+        int[] buffer = new int[16];
+        int newDataSize = 1; // Keeping the empty list at the start
+        for (int index = 0 ; index < nodeCount ; index++) {
+            int degree = degree(index);
+            if (degree == 0) offsets[index] = EMPTY_LIST_OFFSET;
+            else {
+                if (buffer.length < degree) buffer = new int[Math.max(degree, buffer.length * 2)];
+                neighbours(index, buffer);
+                Arrays.sort(buffer, 0, degree);
+                // A varint of an int takes at most 5 bytes
+                long maxListSize = (degree + 1) * 5L;
+                if (newData.length - newDataSize < maxListSize)
+                    newData = Arrays.copyOf(newData, (int) Math.min(Integer.MAX_VALUE - 8,
+                            Math.max(newData.length * 2L, newDataSize + maxListSize)));
+                offsets[index] = newDataSize;
+                newDataSize = writeVarint(newData, newDataSize, degree);
+                for (int i = 0, previous = -1 ; i < degree ; previous = buffer[i++])
+                    newDataSize = writeVarint(newData, newDataSize, buffer[i] - previous - 1);
+            }
+            addedNeighbours[index] = removedNeighbours[index] = null;
+        }
+        data = Arrays.copyOf(newData, newDataSize);
+        compressedEdgeCount = edgeCount;
+        overflowEdgeCount = 0;
+    }
+
+    @Override
+    public long sizeInBytes() {
+        long size = data.length + 4L * nodes.length * 4 + indices.sizeInBytes();
+        for (int index = 0 ; index < nodeCount ; index++) {
+            if (addedNeighbours[index] != null) size += 16 + 4L * addedNeighbours[index].length;
+            if (removedNeighbours[index] != null) size += 16 + 4L * removedNeighbours[index].length;
+        }
+        return size;
+    }
+
+    //
+    // Private Methods
+    //
+
+    /**
+     * Returns whether the compressed list of the node at the given index contains
+     * the given neighbour (ignoring the overflow area).
+     */
+    private boolean compressedListContains(int index, int target) {
+        int position = offsets[index], remaining = -1, neighbour = -1;
+        while (remaining != 0 && neighbour < target) {
+            int value = 0, shift = 0;
+            byte next;
+            do {
+                next = data[position++];
+                value |= (next & 0x7F) << shift;
+                shift += 7;
+            } while (next < 0);
+            if (remaining == -1) remaining = value;
+            else {
+                remaining--;
+                neighbour += value + 1;
+            }
+        }
+        return neighbour == target;
+    }
+
+    private void compactIfNeeded() {
+        if (overflowEdgeCount > Math.max(MIN_OVERFLOW_EDGES_TO_COMPACT, compressedEdgeCount / 8))
+            compact();
+    }
+
+    private static int writeVarint(byte[] data, int position, int value) {
+        while ((value & ~0x7F) != 0) {
+            data[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data[position++] = (byte) value;
+        return position;
+    }
+
+    //
+    // Overflow lists (the count is at index 0)
+    //
+
+    private static int count(int[] values) {
+        return values == null ? 0 : values[0];
+    }
+
+    private static int indexOf(int[] values, int value) {
+        if (values == null) return -1;
+        for (int i = 1 ; i <= values[0] ; i++)
+            if (values[i] == value) return i;
+        return -1;
+    }
+
+    private static int[] append(int[] values, int value) {
+        if (values == null) values = new int[4];
+        else if (values[0] + 1 == values.length) values = Arrays.copyOf(values, values.length * 2);
+        values[++values[0]] = value;
+        return values;
+    }
+
+    private static void removeAt(int[] values, int position) {
+        values[position] = values[values[0]--];
+    }
+}
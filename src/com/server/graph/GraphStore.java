@@ -0,0 +1,79 @@
+package com.server.graph;
+
+/**
+ * Adjacency storage of the graph used by the shortest path algorithms.
+ *
+ * The nodes are identified by their ids in the operations and by a dense index
+ * internally (in the order they were added), so the BFS kernels can use arrays
+ * indexed by node instead of hash sets. The nodes are never removed.
+ *
+ * Notes:
+ * 1) The reads may run in parallel as long as no update runs at the same time.
+ * 2) The neighbours are returned in no particular order.
+ */
+public interface GraphStore {
+
+    /**
+     * Returns the index of the node or -1 if it doesn't exist.
+     */
+    int indexOf(int node);
+
+    /**
+     * Returns the id of the node at the given index.
+     */
+    int nodeAt(int index);
+
+    /**
+     * Returns the number of nodes, the indices are in the range [0, nodeCount).
+     */
+    int nodeCount();
+
+    /**
+     * Returns the number of edges.
+     */
+    long edgeCount();
+
+    /**
+     * Adds the node if it doesn't exist and returns its index. The nodes are indexed
+     * in the order they are added.
+     */
+    int addNode(int node);
+
+    /**
+     * Adds the edge (along with its missing nodes) and returns whether the edge
+     * didn't exist before.
+     */
+    boolean addEdge(int a, int b);
+
+    /**
+     * Removes the edge and returns whether it existed.
+     */
+    boolean removeEdge(int a, int b);
+
+    /**
+     * Returns the number of neighbours of the node at the given index.
+     */
+    int degree(int index);
+
+    /**
+     * Returns an array whose first degree(index) entries are the indices of the
+     * neighbours of the node at the given index. It's either an internal array
+     * (which must not be modified) or the given buffer which must hold at least
+     * degree(index) entries.
+     */
+    int[] neighbours(int index, int[] buffer);
+
+    /**
+     * Reorganizes the storage after a bulk of updates (e.g. loading the initial
+     * graph). It does nothing by default.
+     */
+    default void compact() {
+        // Do nothing
+    }
+
+    /**
+     * Returns an estimate of the memory used by the graph in bytes (in the heap or
+     * outside it).
+     */
+    long sizeInBytes();
+}
@@ -0,0 +1,80 @@
+package com.server.graph;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from node ids to their indices which doesn't box the
+ * keys (linear probing, the table is at most half full).
+ */
+final class IntIndexMap {
+
+    private static final int MISSING = -1;
+
+    private int[] keys;
+    private int[] values; // MISSING marks a free slot
+    private int size;
+
+    IntIndexMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2 - 1)) << 1;
+        this.keys = new int[capacity];
+        this.values = new int[capacity];
+        Arrays.fill(values, MISSING);
+    }
+
+    /**
+     * Returns the index of the given node or -1 if it doesn't exist.
+     */
+    int get(int key) {
+        int mask = keys.length - 1;
+        for (int slot = hash(key) & mask ; ; slot = (slot + 1) & mask) {
+            if (values[slot] == MISSING) return MISSING;
+            if (keys[slot] == key) return values[slot];
+        }
+    }
+
+    /**
+     * Maps the given node (which must not exist) to the given index.
+     */
+    void put(int key, int value) {
+        if (2 * (size + 1) > keys.length) resize();
+        insert(keys, values, key, value);
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    long sizeInBytes() {
+        return 8L * keys.length;
+    }
+
+    //
+    // Private Methods
+    //
+
+    private void resize() {
+        int[] newKeys = new int[keys.length * 2];
+        int[] newValues = new int[values.length * 2];
+        Arrays.fill(newValues, MISSING);
+        for (int slot = 0 ; slot < keys.length ; slot++)
+            if (values[slot] != MISSING)
+                insert(newKeys, newValues, keys[slot], values[slot]);
+        keys = newKeys;
+        values = newValues;
+    }
+
+    private static void insert(int[] keys, int[] values, int key, int value) {
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (values[slot] != MISSING)
+            slot = (slot + 1) & mask;
+        keys[slot] = key;
+        values[slot] = value;
+    }
+
+    private static int hash(int key) {
+        int hash = key * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
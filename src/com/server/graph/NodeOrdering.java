@@ -0,0 +1,122 @@
+package com.server.graph;
+
+import java.util.Arrays;
+
+/**
+ * Orders in which the nodes of the initial graph are indexed, so the nodes which
+ * are traversed together get close indices and the arrays indexed by node (the
+ * adjacency, the BFS distances and the states of the algorithms) are read with
+ * fewer cache misses.
+ *
+ * Steps:
+ * 1) The initial graph is loaded in a temporary store in the file order.
+ * 2) The new order of its nodes is calculated:
+ *        i) NONE keeps the file order.
+ *        ii) BFS visits the nodes in BFS order, starting from every node which
+ *            isn't visited yet in index order.
+ *        iii) RCM (Reverse Cuthill-McKee) visits the nodes in BFS order, starting
+ *             from an unvisited node of minimum degree and visiting the neighbours
+ *             of each node by increasing degree, then reverses the order.
+ * 3) The nodes are added to the target store in the new order (so they are
+ *    indexed in that order), then the edges are added node by node with the
+ *    neighbours of each node sorted by their new indices.
+ *
+ * Notes:
+ * 1) The traversals follow the edges in their direction.
+ * 2) The ids are mapped to the indices by the store, so the new order is only seen
+ *    inside it. The nodes added later are indexed after the initial ones.
+ */
+public enum NodeOrdering {
+
+    NONE, BFS, RCM;
+
+    /**
+     * Returns the indices of the nodes of the graph in their new order.
+     */
+    public int[] order(GraphStore graph) {
+        int nodeCount = graph.nodeCount();
+        int[] order = new int[nodeCount];
+        if (this == NONE) {
+            for (int index = 0 ; index < nodeCount ; index++)
+                order[index] = index;
+            return order;
+        }
+
+        int[] roots = new int[nodeCount];
+        for (int index = 0 ; index < nodeCount ; index++)
+            roots[index] = index;
+        if (this == RCM) roots = sortByDegree(graph, roots, nodeCount);
+        boolean[] visited = new boolean[nodeCount];
+        int[] buffer = new int[16];
+        int ordered = 0;
+        for (int root : roots) {
+            if (visited[root]) continue;
+            visited[root] = true;
+            int head = ordered;
+            order[ordered++] = root;
+            while (head < ordered) {
+                int index = order[head++], degree = graph.degree(index);
+                if (buffer.length < degree) buffer = new int[Math.max(degree, buffer.length * 2)];
+                int[] neighbours = graph.neighbours(index, buffer);
+                if (this == RCM) neighbours = sortByDegree(graph, neighbours, degree);
+                for (int i = 0 ; i < degree ; i++) {
+                    int neighbour = neighbours[i];
+                    if (visited[neighbour]) continue;
+                    visited[neighbour] = true;
+                    order[ordered++] = neighbour;
+                }
+            }
+        }
+        if (this == RCM) {
+            for (int i = 0, j = nodeCount - 1 ; i < j ; i++, j--) {
+                int index = order[i];
+                order[i] = order[j];
+                order[j] = index;
+            }
+        }
+        return order;
+    }
+
+    /**
+     * Adds the nodes then the edges of the source graph to the empty target graph
+     * in the new order.
+     */
+    public void copy(GraphStore source, GraphStore target) {
+        int[] order = order(source);
+        for (int index : order)
+            target.addNode(source.nodeAt(index));
+        int[] buffer = new int[16], targetNeighbours = new int[16];
+        for (int index : order) {
+            int degree = source.degree(index);
+            if (buffer.length < degree) {
+                buffer = new int[Math.max(degree, buffer.length * 2)];
+                targetNeighbours = new int[buffer.length];
+            }
+            int[] neighbours = source.neighbours(index, buffer);
+            for (int i = 0 ; i < degree ; i++)
+                targetNeighbours[i] = target.indexOf(source.nodeAt(neighbours[i]));
+            Arrays.sort(targetNeighbours, 0, degree);
+            int node = source.nodeAt(index);
+            for (int i = 0 ; i < degree ; i++)
+                target.addEdge(node, target.nodeAt(targetNeighbours[i]));
+        }
+    }
+
+    //
+    // Private Methods
+    //
+
+    /**
+     * Returns the first count indices sorted by their degree then by their index.
+     */
+    private static int[] sortByDegree(GraphStore graph, int[] indices, int count) {
+        long[] keys = new long[count];
+        for (int i = 0 ; i < count ; i++)
+            keys[i] = ((long) graph.degree(indices[i]) << 32) | indices[i];
+        Arrays.sort(keys);
+        int[] sortedIndices = new int[count];
+        for (int i = 0 ; i < count ; i++)
+            sortedIndices[i] = (int) keys[i];
+        return sortedIndices;
+    }
+}
@@ -0,0 +1,277 @@
+package com.server.graph;
+
+import java.io.File;
+
+/**
+ * Graph store keeping the nodes and the edges outside the heap, so a multi-GB graph
+ * adds nothing for the garbage collector to mark (the heap only holds the index of
+ * the node ids, which is two flat int arrays). The memory is either direct or maps
+ * temporary files in a given directory.
+ *
+ * Steps:
+ * 1) The edges are kept in compressed sparse row form: the neighbours of each node
+ *    are contiguous in the targets region and the record of the node holds the
+ *    start and the count of its range.
+ * 2) Edges added after the last compaction go to the append region, which holds
+ *    blocks of BLOCK_CAPACITY neighbours. The blocks of a node are chained from its
+ *    record, the newest block first.
+ * 3) A removed edge is replaced by the last neighbour of its range (or of the newest
+ *    block of its node) so the lists stay dense.
+ * 4) Once the append region holds more than 1/4 of the compacted edges, all the
+ *    lists are copied into a new targets region in node order and the append
+ *    region is reset.
+ *
+ * Notes:
+ * 1) The blocks emptied by removals are only reclaimed by the next compaction.
+ * 2) Listing the neighbours copies them into the caller's buffer in bulk.
+ */
+public class OffHeapGraphStore implements GraphStore {
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int MIN_APPENDED_EDGES_TO_COMPACT = 1 << 16;
+    private static final long NO_BLOCK = -1;
+
+    // Node record: start of the range (long), range count (int), appended count (int),
+    // newest block (long) and node id (int)
+    private static final int RECORD_SIZE = 32;
+    private static final int RANGE_START = 0;
+    private static final int RANGE_COUNT = 8;
+    private static final int APPENDED_COUNT = 12;
+    private static final int NEWEST_BLOCK = 16;
+    private static final int NODE_ID = 24;
+
+    // Append block: next block (long), count (int), padding then the neighbours
+    private static final int BLOCK_CAPACITY = 8;
+    private static final int BLOCK_SIZE = 16 + 4 * BLOCK_CAPACITY;
+    private static final int NEXT_BLOCK = 0;
+    private static final int BLOCK_COUNT = 8;
+    private static final int BLOCK_NEIGHBOURS = 16;
+
+    private final IntIndexMap indices;
+    private final File directory; // Null for direct memory
+    private final int chunkShift;
+    private OffHeapMemory records;
+    private OffHeapMemory targets;
+    private OffHeapMemory blocks;
+    private int nodeCount;
+    private long edgeCount;
+    private long appendedEdgeCount;
+    private long blocksSize; // Bytes of the append region in use
+
+    /**
+     * Creates a store using direct memory.
+     */
+    public OffHeapGraphStore() {
+        this(null);
+    }
+
+    /**
+     * Creates a store mapping temporary files in the given directory, or using
+     * direct memory if it's null.
+     */
+    public OffHeapGraphStore(File directory) {
+        this(directory, OffHeapMemory.DEFAULT_CHUNK_SHIFT);
+    }
+
+    OffHeapGraphStore(File directory, int chunkShift) {
+        this.indices = new IntIndexMap(INITIAL_CAPACITY);
+        this.directory = directory;
+        this.chunkShift = chunkShift;
+        this.records = allocate((long) INITIAL_CAPACITY * RECORD_SIZE);
+        this.targets = allocate(0);
+        this.blocks = allocate((long) INITIAL_CAPACITY * BLOCK_SIZE);
+    }
+
+    @Override
+    public int indexOf(int node) {
+        return indices.get(node);
+    }
+
+    @Override
+    public int nodeAt(int index) {
+        return records.getInt(record(index) + NODE_ID);
+    }
+
+    @Override
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    @Override
+    public long edgeCount() {
+        return edgeCount;
+    }
+
+    @Override
+    public int addNode(int node) {
+        int index = indices.get(node);
+        if (index != -1) return index;
+        if (record(nodeCount + 1) > records.size())
+            records = grow(records, records.size());
+        long record = record(nodeCount);
+        records.putLong(record + RANGE_START, 0);
+        records.putInt(record + RANGE_COUNT, 0);
+        records.putInt(record + APPENDED_COUNT, 0);
+        records.putLong(record + NEWEST_BLOCK, NO_BLOCK);
+        records.putInt(record + NODE_ID, node);
+        indices.put(node, nodeCount);
+        return nodeCount++;
+    }
+
+    @Override
+    public boolean addEdge(int a, int b) {
+        int indexA = addNode(a), indexB = addNode(b);
+        long record = record(indexA);
+        if (findInRange(record, indexB) != -1 || findInBlocks(record, indexB) != -1) return false;
+        long block = records.getLong(record + NEWEST_BLOCK);
+        if (block == NO_BLOCK || blocks.getInt(block + BLOCK_COUNT) == BLOCK_CAPACITY) {
+            long newBlock = allocateBlock();
+            blocks.putLong(newBlock + NEXT_BLOCK, block);
+            blocks.putInt(newBlock + BLOCK_COUNT, 0);
+            records.putLong(record + NEWEST_BLOCK, block = newBlock);
+        }
+        int blockCount = blocks.getInt(block + BLOCK_COUNT);
+        blocks.putInt(block + BLOCK_NEIGHBOURS + 4L * blockCount, indexB);
+        blocks.putInt(block + BLOCK_COUNT, blockCount + 1);
+        records.putInt(record + APPENDED_COUNT, records.getInt(record + APPENDED_COUNT) + 1);
+        edgeCount++;
+        appendedEdgeCount++;
+        if (appendedEdgeCount > Math.max(MIN_APPENDED_EDGES_TO_COMPACT, (edgeCount - appendedEdgeCount) / 4))
+            compact();
+        return true;
+    }
+
+    @Override
+    public boolean removeEdge(int a, int b) {
+        int indexA = indices.get(a), indexB = indices.get(b);
+        if (indexA == -1 || indexB == -1) return false;
+        long record = record(indexA);
+        long position = findInRange(record, indexB);
+        if (position != -1) {
+            // Moving the last neighbour of the range in its place
+            int rangeCount = records.getInt(record + RANGE_COUNT);
+            long last = 4 * (records.getLong(record + RANGE_START) + rangeCount - 1);
+            targets.putInt(position, targets.getInt(last));
+            records.putInt(record + RANGE_COUNT, rangeCount - 1);
+            edgeCount--;
+            return true;
+        }
+        position = findInBlocks(record, indexB);
+        if (position == -1) return false;
+        // Moving the last neighbour of the newest block in its place
+        long block = records.getLong(record + NEWEST_BLOCK);
+        int blockCount = blocks.getInt(block + BLOCK_COUNT);
+        blocks.putInt(position, blocks.getInt(block + BLOCK_NEIGHBOURS + 4L * (blockCount - 1)));
+        blocks.putInt(block + BLOCK_COUNT, blockCount - 1);
+        if (blockCount == 1) records.putLong(record + NEWEST_BLOCK, blocks.getLong(block + NEXT_BLOCK));
+        records.putInt(record + APPENDED_COUNT, records.getInt(record + APPENDED_COUNT) - 1);
+        edgeCount--;
+        appendedEdgeCount--;
+        return true;
+    }
+
+    @Override
+    public int degree(int index) {
+        long record = record(index);
+        return records.getInt(record + RANGE_COUNT) + records.getInt(record + APPENDED_COUNT);
+    }
+
+    @Override
+    public int[] neighbours(int index, int[] buffer) {
+        long record = record(index);
+        int count = records.getInt(record + RANGE_COUNT);
+        targets.getInts(4 * records.getLong(record + RANGE_START), buffer, 0, count);
+        for (long block = records.getLong(record + NEWEST_BLOCK) ; block != NO_BLOCK ;
+             block = blocks.getLong(block + NEXT_BLOCK)) {
+            int blockCount = blocks.getInt(block + BLOCK_COUNT);
+            blocks.getInts(block + BLOCK_NEIGHBOURS, buffer, count, blockCount);
+            count += blockCount;
+        }
+        return buffer;
+    }
+
+    /**
+     * Copies all the lists into a new targets region in node order and resets the
+     * append region.
+     */
+    @Override
+    public void compact() {
+        OffHeapMemory newTargets = allocate(4 * edgeCount);
+        int[] buffer = new int[16];
+        long start = 0;
+        for (int index = 0 ; index < nodeCount ; index++) {
+            long record = record(index);
+            int degree = degree(index);
+            if (buffer.length < degree) buffer = new int[Math.max(degree, buffer.length * 2)];
+            neighbours(index, buffer);
+            for (int i = 0 ; i < degree ; i++)
+                newTargets.putInt(4 * (start + i), buffer[i]);
+            records.putLong(record + RANGE_START, start);
+            records.putInt(record + RANGE_COUNT, degree);
+            records.putInt(record + APPENDED_COUNT, 0);
+            records.putLong(record + NEWEST_BLOCK, NO_BLOCK);
+            start += degree;
+        }
+        targets = newTargets;
+        blocksSize = 0;
+        appendedEdgeCount = 0;
+    }
+
+    @Override
+    public long sizeInBytes() {
+        return records.size() + targets.size() + blocks.size() + indices.sizeInBytes();
+    }
+
+    //
+    // Private Methods
+    //
+
+    private static long record(int index) {
+        return (long) index * RECORD_SIZE;
+    }
+
+    /**
+     * Returns the offset of the given neighbour in the range of the record or -1.
+     */
+    private long findInRange(long record, int neighbour) {
+        long start = 4 * records.getLong(record + RANGE_START);
+        long end = start + 4L * records.getInt(record + RANGE_COUNT);
+        for (long position = start ; position < end ; position += 4)
+            if (targets.getInt(position) == neighbour) return position;
+        return -1;
+    }
+
+    /**
+     * Returns the offset of the given neighbour in the blocks of the record or -1.
+     */
+    private long findInBlocks(long record, int neighbour) {
+        for (long block = records.getLong(record + NEWEST_BLOCK) ; block != NO_BLOCK ;
+             block = blocks.getLong(block + NEXT_BLOCK)) {
+            long end = block + BLOCK_NEIGHBOURS + 4L * blocks.getInt(block + BLOCK_COUNT);
+            for (long position = block + BLOCK_NEIGHBOURS ; position < end ; position += 4)
+                if (blocks.getInt(position) == neighbour) return position;
+        }
+        return -1;
+    }
+
+    private long allocateBlock() {
+        if (blocksSize + BLOCK_SIZE > blocks.size())
+            blocks = grow(blocks, blocksSize);
+        long block = blocksSize;
+        blocksSize += BLOCK_SIZE;
+        return block;
+    }
+
+    /**
+     * Returns a region twice as large holding the used bytes of the given one.
+     */
+    private OffHeapMemory grow(OffHeapMemory memory, long usedSize) {
+        OffHeapMemory newMemory = allocate(memory.size() * 2);
+        newMemory.copyFrom(memory, usedSize);
+        return newMemory;
+    }
+
+    private OffHeapMemory allocate(long size) {
+        return new OffHeapMemory(size, directory, chunkShift);
+    }
+}
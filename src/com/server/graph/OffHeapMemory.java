@@ -0,0 +1,121 @@
+package com.server.graph;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Fixed size memory region outside the heap addressed by long byte offsets. It's
+ * split into chunks of direct buffers (or buffers mapping a file) since a single
+ * buffer can't exceed 2 GB.
+ *
+ * Notes:
+ * 1) The ints and longs must be aligned to their size so they never straddle two
+ *    chunks.
+ * 2) The memory is released once the region is garbage collected (the direct and
+ *    mapped buffers have no explicit release before the foreign memory API).
+ */
+final class OffHeapMemory {
+
+    static final int DEFAULT_CHUNK_SHIFT = 30; // 1 GB chunks
+
+    private final ByteBuffer[] chunks;
+    private final IntBuffer[] intChunks;
+    private final int chunkShift;
+    private final long chunkMask;
+    private final long size;
+
+    /**
+     * Allocates a zeroed region of the given size using direct buffers, or mapping a
+     * temporary file in the given directory if it isn't null.
+     */
+    OffHeapMemory(long size, File directory, int chunkShift) {
+        this.size = size;
+        this.chunkShift = chunkShift;
+        this.chunkMask = (1L << chunkShift) - 1;
+        int chunkCount = (int) ((size + chunkMask) >>> chunkShift);
+        this.chunks = new ByteBuffer[chunkCount];
+        this.intChunks = new IntBuffer[chunkCount];
+        try {
+            FileChannel channel = directory == null ? null : openTemporaryFile(directory);
+            for (int i = 0 ; i < chunkCount ; i++) {
+                int chunkSize = (int) Math.min(1L << chunkShift, size - ((long) i << chunkShift));
+                ByteBuffer chunk = channel == null ? ByteBuffer.allocateDirect(chunkSize)
+                        : channel.map(FileChannel.MapMode.READ_WRITE, (long) i << chunkShift, chunkSize);
+                chunks[i] = chunk.order(ByteOrder.nativeOrder());
+                intChunks[i] = chunks[i].asIntBuffer();
+            }
+            if (channel != null) channel.close(); // The mappings stay valid
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't map the off-heap memory", e);
+        }
+    }
+
+    long size() {
+        return size;
+    }
+
+    int getInt(long offset) {
+        return chunks[(int) (offset >>> chunkShift)].getInt((int) (offset & chunkMask));
+    }
+
+    void putInt(long offset, int value) {
+        chunks[(int) (offset >>> chunkShift)].putInt((int) (offset & chunkMask), value);
+    }
+
+    long getLong(long offset) {
+        return chunks[(int) (offset >>> chunkShift)].getLong((int) (offset & chunkMask));
+    }
+
+    void putLong(long offset, long value) {
+        chunks[(int) (offset >>> chunkShift)].putLong((int) (offset & chunkMask), value);
+    }
+
+    /**
+     * Copies count ints starting at the given offset into the given array.
+     */
+    void getInts(long offset, int[] destination, int destinationOffset, int count) {
+        while (count > 0) {
+            int chunk = (int) (offset >>> chunkShift), position = (int) (offset & chunkMask);
+            int length = Math.min(count, (chunks[chunk].capacity() - position) >>> 2);
+            intChunks[chunk].get(position >>> 2, destination, destinationOffset, length);
+            offset += (long) length << 2;
+            destinationOffset += length;
+            count -= length;
+        }
+    }
+
+    /**
+     * Copies the given number of bytes from the start of the source region to the
+     * start of this region.
+     */
+    void copyFrom(OffHeapMemory source, long length) {
+        for (long offset = 0 ; offset < length ; ) {
+            ByteBuffer sourceChunk = source.chunks[(int) (offset >>> source.chunkShift)];
+            ByteBuffer chunk = chunks[(int) (offset >>> chunkShift)];
+            int sourcePosition = (int) (offset & source.chunkMask), position = (int) (offset & chunkMask);
+            int count = (int) Math.min(length - offset, Math.min
+                    (sourceChunk.capacity() - sourcePosition, chunk.capacity() - position));
+            chunk.put(position, sourceChunk, sourcePosition, count);
+            offset += count;
+        }
+    }
+
+    //
+    // Private Methods
+    //
+
+    private FileChannel openTemporaryFile(File directory) throws IOException {
+        File file = File.createTempFile("graph", ".bin", directory);
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        randomAccessFile.setLength(size);
+        // The file isn't needed once it's mapped (except on Windows where it's deleted on exit)
+        if (!file.delete()) file.deleteOnExit();
+        return randomAccessFile.getChannel();
+    }
+}
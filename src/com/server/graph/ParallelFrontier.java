@@ -0,0 +1,135 @@
+package com.server.graph;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Expands a BFS level in parallel for the BfsKernel when the level is large, using
+ * the workers of a ForkJoinPool along with the calling thread.
+ *
+ * Steps:
+ * 1) The level (queue[head, levelEnd)) is split into contiguous chunks of at least
+ *    MIN_CHUNK_SIZE nodes, at most CHUNKS_PER_WORKER chunks per worker so the
+ *    workers finishing early take the remaining chunks.
+ * 2) Each chunk expands its nodes and claims their unvisited neighbours by a
+ *    compare-and-set of their stamps in the visited array of the kernel, so each
+ *    node is claimed by exactly one chunk. A claimed node is appended to the next
+ *    frontier buffer of the chunk and its distance is written.
+ * 3) Once all the chunks finish, their buffers are appended to the queue in chunk
+ *    order, forming the next level.
+ *
+ * Notes:
+ * 1) The chunks and their buffers belong to the kernel and are reused, so a level
+ *    allocates nothing once the buffers have grown.
+ * 2) The order of the nodes within the next level depends on the scheduling, only
+ *    the distances and the set of visited nodes are deterministic.
+ * 3) Each chunk has its own neighbour buffer, the graph store only being read.
+ */
+final class ParallelFrontier {
+
+    static final int MIN_CHUNK_SIZE = 512;
+    private static final int CHUNKS_PER_WORKER = 4;
+    private static final VarHandle STAMPS = MethodHandles.arrayElementVarHandle(int[].class);
+
+    private final ForkJoinPool pool;
+    private final Chunk[] chunks;
+
+    ParallelFrontier(ForkJoinPool pool) {
+        this.pool = pool;
+        int workers = pool.getParallelism() + 1; // The calling thread works too
+        this.chunks = new Chunk[workers * CHUNKS_PER_WORKER];
+        for (int i = 0 ; i < chunks.length ; i++)
+            chunks[i] = new Chunk();
+    }
+
+    /**
+     * Returns whether the pool has workers to share the levels with.
+     */
+    static boolean isAvailable(ForkJoinPool pool) {
+        return pool.getParallelism() > 1;
+    }
+
+    ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Expands the level queue[head, levelEnd) whose nodes are at distance path - 1,
+     * appends the next level to the queue and returns the new queue tail.
+     */
+    int expand(GraphStore graph, int[] queue, int head, int levelEnd, int[] visitedEpochs,
+               int epoch, int path, int[] distances) {
+        int levelSize = levelEnd - head;
+        int chunkCount = Math.min(chunks.length, Math.max(1, levelSize / MIN_CHUNK_SIZE));
+        for (int i = 0 ; i < chunkCount ; i++) {
+            Chunk chunk = chunks[i];
+            chunk.reinitialize();
+            chunk.graph = graph;
+            chunk.queue = queue;
+            chunk.from = head + (int) ((long) levelSize * i / chunkCount);
+            chunk.to = head + (int) ((long) levelSize * (i + 1) / chunkCount);
+            chunk.visitedEpochs = visitedEpochs;
+            chunk.epoch = epoch;
+            chunk.path = path;
+            chunk.distances = distances;
+        }
+        for (int i = 1 ; i < chunkCount ; i++)
+            pool.execute(chunks[i]);
+        chunks[0].invoke();
+        for (int i = 1 ; i < chunkCount ; i++)
+            chunks[i].join();
+
+        int tail = levelEnd;
+        for (int i = 0 ; i < chunkCount ; i++) {
+            Chunk chunk = chunks[i];
+            System.arraycopy(chunk.next, 0, queue, tail, chunk.nextSize);
+            tail += chunk.nextSize;
+            chunk.graph = null; // Not retaining the graph nor the arrays between searches
+            chunk.queue = chunk.visitedEpochs = chunk.distances = null;
+        }
+        return tail;
+    }
+
+    /**
+     * Part of a level expanded by a single worker into its own next frontier buffer.
+     */
+    private static final class Chunk extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private GraphStore graph;
+        private int[] queue;
+        private int from;
+        private int to;
+        private int[] visitedEpochs;
+        private int epoch;
+        private int path;
+        private int[] distances;
+        private int[] next = new int[MIN_CHUNK_SIZE];
+        private int nextSize;
+        private int[] neighbourBuffer = new int[16];
+
+        @Override
+        protected void compute() {
+            nextSize = 0;
+            for (int head = from ; head < to ; head++) {
+                int node = queue[head];
+                int degree = graph.degree(node);
+                if (neighbourBuffer.length < degree)
+                    neighbourBuffer = new int[Math.max(degree, neighbourBuffer.length * 2)];
+                int[] neighbours = graph.neighbours(node, neighbourBuffer);
+                for (int i = 0 ; i < degree ; i++) {
+                    int neighbour = neighbours[i];
+                    int stamp = visitedEpochs[neighbour];
+                    if (stamp == epoch || ! STAMPS.compareAndSet(visitedEpochs, neighbour, stamp, epoch))
+                        continue;
+                    if (distances != null) distances[neighbour] = path;
+                    if (nextSize == next.length) next = Arrays.copyOf(next, nextSize * 2);
+                    next[nextSize++] = neighbour;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.server.logging;
+
+import com.Operation;
+import com.Operation.OperationType;
+import org.apache.logging.log4j.Logger;
+
+import java.rmi.RemoteException;
+import java.util.List;
+
+/**
+ * Asynchronous logger for the batches received by the server and their results.
+ *
+ * The request thread only copies the operations and the results as ints into a
+ * pre-allocated slot of a ring buffer and publishes it. A background thread drains
+ * the ring buffer and renders the text only if the logger has INFO enabled, so the
+ * request thread never formats strings nor does I/O.
+ *
+ * Notes:
+ * 1) Only one of every samplingInterval batches has its content (operations and
+ *    results) logged. The other batches only log their processing time.
+ * 2) At most maxOperations operations (or results) are copied per batch, the rest
+ *    are reported as a count.
+ * 3) If the ring buffer is full (the drainer can't keep up) the event is dropped
+ *    and counted instead of blocking the request thread.
+ * 4) The log must be closed once the server shuts down to stop the drainer thread.
+ */
+public class BatchEventLog implements AutoCloseable {
+
+    private static final int RECEIVED_EVENT = 0;
+    private static final int PROCESSED_EVENT = 1;
+    private static final OperationType[] OPERATION_TYPES = OperationType.values();
+
+    private final Logger logger;
+    private final int samplingInterval;
+    private final int maxOperations;
+    private final StringBuilder sb; // Only used by the drainer thread
+    private final EventRing<Slot> ring;
+    private long batchSequence;
+
+    public BatchEventLog(Logger logger, int ringSize, int samplingInterval, int maxOperations) {
+        this.logger = logger;
+        this.samplingInterval = Math.max(1, samplingInterval);
+        this.maxOperations = maxOperations;
+        this.sb = new StringBuilder();
+        this.ring = new EventRing<>(ringSize, () -> new Slot(maxOperations), this::log, "batch-log-drainer");
+    }
+
+    /**
+     * Returns the identifier of a newly received batch.
+     */
+    public synchronized long nextBatchId() {
+        return ++batchSequence;
+    }
+
+    /**
+     * Publishes the content of a received batch if the batch is sampled.
+     */
+    public synchronized void batchReceived(long batchId, Operation[] batch) throws RemoteException {
+        if (! isSampled(batchId)) return;
+        Slot slot = ring.claim();
+        if (slot == null) return;
+        int copied = Math.min(batch.length, maxOperations);
+        for (int i = 0, j = 0 ; i < copied ; i++) {
+            slot.payload[j++] = batch[i].getA();
+            slot.payload[j++] = batch[i].getB();
+            slot.payload[j++] = batch[i].getOperationType().ordinal();
+            slot.payload[j++] = batch[i].getLimit();
+        }
+        publish(slot, RECEIVED_EVENT, batchId, batch.length, copied, 0);
+    }
+
+    /**
+     * Publishes the processing time of the batch along with its result if the batch
+     * is sampled.
+     */
+    public synchronized void batchProcessed(long batchId, List<Integer> result, long processingTimeMillis) {
+        Slot slot = ring.claim();
+        if (slot == null) return;
+        int copied = 0;
+        if (isSampled(batchId)) {
+            copied = Math.min(result.size(), maxOperations);
+            for (int i = 0 ; i < copied ; i++)
+                slot.payload[i] = result.get(i);
+        }
+        publish(slot, PROCESSED_EVENT, batchId, result.size(), copied, processingTimeMillis);
+    }
+
+    /**
+     * Publishes the processing time of a batch whose results were streamed to the
+     * client (only their count is logged).
+     */
+    public synchronized void batchProcessed(long batchId, int resultCount, long processingTimeMillis) {
+        Slot slot = ring.claim();
+        if (slot == null) return;
+        publish(slot, PROCESSED_EVENT, batchId, resultCount, 0, processingTimeMillis);
+    }
+
+    /**
+     * Returns the number of events dropped because the ring buffer was full.
+     */
+    public long getDroppedEvents() {
+        return ring.getDroppedEvents();
+    }
+
+    /**
+     * Logs the events already published and stops the drainer thread, the later
+     * events are dropped.
+     */
+    @Override
+    public void close() {
+        ring.close();
+    }
+
+    //
+    // Private Methods
+    //
+
+    private boolean isSampled(long batchId) {
+        return batchId % samplingInterval == 0 || batchId == 1;
+    }
+
+    private void publish(Slot slot, int eventType, long batchId, int totalCount,
+                         int copiedCount, long processingTimeMillis) {
+        slot.eventType = eventType;
+        slot.batchId = batchId;
+        slot.totalCount = totalCount;
+        slot.copiedCount = copiedCount;
+        slot.processingTimeMillis = processingTimeMillis;
+        ring.publish();
+    }
+
+    /**
+     * Renders the event as text on the drainer thread.
+     */
+    private void log(Slot slot) {
+        if (! logger.isInfoEnabled()) return;
+        sb.setLength(0);
+        render(slot, sb);
+        logger.info(sb.toString());
+    }
+
+    private void render(Slot slot, StringBuilder sb) {
+        if (slot.eventType == RECEIVED_EVENT) {
+            sb.append("Received batch #").append(slot.batchId).append(" -> [");
+            for (int i = 0, j = 0 ; i < slot.copiedCount ; i++) {
+                sb.append("{").append(slot.payload[j++]).append(", ")
+                        .append(slot.payload[j++]).append(", ");
+                OperationType operationType = OPERATION_TYPES[slot.payload[j++]];
+                int limit = slot.payload[j++];
+                sb.append(operationType);
+                if (operationType.hasLimit()) sb.append(", ").append(limit);
+                sb.append('}');
+                if (i < slot.copiedCount - 1) sb.append(", ");
+            }
+        }
+        else {
+            sb.append("Batch #").append(slot.batchId).append(" processed in ")
+                    .append(slot.processingTimeMillis).append(" ms -> [");
+            for (int i = 0 ; i < slot.copiedCount ; i++) {
+                sb.append(slot.payload[i]);
+                if (i < slot.copiedCount - 1) sb.append(", ");
+            }
+        }
+        if (slot.totalCount > slot.copiedCount)
+            sb.append(slot.copiedCount > 0 ? ", " : "")
+              .append("... (").append(slot.totalCount - slot.copiedCount).append(" more)");
+        sb.append("]");
+        long dropped = ring.getDroppedEvents();
+        if (dropped > 0) sb.append(" (").append(dropped).append(" events dropped so far)");
+    }
+
+    /**
+     * Pre-allocated ring buffer entry. The operations are stored as (a, b, type, limit)
+     * tuples while the results are stored as is.
+     */
+    private static final class Slot {
+        private final int[] payload;
+        private int eventType;
+        private long batchId;
+        private int totalCount;
+        private int copiedCount;
+        private long processingTimeMillis;
+
+        private Slot(int maxOperations) {
+            this.payload = new int[maxOperations * 4];
+        }
+    }
+}
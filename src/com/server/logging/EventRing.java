@@ -0,0 +1,107 @@
+package com.server.logging;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Ring buffer of pre-allocated event slots shared by the asynchronous logs. The
+ * publishing thread claims a slot, fills it and publishes it, while a background
+ * drainer thread passes the published slots in their order to the renderer of the
+ * log.
+ *
+ * Notes:
+ * 1) The publishers must be serialized by the caller (claiming a slot and publishing
+ *    it happen under the same lock).
+ * 2) If the ring buffer is full (the drainer can't keep up) no slot is claimed and
+ *    the event is counted as dropped instead of blocking the publisher.
+ * 3) Closing the ring renders the events already published and stops the drainer.
+ */
+final class EventRing<S> implements AutoCloseable {
+
+    private static final long DRAIN_POLL_NANOS = 1_000_000;
+
+    private final S[] slots;
+    private final Consumer<S> renderer;
+    private final AtomicLong publishedSequence; // Next sequence to be written
+    private final AtomicLong consumedSequence; // Next sequence to be drained
+    private final AtomicLong droppedEvents;
+    private final Thread drainer;
+    private volatile boolean closed;
+
+    @SuppressWarnings("unchecked")
+    EventRing(int ringSize, Supplier<S> slotFactory, Consumer<S> renderer, String drainerName) {
+        this.slots = (S[]) new Object[ringSize];
+        for (int i = 0 ; i < ringSize ; i++)
+            slots[i] = slotFactory.get();
+        this.renderer = renderer;
+        this.publishedSequence = new AtomicLong();
+        this.consumedSequence = new AtomicLong();
+        this.droppedEvents = new AtomicLong();
+        this.drainer = new Thread(this::drain, drainerName);
+        this.drainer.setDaemon(true);
+        this.drainer.start();
+    }
+
+    /**
+     * Returns the next free slot or null if the ring buffer is full (or closed).
+     */
+    S claim() {
+        long sequence = publishedSequence.get();
+        if (closed || sequence - consumedSequence.get() >= slots.length) {
+            droppedEvents.incrementAndGet();
+            return null;
+        }
+        return slots[(int) (sequence % slots.length)];
+    }
+
+    /**
+     * Publishes the last claimed slot to the drainer.
+     */
+    void publish() {
+        publishedSequence.lazySet(publishedSequence.get() + 1);
+    }
+
+    /**
+     * Returns the number of events dropped because the ring buffer was full.
+     */
+    long getDroppedEvents() {
+        return droppedEvents.get();
+    }
+
+    /**
+     * Stops the drainer once it rendered the published events and waits for it.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(drainer);
+        try {
+            drainer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    //
+    // Private Methods
+    //
+
+    /**
+     * Passes the published slots to the renderer until the ring is closed.
+     */
+    private void drain() {
+        while (true) {
+            boolean closing = closed; // Read first so the events published before closing are seen
+            long sequence = consumedSequence.get();
+            if (sequence == publishedSequence.get()) {
+                if (closing) return;
+                LockSupport.parkNanos(DRAIN_POLL_NANOS);
+                continue;
+            }
+            renderer.accept(slots[(int) (sequence % slots.length)]);
+            consumedSequence.lazySet(sequence + 1);
+        }
+    }
+}
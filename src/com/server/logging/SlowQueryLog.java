@@ -0,0 +1,119 @@
+package com.server.logging;
+
+import com.Operation.OperationType;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Asynchronous logger for the queries which take longer than a threshold, along with
+ * the batch they belong to, the algorithm and the number of nodes their BFS visited.
+ *
+ * Same as the BatchEventLog, the query thread only copies the query into a
+ * pre-allocated slot of an EventRing and its drainer thread renders it, so the
+ * query thread never formats strings nor does I/O.
+ *
+ * Notes:
+ * 1) Only one of every samplingInterval slow queries is logged, the others are only
+ *    counted (the count is reported with the logged ones).
+ * 2) If the ring buffer is full the slow query is dropped instead of blocking the
+ *    query thread.
+ * 3) The queries faster than the threshold only cost a comparison.
+ * 4) The log must be closed once the server shuts down to stop the drainer thread.
+ */
+public class SlowQueryLog implements AutoCloseable {
+
+    private static final OperationType[] OPERATION_TYPES = OperationType.values();
+
+    private final Logger logger;
+    private final long thresholdNanos;
+    private final int samplingInterval;
+    private final AtomicLong slowQueries;
+    private final StringBuilder sb; // Only used by the drainer thread
+    private final EventRing<Slot> ring;
+
+    public SlowQueryLog(Logger logger, long thresholdMicros, int samplingInterval, int ringSize) {
+        this.logger = logger;
+        this.thresholdNanos = TimeUnit.MICROSECONDS.toNanos(thresholdMicros);
+        this.samplingInterval = Math.max(1, samplingInterval);
+        this.slowQueries = new AtomicLong();
+        this.sb = new StringBuilder();
+        this.ring = new EventRing<>(ringSize, Slot::new, this::log, "slow-query-log-drainer");
+    }
+
+    /**
+     * Publishes the query if it took at least the threshold and it's sampled.
+     */
+    public void record(long batchId, OperationType operationType, int a, int b, String algorithm,
+                       long visitedNodes, int maxFrontierSize, long elapsedNanos) {
+        if (elapsedNanos < thresholdNanos) return;
+        long slowQuery = slowQueries.incrementAndGet();
+        if ((slowQuery - 1) % samplingInterval != 0) return;
+        synchronized (this) {
+            Slot slot = ring.claim();
+            if (slot == null) return; // Dropped
+            slot.batchId = batchId;
+            slot.operationType = operationType.ordinal();
+            slot.a = a;
+            slot.b = b;
+            slot.algorithm = algorithm;
+            slot.visitedNodes = visitedNodes;
+            slot.maxFrontierSize = maxFrontierSize;
+            slot.elapsedNanos = elapsedNanos;
+            slot.slowQueries = slowQuery;
+            ring.publish();
+        }
+    }
+
+    /**
+     * Returns the number of queries which took at least the threshold.
+     */
+    public long getSlowQueries() {
+        return slowQueries.get();
+    }
+
+    /**
+     * Logs the slow queries already published and stops the drainer thread, the
+     * later ones are dropped.
+     */
+    @Override
+    public void close() {
+        ring.close();
+    }
+
+    //
+    // Private Methods
+    //
+
+    /**
+     * Renders the slow query as text on the drainer thread.
+     */
+    private void log(Slot slot) {
+        if (! logger.isWarnEnabled()) return;
+        sb.setLength(0);
+        sb.append("Slow query in batch #").append(slot.batchId).append(" -> {")
+          .append(slot.a).append(", ").append(slot.b).append(", ")
+          .append(OPERATION_TYPES[slot.operationType]).append("} took ")
+          .append(String.format("%.3f", slot.elapsedNanos / 1e6)).append(" ms using ")
+          .append(slot.algorithm).append(", visited ").append(slot.visitedNodes)
+          .append(" nodes (max frontier ").append(slot.maxFrontierSize).append(") (")
+          .append(slot.slowQueries).append(" slow queries so far)");
+        logger.warn(sb.toString());
+    }
+
+    /**
+     * Pre-allocated ring buffer entry.
+     */
+    private static final class Slot {
+        private long batchId;
+        private int operationType;
+        private int a;
+        private int b;
+        private String algorithm;
+        private long visitedNodes;
+        private int maxFrontierSize;
+        private long elapsedNanos;
+        private long slowQueries;
+    }
+}
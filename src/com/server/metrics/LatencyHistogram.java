@@ -0,0 +1,173 @@
+package com.server.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free histogram of non-negative long values (latencies in nanoseconds,
+ * visited nodes count, ...) using the same log-linear bucketing as HdrHistogram.
+ *
+ * Each power of two range is divided into SUB_BUCKET_COUNT linear sub-buckets, so
+ * any recorded value is reported with a relative error less than 1/SUB_BUCKET_COUNT
+ * (~3%) while the whole long range fits in a fixed array of buckets.
+ *
+ * Recording is a single increment on the bucket counter plus two striped LongAdders
+ * which is cheap enough to be called on the hot path. Percentiles are only computed
+ * when the histogram is read.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray buckets;
+    private final LongAdder totalCount;
+    private final LongAdder totalSum;
+    private final LongAccumulator maxValue;
+
+    public LatencyHistogram() {
+        this.buckets = new AtomicLongArray(BUCKET_COUNT);
+        this.totalCount = new LongAdder();
+        this.totalSum = new LongAdder();
+        this.maxValue = new LongAccumulator(Math::max, 0);
+    }
+
+    /**
+     * Records a single value (negative values are recorded as zero).
+     */
+    public void record(long value) {
+        if (value < 0) value = 0;
+        buckets.incrementAndGet(bucketIndex(value));
+        totalCount.increment();
+        totalSum.add(value);
+        maxValue.accumulate(value);
+    }
+
+    /**
+     * Records a value observed after waiting for expectedInterval and back-fills the
+     * values which would have been observed if the recorder hadn't been blocked
+     * (coordinated omission correction as done by HdrHistogram).
+     */
+    public void recordWithExpectedInterval(long value, long expectedInterval) {
+        record(value);
+        if (expectedInterval <= 0) return;
+        for (long missingValue = value - expectedInterval ;
+             missingValue >= expectedInterval ; missingValue -= expectedInterval)
+            record(missingValue);
+    }
+
+    public long getCount() {
+        return totalCount.sum();
+    }
+
+    public long getMax() {
+        return maxValue.get();
+    }
+
+    public double getMean() {
+        long count = totalCount.sum();
+        return count == 0 ? 0 : (double) totalSum.sum() / count;
+    }
+
+    /**
+     * Returns the value at the given percentile (range:[0,100]). The returned value
+     * is the highest value equivalent to the bucket containing the percentile.
+     */
+    public long getValueAtPercentile(double percentile) {
+        long count = totalCount.sum();
+        if (count == 0) return 0;
+        long countAtPercentile = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long runningCount = 0;
+        for (int i = 0 ; i < BUCKET_COUNT ; i++) {
+            runningCount += buckets.get(i);
+            if (runningCount >= countAtPercentile)
+                return Math.min(highestEquivalentValue(i), getMax());
+        }
+        return getMax();
+    }
+
+    /**
+     * Returns a point in time snapshot of the histogram scaled by the given divisor
+     * (e.g. 1000 to report nanoseconds as microseconds).
+     */
+    public HistogramSnapshot snapshot(long divisor) {
+        return new HistogramSnapshot(getCount(), getMean() / divisor,
+                getValueAtPercentile(50) / divisor, getValueAtPercentile(90) / divisor,
+                getValueAtPercentile(99) / divisor, getValueAtPercentile(99.9) / divisor,
+                getMax() / divisor);
+    }
+
+    /**
+     * Adds all the values recorded by the other histogram to this one.
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0 ; i < BUCKET_COUNT ; i++) {
+            long count = other.buckets.get(i);
+            if (count != 0) buckets.addAndGet(i, count);
+        }
+        totalCount.add(other.totalCount.sum());
+        totalSum.add(other.totalSum.sum());
+        maxValue.accumulate(other.getMax());
+    }
+
+    /**
+     * Encodes the histogram as text so it can be sent to another process and decoded
+     * using decode. Only the non-empty buckets are encoded as "index:count" pairs.
+     */
+    public String encode() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(totalSum.sum()).append(';').append(getMax());
+        for (int i = 0 ; i < BUCKET_COUNT ; i++) {
+            long count = buckets.get(i);
+            if (count != 0) sb.append(';').append(i).append(':').append(count);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Decodes a histogram encoded using encode.
+     */
+    public static LatencyHistogram decode(String encodedHistogram) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        String[] tokens = encodedHistogram.trim().split(";");
+        histogram.totalSum.add(Long.parseLong(tokens[0]));
+        histogram.maxValue.accumulate(Long.parseLong(tokens[1]));
+        for (int i = 2 ; i < tokens.length ; i++) {
+            String[] bucket = tokens[i].split(":");
+            long count = Long.parseLong(bucket[1]);
+            histogram.buckets.set(Integer.parseInt(bucket[0]), count);
+            histogram.totalCount.add(count);
+        }
+        return histogram;
+    }
+
+    /**
+     * Clears all the recorded values.
+     */
+    public void reset() {
+        for (int i = 0 ; i < BUCKET_COUNT ; i++)
+            buckets.set(i, 0);
+        totalCount.reset();
+        totalSum.reset();
+        maxValue.reset();
+    }
+
+    //
+    // Private Methods
+    //
+
+    private static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKET_COUNT + (int) (value >>> shift) - SUB_BUCKET_COUNT;
+    }
+
+    private static long highestEquivalentValue(int bucketIndex) {
+        if (bucketIndex < SUB_BUCKET_COUNT) return bucketIndex;
+        int shift = bucketIndex / SUB_BUCKET_COUNT - 1;
+        long lowestValue = (long) (SUB_BUCKET_COUNT + bucketIndex % SUB_BUCKET_COUNT) << shift;
+        return lowestValue + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,190 @@
+package com.server.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Holds the hot path metrics of the server. Writers (the server and the shortest
+ * path algorithm) only increment striped counters and histogram buckets, nothing is
+ * aggregated or formatted until a JMX client reads the attributes.
+ */
+public class ServerMetrics implements ServerMetricsMXBean {
+
+    private static final long NANOS_PER_MICRO = 1000;
+
+    public final LongAdder batches = new LongAdder();
+    public final LongAdder operations = new LongAdder();
+    public final LongAdder queries = new LongAdder();
+
+    // Latencies (in nanoseconds)
+    public final LatencyHistogram batchLatency = new LatencyHistogram();
+    public final LatencyHistogram decodeLatency = new LatencyHistogram();
+    public final LatencyHistogram splitBatchLatency = new LatencyHistogram();
+    public final LatencyHistogram queryTransactionLatency = new LatencyHistogram();
+    public final LatencyHistogram updateTransactionLatency = new LatencyHistogram();
+    public final LatencyHistogram stateRebuildLatency = new LatencyHistogram();
+    public final LatencyHistogram admissionWaitLatency = new LatencyHistogram();
+
+    public final LatencyHistogram bfsVisitedNodes = new LatencyHistogram();
+
+    // Cache (used by the MemoizedShortestPath)
+    public final LongAdder cacheHits = new LongAdder();
+    public final LongAdder cacheMisses = new LongAdder();
+
+    // Result cache (used by the ServerImpl for any algorithm)
+    public final LongAdder resultCacheHits = new LongAdder();
+    public final LongAdder resultCacheMisses = new LongAdder();
+
+    // Approximate queries (used by the LandmarkShortestPath) answered from the landmarks
+    // and those which fell back to an exact search because the error was too large
+    public final LongAdder approximateAnswers = new LongAdder();
+    public final LongAdder approximateFallbacks = new LongAdder();
+
+    // Admission (batches rejected because the admission queue was full or they timed out)
+    public final LongAdder admissionRejections = new LongAdder();
+
+    private volatile IntSupplier executorQueueDepth = () -> 0;
+    private volatile IntSupplier admissionQueueDepth = () -> 0;
+
+    /**
+     * Sets the gauge which reads the number of tasks waiting in the server executor.
+     */
+    public void setExecutorQueueDepthGauge(IntSupplier executorQueueDepth) {
+        this.executorQueueDepth = executorQueueDepth;
+    }
+
+    /**
+     * Sets the gauge which reads the number of batches waiting to be admitted.
+     */
+    public void setAdmissionQueueDepthGauge(IntSupplier admissionQueueDepth) {
+        this.admissionQueueDepth = admissionQueueDepth;
+    }
+
+    @Override
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    @Override
+    public long getOperationCount() {
+        return operations.sum();
+    }
+
+    @Override
+    public long getQueryCount() {
+        return queries.sum();
+    }
+
+    @Override
+    public HistogramSnapshot getBatchLatency() {
+        return batchLatency.snapshot(NANOS_PER_MICRO);
+    }
+
+    @Override
+    public HistogramSnapshot getDecodeLatency() {
+        return decodeLatency.snapshot(NANOS_PER_MICRO);
+    }
+
+    @Override
+    public HistogramSnapshot getSplitBatchLatency() {
+        return splitBatchLatency.snapshot(NANOS_PER_MICRO);
+    }
+
+    @Override
+    public HistogramSnapshot getQueryTransactionLatency() {
+        return queryTransactionLatency.snapshot(NANOS_PER_MICRO);
+    }
+
+    @Override
+    public HistogramSnapshot getUpdateTransactionLatency() {
+        return updateTransactionLatency.snapshot(NANOS_PER_MICRO);
+    }
+
+    @Override
+    public HistogramSnapshot getStateRebuildLatency() {
+        return stateRebuildLatency.snapshot(NANOS_PER_MICRO);
+    }
+
+    @Override
+    public HistogramSnapshot getAdmissionWaitLatency() {
+        return admissionWaitLatency.snapshot(NANOS_PER_MICRO);
+    }
+
+    @Override
+    public HistogramSnapshot getBfsVisitedNodes() {
+        return bfsVisitedNodes.snapshot(1);
+    }
+
+    @Override
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    @Override
+    public double getCacheHitRate() {
+        long hits = cacheHits.sum(), total = hits + cacheMisses.sum();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public long getResultCacheHits() {
+        return resultCacheHits.sum();
+    }
+
+    @Override
+    public long getResultCacheMisses() {
+        return resultCacheMisses.sum();
+    }
+
+    @Override
+    public long getApproximateAnswers() {
+        return approximateAnswers.sum();
+    }
+
+    @Override
+    public long getApproximateFallbacks() {
+        return approximateFallbacks.sum();
+    }
+
+    @Override
+    public int getExecutorQueueDepth() {
+        return executorQueueDepth.getAsInt();
+    }
+
+    @Override
+    public long getAdmissionRejections() {
+        return admissionRejections.sum();
+    }
+
+    @Override
+    public int getAdmissionQueueDepth() {
+        return admissionQueueDepth.getAsInt();
+    }
+
+    @Override
+    public void reset() {
+        batches.reset();
+        operations.reset();
+        queries.reset();
+        batchLatency.reset();
+        decodeLatency.reset();
+        splitBatchLatency.reset();
+        queryTransactionLatency.reset();
+        updateTransactionLatency.reset();
+        stateRebuildLatency.reset();
+        admissionWaitLatency.reset();
+        bfsVisitedNodes.reset();
+        cacheHits.reset();
+        cacheMisses.reset();
+        resultCacheHits.reset();
+        resultCacheMisses.reset();
+        approximateAnswers.reset();
+        approximateFallbacks.reset();
+        admissionRejections.reset();
+    }
+}
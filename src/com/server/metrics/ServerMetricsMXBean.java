@@ -0,0 +1,53 @@
+package com.server.metrics;
+
+/**
+ * Management interface of the server metrics exposed through JMX.
+ * All latencies are reported in microseconds.
+ */
+public interface ServerMetricsMXBean {
+
+    long getBatchCount();
+    long getOperationCount();
+    long getQueryCount();
+
+    HistogramSnapshot getBatchLatency();
+    HistogramSnapshot getDecodeLatency();
+    HistogramSnapshot getSplitBatchLatency();
+    HistogramSnapshot getQueryTransactionLatency();
+    HistogramSnapshot getUpdateTransactionLatency();
+    HistogramSnapshot getStateRebuildLatency();
+
+    /**
+     * Time each batch waited in the admission queue (not included in the batch latency).
+     */
+    HistogramSnapshot getAdmissionWaitLatency();
+
+    /**
+     * Number of nodes visited by each BFS performed to answer a query.
+     */
+    HistogramSnapshot getBfsVisitedNodes();
+
+    long getCacheHits();
+    long getCacheMisses();
+    double getCacheHitRate();
+
+    long getResultCacheHits();
+    long getResultCacheMisses();
+
+    /**
+     * Number of approximate queries answered from the landmarks and number of those
+     * answered by an exact search because the landmarks didn't bound the error.
+     */
+    long getApproximateAnswers();
+    long getApproximateFallbacks();
+
+    int getExecutorQueueDepth();
+
+    long getAdmissionRejections();
+    int getAdmissionQueueDepth();
+
+    /**
+     * Clears all the recorded metrics.
+     */
+    void reset();
+}
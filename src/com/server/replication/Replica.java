@@ -0,0 +1,17 @@
+package com.server.replication;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+/**
+ * Represents a replica server fed by the update stream of the primary.
+ */
+public interface Replica extends Remote {
+
+    /**
+     * Applies the update transaction having the given version. The updates are
+     * encoded as (type, a, b) triples where type is the ordinal of the OperationType.
+     * Versions are applied in order and each version is applied only once.
+     */
+    void applyUpdates(long version, int[] updates) throws RemoteException;
+}
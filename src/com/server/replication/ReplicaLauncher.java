@@ -0,0 +1,133 @@
+package com.server.replication;
+
+import com.VersionedServer;
+import com.server.algorithm.LandmarkShortestPath;
+import com.server.algorithm.LazyStatefulShortestPath;
+import com.server.algorithm.MemoizedShortestPath;
+import com.server.algorithm.ShortestPathAlgorithm;
+import com.server.algorithm.StatefulShortestPath;
+import com.server.algorithm.StatelessShortestPath;
+import com.server.graph.ArrayGraphStore;
+import com.server.graph.CompressedGraphStore;
+import com.server.graph.GraphStore;
+import com.server.graph.NodeOrdering;
+import com.server.graph.OffHeapGraphStore;
+
+import java.io.File;
+import java.io.IOException;
+import java.rmi.NotBoundException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+
+/**
+ * Runs a single replica in its own process and binds it in the RMI registry with
+ * the key "Replica{index}".
+ */
+public class ReplicaLauncher {
+
+    public static final String REPLICA_REGISTRY_KEY_PREFIX = "Replica";
+
+    /**
+     * Arguments are as follows:
+     * 0 -> Replica index
+     * 1 -> Registry IP address
+     * 2 -> Registry port number
+     * 3 -> Shortest path algorithm (stateless, stateful, memoized, lazy or landmark)
+     * 4 -> Initial graph file path
+     * 5 -> Minimum number of queries to execute in parallel
+     * 6 -> Number of threads
+     * 7 -> Maximum staleness (ms)
+     * 8 -> Graph store (array, compressed, offheap or mapped)
+     * 9 -> Node ordering (NONE, BFS or RCM), the same as the primary so the
+     *      landmarks (which depend on the node indices) are the same
+     * 10 -> Number of landmarks (used by the landmark algorithm)
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 11) {
+            System.err.println("Invalid number of arguments");
+            System.exit(-1);
+        }
+        GraphStore graphStore;
+        switch (args[8]) {
+            case "array" -> graphStore = new ArrayGraphStore();
+            case "compressed" -> graphStore = new CompressedGraphStore();
+            case "offheap" -> graphStore = new OffHeapGraphStore();
+            case "mapped" -> graphStore = new OffHeapGraphStore(new File(System.getProperty("java.io.tmpdir")));
+            default -> {
+                graphStore = null;
+                System.err.println("Unknown replica graph store " + args[8]);
+                System.exit(-1);
+            }
+        }
+        NodeOrdering nodeOrdering = NodeOrdering.valueOf(args[9]);
+        ShortestPathAlgorithm shortestPathAlgorithm;
+        switch (args[3]) {
+            case "stateless" -> shortestPathAlgorithm
+                    = new StatelessShortestPath(args[4], graphStore, nodeOrdering);
+            case "stateful" -> shortestPathAlgorithm
+                    = new StatefulShortestPath(args[4], graphStore, nodeOrdering, null);
+            case "memoized" -> shortestPathAlgorithm
+                    = new MemoizedShortestPath(args[4], graphStore, nodeOrdering, null);
+            case "lazy" -> shortestPathAlgorithm
+                    = new LazyStatefulShortestPath(args[4], graphStore, nodeOrdering, null);
+            case "landmark" -> shortestPathAlgorithm
+                    = new LandmarkShortestPath(args[4], graphStore, nodeOrdering, Integer.parseInt(args[10]));
+            default -> {
+                shortestPathAlgorithm = null;
+                System.err.println("Unknown replica algorithm " + args[3]);
+                System.exit(-1);
+            }
+        }
+        int replicaIndex = Integer.parseInt(args[0]);
+        ReplicaServer replica = new ReplicaServer(shortestPathAlgorithm, Integer.parseInt(args[5]),
+                Integer.parseInt(args[6]), Long.parseLong(args[7]));
+        Runtime.getRuntime().addShutdownHook(new Thread(replica::shutdown, "replica-shutdown"));
+        Registry registry = LocateRegistry.getRegistry(args[1], Integer.parseInt(args[2]));
+        registry.rebind(REPLICA_REGISTRY_KEY_PREFIX + replicaIndex, replica);
+        System.out.println("Replica " + replicaIndex + " started successfully");
+    }
+
+    /**
+     * Looks up the replicas in the registry, waiting for each one of them to be bound
+     * up to the given timeout. The returned stubs implement the Replica interface too.
+     */
+    public static VersionedServer[] lookupReplicas(Registry registry, int replicaCount, long timeoutMillis)
+            throws Exception {
+        VersionedServer[] replicas = new VersionedServer[replicaCount];
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        for (int i = 0 ; i < replicaCount ; i++) {
+            while (true) {
+                try {
+                    replicas[i] = (VersionedServer) registry.lookup(REPLICA_REGISTRY_KEY_PREFIX + i);
+                    break;
+                } catch (NotBoundException e) {
+                    if (System.currentTimeMillis() > deadline) throw e;
+                    Thread.sleep(100);
+                }
+            }
+        }
+        return replicas;
+    }
+
+    /**
+     * Starts a new process running the given replica using the class path of the
+     * current process.
+     */
+    public static Process startReplicaProcess(int replicaIndex, String registryIpAddress,
+                                              int registryPortNumber, String shortestPathAlgorithm,
+                                              String graphStore, String initialGraphFilePath,
+                                              int minimumNumberOfQueriesToExecuteInParallel,
+                                              int numOfThreads, long maxStalenessMillis,
+                                              NodeOrdering nodeOrdering, int landmarkCount)
+            throws IOException {
+        String javaPath = System.getProperty("java.home") + File.separator
+                + "bin" + File.separator + "java";
+        return new ProcessBuilder(javaPath, "-cp", System.getProperty("java.class.path"),
+                ReplicaLauncher.class.getName(), replicaIndex + "", registryIpAddress,
+                registryPortNumber + "", shortestPathAlgorithm, initialGraphFilePath,
+                minimumNumberOfQueriesToExecuteInParallel + "", numOfThreads + "",
+                maxStalenessMillis + "", graphStore, nodeOrdering.name(), landmarkCount + "")
+                .inheritIO()
+                .start();
+    }
+}
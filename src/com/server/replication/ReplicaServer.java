@@ -0,0 +1,93 @@
+package com.server.replication;
+
+import com.Operation;
+import com.Operation.OperationType;
+import com.server.LocalOperation;
+import com.server.ServerImpl;
+import com.server.algorithm.ShortestPathAlgorithm;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Server which only serves query-only batches while applying the update stream
+ * shipped by the primary. Applying an update transaction repairs the state of its
+ * own ShortestPathAlgorithm exactly as the primary does.
+ *
+ * Notes:
+ * 1) A batch asking for a version which isn't applied yet waits for it up to
+ *    maxStalenessMillis, after that it is rejected so the client falls back to the
+ *    primary.
+ * 2) Queries and applied updates are serialized on the server monitor, the same as
+ *    the batches on the primary.
+ * 3) An update transaction skipping a version is rejected without being applied, so
+ *    the replica is detached from the stream instead of serving a diverged graph.
+ */
+public class ReplicaServer extends ServerImpl implements Replica {
+
+    private static final long serialVersionUID = 1L;
+    private static final OperationType[] OPERATION_TYPES = OperationType.values();
+
+    private final Logger logger;
+    private final long maxStalenessMillis;
+
+    public ReplicaServer(ShortestPathAlgorithm shortestPathAlgorithm,
+                         int minimumNumberOfQueriesToExecuteInParallel,
+                         int numOfThreads, long maxStalenessMillis) throws RemoteException {
+        super(shortestPathAlgorithm, minimumNumberOfQueriesToExecuteInParallel, numOfThreads);
+        this.logger = LogManager.getLogger(ReplicaServer.class);
+        this.maxStalenessMillis = maxStalenessMillis;
+    }
+
+    @Override
+    public synchronized void applyUpdates(long version, int[] updates) throws RemoteException {
+        if (version <= this.version) return; // Already applied
+        if (version != this.version + 1) {
+            // Applying it would serve a state the primary never had, so the replica
+            // fails (and gets detached from the stream) without applying anything
+            String message = "Update stream gap: expected version " + (this.version + 1)
+                    + " but received " + version;
+            logger.error(message);
+            throw new RemoteException(message);
+        }
+        List<Operation> updateTransaction = new ArrayList<>(updates.length / 3);
+        for (int i = 0 ; i < updates.length ; i += 3)
+            updateTransaction.add(new LocalOperation
+                    (updates[i + 1], updates[i + 2], OPERATION_TYPES[updates[i]]));
+        performUpdateTransaction(updateTransaction);
+        this.version = version;
+        notifyAll();
+    }
+
+    //
+    // Protected Methods
+    //
+
+    /**
+     * Waits (releasing the monitor) until the given version is applied.
+     */
+    @Override
+    protected void awaitVersion(long minVersion) throws RemoteException {
+        long deadline = System.currentTimeMillis() + maxStalenessMillis;
+        while (version < minVersion) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0)
+                throw new RemoteException("Replica is at version " + version
+                        + " which is behind the requested version " + minVersion);
+            try {
+                wait(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RemoteException("Interrupted while waiting for version " + minVersion);
+            }
+        }
+    }
+
+    @Override
+    protected boolean acceptsUpdates() {
+        return false;
+    }
+}
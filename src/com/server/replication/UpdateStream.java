@@ -0,0 +1,88 @@
+package com.server.replication;
+
+import com.Operation;
+import com.Server;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.rmi.RemoteException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Ships the update transactions applied by the primary to the replicas.
+ *
+ * Each replica has its own sender thread so the updates are delivered to it in
+ * order without blocking the primary nor being slowed down by the other replicas.
+ * A replica which fails to apply an update is detached from the stream.
+ */
+public class UpdateStream {
+
+    private final Logger logger;
+    private final List<ReplicaSender> senders;
+
+    public UpdateStream() {
+        this.logger = LogManager.getLogger(Server.class);
+        this.senders = new CopyOnWriteArrayList<>();
+    }
+
+    /**
+     * Attaches a replica to the stream. The replica must have started from the same
+     * initial graph and must be attached before the first update is published.
+     */
+    public void addReplica(Replica replica) {
+        senders.add(new ReplicaSender(replica));
+    }
+
+    public boolean hasReplicas() {
+        return ! senders.isEmpty();
+    }
+
+    /**
+     * Publishes the update transaction having the given version to all the replicas.
+     */
+    public void publish(long version, List<Operation> updateTransaction) throws RemoteException {
+        if (senders.isEmpty()) return;
+        int[] updates = new int[updateTransaction.size() * 3];
+        int i = 0;
+        for (Operation operation : updateTransaction) {
+            updates[i++] = operation.getOperationType().ordinal();
+            updates[i++] = operation.getA();
+            updates[i++] = operation.getB();
+        }
+        for (ReplicaSender sender : senders)
+            sender.send(version, updates);
+    }
+
+    /**
+     * Sends the updates to a single replica in order.
+     */
+    private final class ReplicaSender {
+        private final Replica replica;
+        private final ExecutorService executor;
+
+        private ReplicaSender(Replica replica) {
+            this.replica = replica;
+            this.executor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "update-stream-sender");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        private void send(long version, int[] updates) {
+            executor.execute(() -> {
+                try {
+                    replica.applyUpdates(version, updates);
+                } catch (RemoteException e) {
+                    logger.error("Replica failed to apply version " + version
+                            + ", detaching it: " + e.getMessage());
+                    senders.remove(this);
+                    executor.shutdownNow();
+                }
+            });
+        }
+    }
+}
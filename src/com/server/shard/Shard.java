@@ -0,0 +1,43 @@
+package com.server.shard;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+/**
+ * Represents a server process owning a partition of the graph. A node is owned by
+ * a single shard (see ShardedShortestPath.ownerOf) which stores the node along with
+ * its outgoing edges.
+ */
+public interface Shard extends Remote {
+
+    /**
+     * Adds the edge (a, b) where a is owned by this shard. B is also added as a node
+     * if it is owned by this shard. Returns true if the edge didn't exist before.
+     */
+    boolean addEdge(int a, int b) throws RemoteException;
+
+    /**
+     * Adds the node (owned by this shard) if it doesn't exist.
+     */
+    void addNode(int node) throws RemoteException;
+
+    /**
+     * Deletes the edge (a, b) where a is owned by this shard. Returns true if the
+     * edge existed before.
+     */
+    boolean deleteEdge(int a, int b) throws RemoteException;
+
+    boolean containsNode(int node) throws RemoteException;
+
+    /**
+     * Performs a single level of the BFS identified by queryId: marks the given
+     * frontier nodes (owned by this shard) as visited and returns the neighbours of
+     * the ones which weren't visited before.
+     */
+    int[] expandFrontier(long queryId, int[] frontier) throws RemoteException;
+
+    /**
+     * Releases the visited nodes kept for the given BFS.
+     */
+    void endQuery(long queryId) throws RemoteException;
+}
@@ -0,0 +1,74 @@
+package com.server.shard;
+
+import java.io.File;
+import java.io.IOException;
+import java.rmi.NotBoundException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+
+/**
+ * Runs a single shard in its own process and binds it in the RMI registry with the
+ * key "Shard{index}".
+ */
+public class ShardLauncher {
+
+    public static final String SHARD_REGISTRY_KEY_PREFIX = "Shard";
+
+    /**
+     * Arguments are as follows:
+     * 0 -> Shard index
+     * 1 -> Number of shards
+     * 2 -> Registry IP address
+     * 3 -> Registry port number
+     * 4 -> Initial graph file path
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 5) {
+            System.err.println("Invalid number of arguments");
+            System.exit(-1);
+        }
+        int shardIndex = Integer.parseInt(args[0]);
+        ShardServer shard = new ShardServer(shardIndex, Integer.parseInt(args[1]), args[4]);
+        Registry registry = LocateRegistry.getRegistry(args[2], Integer.parseInt(args[3]));
+        registry.rebind(SHARD_REGISTRY_KEY_PREFIX + shardIndex, shard);
+        System.out.println("Shard " + shardIndex + " started successfully");
+    }
+
+    /**
+     * Looks up the shards in the registry, waiting for each one of them to be bound
+     * up to the given timeout.
+     */
+    public static Shard[] lookupShards(Registry registry, int shardCount, long timeoutMillis)
+            throws Exception {
+        Shard[] shards = new Shard[shardCount];
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        for (int i = 0 ; i < shardCount ; i++) {
+            while (true) {
+                try {
+                    shards[i] = (Shard) registry.lookup(SHARD_REGISTRY_KEY_PREFIX + i);
+                    break;
+                } catch (NotBoundException e) {
+                    if (System.currentTimeMillis() > deadline) throw e;
+                    Thread.sleep(100);
+                }
+            }
+        }
+        return shards;
+    }
+
+    /**
+     * Starts a new process running the given shard using the class path of the
+     * current process.
+     */
+    public static Process startShardProcess(int shardIndex, int shardCount, String registryIpAddress,
+                                            int registryPortNumber, String initialGraphFilePath)
+            throws IOException {
+        String javaPath = System.getProperty("java.home") + File.separator
+                + "bin" + File.separator + "java";
+        return new ProcessBuilder(javaPath, "-cp", System.getProperty("java.class.path"),
+                ShardLauncher.class.getName(), shardIndex + "", shardCount + "",
+                registryIpAddress, registryPortNumber + "", initialGraphFilePath)
+                .inheritIO()
+                .start();
+    }
+}
@@ -0,0 +1,112 @@
+package com.server.shard;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Implementation of the Shard interface. Keeps the nodes it owns along with their
+ * outgoing edges and the visited nodes of the running BFS queries.
+ */
+public class ShardServer extends UnicastRemoteObject implements Shard {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int shardIndex;
+    private final int shardCount;
+    private final HashMap<Integer, HashSet<Integer>> partition;
+    private final ConcurrentHashMap<Long, Set<Integer>> visitedNodes;
+
+    public ShardServer(int shardIndex, int shardCount, String initialGraphFilePath)
+            throws RemoteException, FileNotFoundException {
+        super();
+        this.shardIndex = shardIndex;
+        this.shardCount = shardCount;
+        this.partition = new HashMap<>();
+        this.visitedNodes = new ConcurrentHashMap<>();
+        initializePartition(initialGraphFilePath);
+    }
+
+    @Override
+    public synchronized boolean addEdge(int a, int b) {
+        partition.putIfAbsent(a, new HashSet<>());
+        if (isOwned(b)) partition.putIfAbsent(b, new HashSet<>());
+        return partition.get(a).add(b);
+    }
+
+    @Override
+    public synchronized void addNode(int node) {
+        partition.putIfAbsent(node, new HashSet<>());
+    }
+
+    @Override
+    public synchronized boolean deleteEdge(int a, int b) {
+        return partition.containsKey(a) && partition.get(a).remove(b);
+    }
+
+    @Override
+    public boolean containsNode(int node) {
+        return partition.containsKey(node);
+    }
+
+    @Override
+    public int[] expandFrontier(long queryId, int[] frontier) {
+        Set<Integer> visited = visitedNodes.computeIfAbsent(queryId, id -> ConcurrentHashMap.newKeySet());
+        int size = 0;
+        int[] neighbours = new int[16];
+        for (int node : frontier) {
+            if (! visited.add(node)) continue;
+            HashSet<Integer> nodeNeighbours = partition.get(node);
+            if (nodeNeighbours == null) continue;
+            if (size + nodeNeighbours.size() > neighbours.length)
+                neighbours = Arrays.copyOf(neighbours,
+                        Math.max(neighbours.length * 2, size + nodeNeighbours.size()));
+            for (int neighbour : nodeNeighbours)
+                neighbours[size++] = neighbour;
+        }
+        return Arrays.copyOf(neighbours, size);
+    }
+
+    @Override
+    public void endQuery(long queryId) {
+        visitedNodes.remove(queryId);
+    }
+
+    //
+    // Private Methods
+    //
+
+    private boolean isOwned(int node) {
+        return ShardedShortestPath.ownerOf(node, shardCount) == shardIndex;
+    }
+
+    /**
+     * Reads the edges whose source is owned by this shard from the initial graph file.
+     * The owned destinations are registered as nodes too, same as the graph store of
+     * the single process algorithms (and the addEdge method).
+     */
+    private void initializePartition(String initialGraphFilePath) throws FileNotFoundException {
+        Scanner scanner = new Scanner(new File(initialGraphFilePath));
+        while (scanner.hasNextLine()) {
+            String line = scanner.nextLine();
+            if (line.equals("S")) break;
+            else {
+                String[] splitLine = line.split(" ");
+                int leftOperand = Integer.parseInt(splitLine[0]);
+                int rightOperand = Integer.parseInt(splitLine[1]);
+                if (isOwned(rightOperand)) partition.putIfAbsent(rightOperand, new HashSet<>());
+                if (! isOwned(leftOperand)) continue;
+                partition.putIfAbsent(leftOperand, new HashSet<>());
+                partition.get(leftOperand).add(rightOperand);
+            }
+        }
+        scanner.close();
+    }
+}
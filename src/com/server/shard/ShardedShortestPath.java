@@ -0,0 +1,190 @@
+package com.server.shard;
+
+import com.server.algorithm.ShortestPathAlgorithm;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coordinator of a sharded deployment where the nodes are hash partitioned across
+ * many shard processes and the coordinator doesn't hold any part of the graph.
+ *
+ * Steps:
+ * 1) Updates are routed to the shard owning the source node of the edge (the shard
+ *    owning the destination node is asked to add it as a node if needed).
+ * 2) Queries are answered by a level synchronous distributed BFS: the frontier of
+ *    each level is divided into batches by owner shard which are expanded by the
+ *    shards in parallel. Each shard marks its frontier nodes as visited and returns
+ *    their neighbours which become the next frontier.
+ * 3) The bounded queries stop after expanding their maximum number of levels and
+ *    the nearest queries once they collect the nodes of enough levels.
+ * 4) Once the destination node is reached (or the frontier is empty) the shards
+ *    release the visited nodes of the query.
+ *
+ * Notes:
+ * 1) The number of remote calls per query is proportional to the distance times
+ *    the number of shards, so it pays off only when the graph doesn't fit in the
+ *    memory of a single server.
+ * 2) Same as the other implementations, the source node is visited before starting
+ *    the search so a query from a node to itself returns -1.
+ */
+public class ShardedShortestPath extends ShortestPathAlgorithm {
+
+    private final Shard[] shards;
+    private final ExecutorService executor;
+    private final AtomicLong nextQueryId;
+
+    public ShardedShortestPath(Shard[] shards) {
+        super();
+        this.shards = shards;
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "shard-coordinator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.nextQueryId = new AtomicLong();
+    }
+
+    /**
+     * Returns the index of the shard owning the given node.
+     */
+    public static int ownerOf(int node, int shardCount) {
+        int hash = node * 0x9E3779B9;
+        return Math.floorMod(hash ^ (hash >>> 16), shardCount);
+    }
+
+    @Override
+    public boolean addNewEdge(int a, int b) {
+        try {
+            int ownerOfA = ownerOf(a, shards.length), ownerOfB = ownerOf(b, shards.length);
+            boolean added = shards[ownerOfA].addEdge(a, b);
+            if (ownerOfB != ownerOfA) shards[ownerOfB].addNode(b);
+            return added;
+        } catch (RemoteException e) {
+            throw new IllegalStateException("Shard is unreachable", e);
+        }
+    }
+
+    @Override
+    public boolean deleteEdge(int a, int b) {
+        try {
+            return shards[ownerOf(a, shards.length)].deleteEdge(a, b);
+        } catch (RemoteException e) {
+            throw new IllegalStateException("Shard is unreachable", e);
+        }
+    }
+
+    @Override
+    public int queryShortestPath(int a, int b) {
+        return queryBoundedShortestPath(a, b, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int queryBoundedShortestPath(int a, int b, int maxHops) {
+        try {
+            // Either A or B doesn't exist in the graph
+            if (! shards[ownerOf(a, shards.length)].containsNode(a)
+                    || ! shards[ownerOf(b, shards.length)].containsNode(b)) return -1;
+
+            // The source is visited before the search (see notes)
+            if (a == b) return -1;
+            return distributedBfs(a, b, maxHops, 0, null);
+        } catch (RemoteException | InterruptedException | ExecutionException e) {
+            throw new IllegalStateException("Distributed BFS failed", e);
+        }
+    }
+
+    @Override
+    public int[] queryNearestNodes(int a, int k) {
+        try {
+            if (k <= 0 || ! shards[ownerOf(a, shards.length)].containsNode(a)) return new int[0];
+            List<Integer> nearestNodes = new ArrayList<>(k);
+            distributedBfs(a, a, Integer.MAX_VALUE, k, nearestNodes);
+            return nearestNodes.stream().mapToInt(Integer::intValue).toArray();
+        } catch (RemoteException | InterruptedException | ExecutionException e) {
+            throw new IllegalStateException("Distributed BFS failed", e);
+        }
+    }
+
+    @Override
+    public void updateStateIfAny() {
+        // Do nothing
+    }
+
+    //
+    // Private Methods
+    //
+
+    /**
+     * Returns the distance from a to b if it's at most maxHops. If nearestNodes is
+     * given (b is ignored), the nodes reached for the first time at each level are
+     * added to it (ordered by id) until it holds k nodes. In that case the
+     * coordinator keeps the reached nodes too since each shard only knows its own.
+     */
+    private int distributedBfs(int a, int b, int maxHops, int k, List<Integer> nearestNodes)
+            throws InterruptedException, ExecutionException, RemoteException {
+        long queryId = nextQueryId.incrementAndGet();
+        int[][] frontiers = new int[shards.length][0];
+        frontiers[ownerOf(a, shards.length)] = new int[] {a};
+        boolean[] touchedShards = new boolean[shards.length];
+        int path = 1, visitedNodes = 0;
+        HashSet<Integer> reachedNodes = nearestNodes == null ? null : new HashSet<>(List.of(a));
+        try {
+            while (path <= maxHops) {
+                // Expanding the frontier batch of each shard in parallel
+                List<Future<int[]>> expansions = new ArrayList<>(shards.length);
+                for (int i = 0 ; i < shards.length ; i++) {
+                    if (frontiers[i].length == 0) {
+                        expansions.add(null);
+                        continue;
+                    }
+                    Shard shard = shards[i];
+                    int[] frontier = frontiers[i];
+                    touchedShards[i] = true;
+                    visitedNodes += frontier.length;
+                    expansions.add(executor.submit(() -> shard.expandFrontier(queryId, frontier)));
+                }
+
+                // Building the next frontier batches by owner shard
+                List<List<Integer>> nextFrontiers = new ArrayList<>(shards.length);
+                for (int i = 0 ; i < shards.length ; i++)
+                    nextFrontiers.add(new ArrayList<>());
+                HashSet<Integer> levelNodes = new HashSet<>();
+                boolean empty = true;
+                for (Future<int[]> expansion : expansions) {
+                    if (expansion == null) continue;
+                    for (int neighbour : expansion.get()) {
+                        if (neighbour == b && nearestNodes == null) return path;
+                        if (reachedNodes != null && reachedNodes.contains(neighbour)) continue;
+                        if (levelNodes.add(neighbour)) {
+                            nextFrontiers.get(ownerOf(neighbour, shards.length)).add(neighbour);
+                            empty = false;
+                        }
+                    }
+                }
+                if (empty) return -1; // They are not connected
+                if (nearestNodes != null) {
+                    List<Integer> newNodes = new ArrayList<>(levelNodes);
+                    Collections.sort(newNodes);
+                    for (int i = 0 ; i < newNodes.size() && nearestNodes.size() < k ; i++)
+                        nearestNodes.add(newNodes.get(i));
+                    if (nearestNodes.size() == k) return -1;
+                    reachedNodes.addAll(levelNodes);
+                }
+                for (int i = 0 ; i < shards.length ; i++)
+                    frontiers[i] = nextFrontiers.get(i).stream().mapToInt(Integer::intValue).toArray();
+                path++;
+            }
+            return -1; // They are not connected within maxHops
+        } finally {
+            metrics.bfsVisitedNodes.record(visitedNodes);
+            for (int i = 0 ; i < shards.length ; i++)
+                if (touchedShards[i]) shards[i].endQuery(queryId);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.server.snapshot;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Snapshot of the distance rows of an algorithm (each row holds the distances from
+ * a source by node index) which is saved in a file so a restarted server restores
+ * its state instead of re-calculating it.
+ *
+ * Steps:
+ * 1) The header holds the algorithm name and the fingerprint of the graph the rows
+ *    were calculated for (its nodes in index order and its edges).
+ * 2) The directory holds the source of each saved row and whether the row is
+ *    complete (the BFS from its source wasn't stopped early).
+ * 3) The rows follow, nodeCount ints each.
+ * 4) The file is mapped when it's read and it's only used if its algorithm, its
+ *    fingerprint and its number of nodes match the current graph, and if it holds
+ *    all the rows of its directory with valid sources.
+ *
+ * Notes:
+ * 1) A snapshot is written to a temporary file which then replaces the old one, so
+ *    a crash while saving never leaves a broken snapshot.
+ * 2) All the values are 4-byte aligned ints (or longs) in big endian order.
+ */
+public final class DistanceSnapshot {
+
+    private static final Logger logger = LogManager.getLogger(DistanceSnapshot.class);
+    private static final int MAGIC = 0x53505354; // "SPST"
+    private static final int FORMAT_VERSION = 1;
+    private static final int CHUNK_SHIFT = 30; // Mapped in chunks of 1 GB
+    private static final int WRITE_BUFFER_SIZE = 1 << 16;
+
+    private final int[][] rows;
+    private final boolean[] completeRows;
+
+    private DistanceSnapshot(int[][] rows, boolean[] completeRows) {
+        this.rows = rows;
+        this.completeRows = completeRows;
+    }
+
+    /**
+     * Returns the saved rows by source index (null for the sources without a row).
+     */
+    public int[][] getRows() {
+        return rows;
+    }
+
+    /**
+     * Returns whether the row of each source is complete.
+     */
+    public boolean[] getCompleteRows() {
+        return completeRows;
+    }
+
+    /**
+     * Saves the non-null rows (padded or truncated to nodeCount entries). The
+     * complete rows might be null if all the rows are complete.
+     */
+    public static void write(File file, String algorithm, long fingerprint, int nodeCount,
+                             int[][] rows, boolean[] completeRows) throws IOException {
+        int rowCount = 0;
+        for (int source = 0 ; source < nodeCount && source < rows.length ; source++)
+            if (rows[source] != null) rowCount++;
+        File temporaryFile = new File(file.getPath() + ".tmp");
+        try (FileChannel channel = new RandomAccessFile(temporaryFile, "rw").getChannel()) {
+            channel.truncate(0);
+            ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+            byte[] algorithmName = algorithm.getBytes(StandardCharsets.UTF_8);
+            buffer.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(algorithmName.length).put(algorithmName);
+            buffer.position((buffer.position() + 3) & ~3);
+            buffer.putLong(fingerprint).putInt(nodeCount).putInt(rowCount);
+            for (int source = 0 ; source < nodeCount && source < rows.length ; source++) {
+                if (rows[source] == null) continue;
+                flushIfFull(channel, buffer, 8);
+                buffer.putInt(source).putInt(completeRows == null || completeRows[source] ? 1 : 0);
+            }
+            for (int source = 0 ; source < nodeCount && source < rows.length ; source++) {
+                int[] row = rows[source];
+                if (row == null) continue;
+                for (int index = 0 ; index < nodeCount ; ) {
+                    flushIfFull(channel, buffer, 4);
+                    IntBuffer intBuffer = buffer.asIntBuffer();
+                    int count = Math.min(intBuffer.remaining(), nodeCount - index);
+                    int copied = Math.max(0, Math.min(count, row.length - index));
+                    intBuffer.put(row, index, copied);
+                    for (int i = copied ; i < count ; i++)
+                        intBuffer.put(0);
+                    buffer.position(buffer.position() + 4 * count);
+                    index += count;
+                }
+            }
+            channel.write(buffer.flip());
+            channel.force(true);
+        }
+        Files.move(temporaryFile.toPath(), file.toPath(),
+                   StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Maps and reads the snapshot if it exists and matches the given algorithm and
+     * graph. Otherwise, returns null.
+     */
+    public static DistanceSnapshot read(File file, String algorithm, long fingerprint, int nodeCount)
+            throws IOException {
+        if (! file.exists()) return null;
+        try (FileChannel channel = new RandomAccessFile(file, "r").getChannel()) {
+            long size = channel.size();
+            ByteBuffer[] chunks = new ByteBuffer[(int) ((size + (1L << CHUNK_SHIFT) - 1) >>> CHUNK_SHIFT)];
+            for (int i = 0 ; i < chunks.length ; i++)
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, (long) i << CHUNK_SHIFT,
+                        Math.min(1L << CHUNK_SHIFT, size - ((long) i << CHUNK_SHIFT)));
+            ByteBuffer header = chunks.length == 0 ? ByteBuffer.allocate(0) : chunks[0].duplicate();
+            if (header.remaining() < 12 || header.getInt() != MAGIC || header.getInt() != FORMAT_VERSION) {
+                logger.warn("Ignoring the snapshot " + file + " which has an unknown format");
+                return null;
+            }
+            int algorithmNameLength = header.getInt();
+            if (algorithmNameLength < 0 || header.remaining() < ((algorithmNameLength + 3) & ~3) + 16) {
+                logger.warn("Ignoring the snapshot " + file + " which is truncated");
+                return null;
+            }
+            byte[] algorithmName = new byte[algorithmNameLength];
+            header.get(algorithmName).position((header.position() + 3) & ~3);
+            long snapshotFingerprint = header.getLong();
+            int snapshotNodeCount = header.getInt(), rowCount = header.getInt();
+            if (! algorithm.equals(new String(algorithmName, StandardCharsets.UTF_8))
+                    || snapshotFingerprint != fingerprint || snapshotNodeCount != nodeCount) {
+                logger.warn("Ignoring the snapshot " + file + " which doesn't match the graph");
+                return null;
+            }
+
+            long offset = header.position();
+            if (rowCount < 0 || rowCount > nodeCount
+                    || size < offset + 8L * rowCount + 4L * rowCount * nodeCount) {
+                logger.warn("Ignoring the snapshot " + file + " which is truncated");
+                return null;
+            }
+            int[] directory = new int[2 * rowCount];
+            readInts(chunks, offset, directory, directory.length);
+            offset += 4L * directory.length;
+            for (int i = 0 ; i < rowCount ; i++) {
+                int source = directory[2 * i];
+                if (source < 0 || source >= nodeCount) {
+                    logger.warn("Ignoring the snapshot " + file + " which has an invalid source " + source);
+                    return null;
+                }
+            }
+            int[][] rows = new int[nodeCount][];
+            boolean[] completeRows = new boolean[nodeCount];
+            for (int i = 0 ; i < rowCount ; i++) {
+                int source = directory[2 * i];
+                rows[source] = new int[nodeCount];
+                readInts(chunks, offset, rows[source], nodeCount);
+                completeRows[source] = directory[2 * i + 1] == 1;
+                offset += 4L * nodeCount;
+            }
+            logger.info("Restored " + rowCount + " rows from the snapshot " + file);
+            return new DistanceSnapshot(rows, completeRows);
+        }
+    }
+
+    //
+    // Private Methods
+    //
+
+    private static void flushIfFull(FileChannel channel, ByteBuffer buffer, int neededBytes) throws IOException {
+        if (buffer.remaining() >= neededBytes) return;
+        channel.write(buffer.flip());
+        buffer.compact();
+    }
+
+    /**
+     * Copies count ints starting at the given offset of the mapped chunks.
+     */
+    private static void readInts(ByteBuffer[] chunks, long offset, int[] destination, int count) {
+        int destinationOffset = 0;
+        while (count > 0) {
+            ByteBuffer chunk = chunks[(int) (offset >>> CHUNK_SHIFT)];
+            int position = (int) (offset & ((1L << CHUNK_SHIFT) - 1));
+            int length = Math.min(count, (chunk.capacity() - position) >>> 2);
+            chunk.asIntBuffer().get(position >>> 2, destination, destinationOffset, length);
+            offset += 4L * length;
+            destinationOffset += length;
+            count -= length;
+        }
+    }
+}
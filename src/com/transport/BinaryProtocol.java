@@ -0,0 +1,168 @@
+package com.transport;
+
+import com.Operation;
+import com.Operation.OperationType;
+import com.ServerOverloadedException;
+import com.server.LocalOperation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.rmi.RemoteException;
+import java.util.List;
+
+/**
+ * Length prefixed binary protocol used by the TCP transport.
+ *
+ * Every frame starts with an int holding the number of bytes which follow it.
+ * Request frame:  [length][long requestId][byte mode][int count]{[byte type][int a][int b][int limit]} * count
+ * Response frame: [length][long requestId][byte status] followed by either
+ *                 [int count]{[int result]} * count   when status is STATUS_OK or STATUS_PARTIAL
+ *                 [int length][UTF-8 bytes]           when status is STATUS_ERROR
+ *                 [long retryAfterMillis][int length][UTF-8 bytes]
+ *                                                     when status is STATUS_OVERLOADED
+ *
+ * Responses are sent in the same order as the requests of the connection, the request
+ * identifier only allows the client to verify that. A request sent in MODE_STREAMING
+ * receives a STATUS_PARTIAL frame for every query transaction followed by an empty
+ * STATUS_OK frame once the whole batch is executed. A request rejected by the admission
+ * queue of the server receives a STATUS_OVERLOADED frame and isn't executed.
+ */
+public final class BinaryProtocol {
+
+    public static final int FRAME_HEADER_SIZE = Integer.BYTES;
+    public static final int MAX_FRAME_SIZE = 64 * 1024 * 1024;
+    public static final int MIN_REQUEST_FRAME_SIZE = Long.BYTES + 1 + Integer.BYTES;
+    public static final byte STATUS_OK = 0;
+    public static final byte STATUS_ERROR = 1;
+    public static final byte STATUS_PARTIAL = 2;
+    public static final byte STATUS_OVERLOADED = 3;
+    public static final byte MODE_BATCH = 0;
+    public static final byte MODE_STREAMING = 1;
+
+    private static final int OPERATION_SIZE = 1 + 3 * Integer.BYTES;
+    private static final OperationType[] OPERATION_TYPES = OperationType.values();
+
+    private BinaryProtocol() {}
+
+    /**
+     * Encodes a batch in a request frame ready to be written.
+     */
+    public static ByteBuffer encodeBatch(long requestId, byte mode, Operation[] batch)
+            throws RemoteException {
+        int frameLength = Long.BYTES + 1 + Integer.BYTES + batch.length * OPERATION_SIZE;
+        ByteBuffer buffer = ByteBuffer.allocate(FRAME_HEADER_SIZE + frameLength);
+        buffer.putInt(frameLength).putLong(requestId).put(mode).putInt(batch.length);
+        for (Operation operation : batch) {
+            buffer.put((byte) operation.getOperationType().ordinal())
+                  .putInt(operation.getA())
+                  .putInt(operation.getB())
+                  .putInt(operation.getLimit());
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Decodes the operations of a request frame whose position is right after the
+     * mode. Throws an IOException if the frame is malformed (its operations count
+     * doesn't match its length or an operation type is unknown).
+     */
+    public static Operation[] decodeBatch(ByteBuffer frame) throws IOException {
+        if (frame.remaining() < Integer.BYTES)
+            throw new IOException("Truncated request frame");
+        int count = frame.getInt();
+        if (count < 0 || (long) count * OPERATION_SIZE > frame.remaining())
+            throw new IOException("Invalid operations count " + count);
+        Operation[] batch = new Operation[count];
+        for (int i = 0 ; i < batch.length ; i++) {
+            byte type = frame.get();
+            if (type < 0 || type >= OPERATION_TYPES.length)
+                throw new IOException("Invalid operation type " + type);
+            OperationType operationType = OPERATION_TYPES[type];
+            int a = frame.getInt();
+            int b = frame.getInt();
+            int limit = frame.getInt();
+            batch[i] = new LocalOperation(a, b, limit, operationType);
+        }
+        return batch;
+    }
+
+    /**
+     * Encodes the results of a batch in a response frame ready to be written.
+     */
+    public static ByteBuffer encodeResult(long requestId, List<Integer> result) {
+        int frameLength = Long.BYTES + 1 + Integer.BYTES + result.size() * Integer.BYTES;
+        ByteBuffer buffer = ByteBuffer.allocate(FRAME_HEADER_SIZE + frameLength);
+        buffer.putInt(frameLength).putLong(requestId).put(STATUS_OK).putInt(result.size());
+        for (int value : result)
+            buffer.putInt(value);
+        return buffer.flip();
+    }
+
+    /**
+     * Encodes part of the results of a batch (or the final empty frame when the
+     * status is STATUS_OK) in a response frame ready to be written.
+     */
+    public static ByteBuffer encodeResult(long requestId, byte status, int[] result) {
+        int frameLength = Long.BYTES + 1 + Integer.BYTES + result.length * Integer.BYTES;
+        ByteBuffer buffer = ByteBuffer.allocate(FRAME_HEADER_SIZE + frameLength);
+        buffer.putInt(frameLength).putLong(requestId).put(status).putInt(result.length);
+        for (int value : result)
+            buffer.putInt(value);
+        return buffer.flip();
+    }
+
+    /**
+     * Encodes an error in a response frame ready to be written.
+     */
+    public static ByteBuffer encodeError(long requestId, String message) {
+        byte[] messageBytes = String.valueOf(message).getBytes(StandardCharsets.UTF_8);
+        int frameLength = Long.BYTES + 1 + Integer.BYTES + messageBytes.length;
+        ByteBuffer buffer = ByteBuffer.allocate(FRAME_HEADER_SIZE + frameLength);
+        buffer.putInt(frameLength).putLong(requestId).put(STATUS_ERROR)
+              .putInt(messageBytes.length).put(messageBytes);
+        return buffer.flip();
+    }
+
+    /**
+     * Encodes the rejection of an overloaded server in a response frame ready to be
+     * written.
+     */
+    public static ByteBuffer encodeOverloaded(long requestId, String message, long retryAfterMillis) {
+        byte[] messageBytes = String.valueOf(message).getBytes(StandardCharsets.UTF_8);
+        int frameLength = Long.BYTES + 1 + Long.BYTES + Integer.BYTES + messageBytes.length;
+        ByteBuffer buffer = ByteBuffer.allocate(FRAME_HEADER_SIZE + frameLength);
+        buffer.putInt(frameLength).putLong(requestId).put(STATUS_OVERLOADED)
+              .putLong(retryAfterMillis).putInt(messageBytes.length).put(messageBytes);
+        return buffer.flip();
+    }
+
+    /**
+     * Decodes the results of a response frame whose position is right after the status.
+     */
+    public static int[] decodeResult(ByteBuffer frame) {
+        int[] result = new int[frame.getInt()];
+        for (int i = 0 ; i < result.length ; i++)
+            result[i] = frame.getInt();
+        return result;
+    }
+
+    /**
+     * Decodes the error message of a response frame whose position is right after
+     * the status.
+     */
+    public static String decodeError(ByteBuffer frame) {
+        byte[] messageBytes = new byte[frame.getInt()];
+        frame.get(messageBytes);
+        return new String(messageBytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Decodes the rejection of a response frame whose position is right after the
+     * status.
+     */
+    public static ServerOverloadedException decodeOverloaded(ByteBuffer frame) {
+        long retryAfterMillis = frame.getLong();
+        return new ServerOverloadedException(decodeError(frame), retryAfterMillis);
+    }
+}
@@ -0,0 +1,332 @@
+package com.transport;
+
+import com.Operation;
+import com.Server;
+import com.ServerOverloadedException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves a Server object over persistent TCP connections using the BinaryProtocol.
+ *
+ * A single selector thread accepts the connections, reads the request frames and
+ * writes the response frames. The decoded batches are executed by a pool of worker
+ * threads: the batches of different connections run concurrently (the server admits
+ * them by its admission queue), while the batches of each connection run one at a
+ * time in their arrival order. So the responses of each connection are written in
+ * the same order of its requests, which allows the clients to pipeline many requests
+ * on the same connection without waiting for the previous responses.
+ *
+ * The responses queued for a connection are bounded: once they reach the high water
+ * mark, the connection isn't read anymore (so no new batch of it is executed) until
+ * the client reads them down to the low water mark. The workers never wait for a
+ * client, so a client which doesn't read its responses only holds its own
+ * connection, along with the results of the batches it sent before.
+ */
+public class TcpServer implements Closeable {
+
+    private static final int INITIAL_READ_BUFFER_SIZE = 64 * 1024;
+    private static final int WRITE_QUEUE_HIGH_WATER_MARK = 4 * 1024 * 1024;
+    private static final int WRITE_QUEUE_LOW_WATER_MARK = 1024 * 1024;
+
+    private final Logger logger;
+    private final Server server;
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final ExecutorService workers;
+    private final ConcurrentLinkedQueue<Connection> pendingWrites;
+    private final Thread selectorThread;
+    private volatile boolean running;
+
+    public TcpServer(Server server, int portNumber) throws IOException {
+        this.logger = LogManager.getLogger(Server.class);
+        this.server = server;
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        this.serverChannel.bind(new InetSocketAddress(portNumber));
+        this.serverChannel.configureBlocking(false);
+        this.serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        this.workers = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "tcp-server-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.pendingWrites = new ConcurrentLinkedQueue<>();
+        this.selectorThread = new Thread(this::runSelectorLoop, "tcp-server-selector");
+        this.selectorThread.setDaemon(true);
+    }
+
+    /**
+     * Starts accepting connections.
+     */
+    public void start() {
+        running = true;
+        selectorThread.start();
+    }
+
+    /**
+     * Returns the port number the server is listening on.
+     */
+    public int getPortNumber() throws IOException {
+        return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        selector.wakeup();
+        workers.shutdownNow();
+        serverChannel.close();
+    }
+
+    //
+    // Private Methods
+    //
+
+    private void runSelectorLoop() {
+        try {
+            while (running) {
+                selector.select();
+                registerPendingWrites();
+                Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                while (iterator.hasNext()) {
+                    SelectionKey key = iterator.next();
+                    iterator.remove();
+                    try {
+                        if (! key.isValid()) continue;
+                        if (key.isAcceptable()) accept();
+                        if (key.isValid() && key.isReadable()) read(key);
+                        if (key.isValid() && key.isWritable()) write(key);
+                    } catch (IOException e) {
+                        closeConnection(key);
+                    } catch (RuntimeException e) {
+                        // Not letting a single connection stop the selector thread
+                        logger.error("Closing a TCP connection after an unexpected error: " + e);
+                        closeConnection(key);
+                    }
+                }
+            }
+            for (SelectionKey key : selector.keys())
+                key.channel().close();
+            selector.close();
+        } catch (IOException e) {
+            logger.error("TCP server stopped: " + e.getMessage());
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) return;
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+        key.attach(new Connection(key));
+    }
+
+    /**
+     * Reads the available bytes and submits every complete request frame.
+     */
+    private void read(SelectionKey key) throws IOException {
+        Connection connection = (Connection) key.attachment();
+        SocketChannel channel = (SocketChannel) key.channel();
+        if (channel.read(connection.readBuffer) < 0) {
+            closeConnection(key);
+            return;
+        }
+        ByteBuffer buffer = connection.readBuffer.flip();
+        while (buffer.remaining() >= BinaryProtocol.FRAME_HEADER_SIZE) {
+            int frameLength = buffer.getInt(buffer.position());
+            if (frameLength < BinaryProtocol.MIN_REQUEST_FRAME_SIZE
+                    || frameLength > BinaryProtocol.MAX_FRAME_SIZE)
+                throw new IOException("Invalid frame length " + frameLength);
+            if (buffer.remaining() < BinaryProtocol.FRAME_HEADER_SIZE + frameLength) break;
+            buffer.position(buffer.position() + BinaryProtocol.FRAME_HEADER_SIZE);
+            ByteBuffer frame = buffer.slice(buffer.position(), frameLength);
+            buffer.position(buffer.position() + frameLength);
+            long requestId = frame.getLong();
+            byte mode = frame.get();
+            Operation[] batch = BinaryProtocol.decodeBatch(frame);
+            if (mode == BinaryProtocol.MODE_STREAMING)
+                submit(connection, () -> executeStreaming(connection, requestId, batch));
+            else submit(connection, () -> execute(connection, requestId, batch));
+        }
+        buffer.compact();
+        connection.ensureCapacity();
+    }
+
+    /**
+     * Queues the batch of the connection, a worker is started for the connection if
+     * none is executing its batches.
+     */
+    private void submit(Connection connection, Runnable batchExecution) {
+        synchronized (connection) {
+            connection.pendingBatches.add(batchExecution);
+            if (connection.executing) return;
+            connection.executing = true;
+        }
+        workers.execute(() -> executeBatches(connection));
+    }
+
+    /**
+     * Executes the queued batches of the connection in their order until none is left.
+     */
+    private void executeBatches(Connection connection) {
+        while (true) {
+            Runnable batchExecution;
+            synchronized (connection) {
+                batchExecution = connection.pendingBatches.poll();
+                if (batchExecution == null) {
+                    connection.executing = false;
+                    return;
+                }
+            }
+            batchExecution.run();
+        }
+    }
+
+    /**
+     * Executes the batch on a worker thread and queues its response.
+     */
+    private void execute(Connection connection, long requestId, Operation[] batch) {
+        ByteBuffer response;
+        try {
+            List<Integer> result = server.executeBatch(batch);
+            response = BinaryProtocol.encodeResult(requestId, result);
+        } catch (ServerOverloadedException e) {
+            response = BinaryProtocol.encodeOverloaded(requestId, e.getMessage(), e.getRetryAfterMillis());
+        } catch (Exception e) {
+            logger.error("Failed to execute batch received over TCP: " + e.getMessage());
+            response = BinaryProtocol.encodeError(requestId, e.getMessage());
+        }
+        queueResponse(connection, response);
+    }
+
+    /**
+     * Executes the batch on a worker thread while queueing a partial response for
+     * every completed query transaction, so the results don't pile up in memory
+     * while the client reads them.
+     */
+    private void executeStreaming(Connection connection, long requestId, Operation[] batch) {
+        ByteBuffer response;
+        try {
+            server.executeBatchStreaming(batch, results -> queueResponse(connection,
+                    BinaryProtocol.encodeResult(requestId, BinaryProtocol.STATUS_PARTIAL, results)));
+            response = BinaryProtocol.encodeResult(requestId, BinaryProtocol.STATUS_OK, new int[0]);
+        } catch (ServerOverloadedException e) {
+            response = BinaryProtocol.encodeOverloaded(requestId, e.getMessage(), e.getRetryAfterMillis());
+        } catch (Exception e) {
+            logger.error("Failed to execute batch received over TCP: " + e.getMessage());
+            response = BinaryProtocol.encodeError(requestId, e.getMessage());
+        }
+        queueResponse(connection, response);
+    }
+
+    /**
+     * Queues the response of the connection without waiting, the selector thread
+     * stops reading the connection if its queued responses reached the high water
+     * mark. The response is dropped if the connection is closed.
+     */
+    private void queueResponse(Connection connection, ByteBuffer response) {
+        synchronized (connection) {
+            if (! connection.key.isValid()) return;
+            connection.writeQueue.add(response);
+            connection.queuedBytes += response.limit();
+        }
+        pendingWrites.add(connection);
+        selector.wakeup();
+    }
+
+    /**
+     * Updates the interest set of the connections having queued responses (the
+     * interest set can only be changed safely from the selector thread).
+     */
+    private void registerPendingWrites() {
+        Connection connection;
+        while ((connection = pendingWrites.poll()) != null) {
+            synchronized (connection) {
+                if (connection.key.isValid()) connection.key.interestOps(connection.interestOps());
+            }
+        }
+    }
+
+    private void write(SelectionKey key) throws IOException {
+        Connection connection = (Connection) key.attachment();
+        SocketChannel channel = (SocketChannel) key.channel();
+        synchronized (connection) {
+            while (! connection.writeQueue.isEmpty()) {
+                ByteBuffer response = connection.writeQueue.peek();
+                channel.write(response);
+                if (response.hasRemaining()) break; // Socket buffer is full
+                connection.writeQueue.poll();
+                connection.queuedBytes -= response.limit();
+            }
+            key.interestOps(connection.interestOps());
+        }
+    }
+
+    private void closeConnection(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            // do nothing (the connection is closed anyway).
+        }
+    }
+
+    /**
+     * State of a single client connection.
+     */
+    private static final class Connection {
+        private final SelectionKey key;
+        private final ArrayDeque<ByteBuffer> writeQueue;
+        private final ArrayDeque<Runnable> pendingBatches; // Guarded by the connection
+        private boolean executing; // Whether a worker executes the batches (guarded by the connection)
+        private long queuedBytes; // Guarded by the connection
+        private boolean readPaused; // Guarded by the connection
+        private ByteBuffer readBuffer;
+
+        private Connection(SelectionKey key) {
+            this.key = key;
+            this.writeQueue = new ArrayDeque<>();
+            this.pendingBatches = new ArrayDeque<>();
+            this.readBuffer = ByteBuffer.allocate(INITIAL_READ_BUFFER_SIZE);
+        }
+
+        /**
+         * Returns the interest set of the connection (holding its monitor). It isn't
+         * read from the moment its queued responses reach the high water mark until
+         * they're written down to the low water mark.
+         */
+        private int interestOps() {
+            if (queuedBytes >= WRITE_QUEUE_HIGH_WATER_MARK) readPaused = true;
+            else if (queuedBytes <= WRITE_QUEUE_LOW_WATER_MARK) readPaused = false;
+            int interestOps = readPaused ? 0 : SelectionKey.OP_READ;
+            return writeQueue.isEmpty() ? interestOps : interestOps | SelectionKey.OP_WRITE;
+        }
+
+        /**
+         * Grows the read buffer if the pending frame doesn't fit in it.
+         */
+        private void ensureCapacity() {
+            if (readBuffer.position() < BinaryProtocol.FRAME_HEADER_SIZE) return;
+            int required = BinaryProtocol.FRAME_HEADER_SIZE + readBuffer.getInt(0);
+            if (required > readBuffer.capacity()) {
+                ByteBuffer grownBuffer = ByteBuffer.allocate(required);
+                grownBuffer.put(readBuffer.flip());
+                readBuffer = grownBuffer;
+            }
+        }
+    }
+}
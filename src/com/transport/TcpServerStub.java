@@ -0,0 +1,194 @@
+package com.transport;
+
+import com.Operation;
+import com.ResultListener;
+import com.Server;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.rmi.RemoteException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Client side of the TCP transport. Sends batches over a single persistent
+ * connection and allows pipelining: many batches can be submitted before their
+ * results are received. A reader thread completes the pending requests in order.
+ */
+public class TcpServerStub implements Server, Closeable {
+
+    private final SocketChannel channel;
+    private final ArrayDeque<PendingRequest> pendingRequests;
+    private final Thread reader;
+    private long nextRequestId;
+    private IOException failure; // Guarded by pendingRequests
+
+    public TcpServerStub(String hostAddress, int portNumber) throws IOException {
+        this.channel = SocketChannel.open(new InetSocketAddress(hostAddress, portNumber));
+        this.channel.socket().setTcpNoDelay(true);
+        this.pendingRequests = new ArrayDeque<>();
+        this.reader = new Thread(this::readResponses, "tcp-stub-reader");
+        this.reader.setDaemon(true);
+        this.reader.start();
+    }
+
+    /**
+     * Sends the batch without waiting for the previous batches to complete and
+     * returns a future which is completed with the results of the batch.
+     */
+    public CompletableFuture<int[]> submitBatch(Operation[] batch) throws RemoteException {
+        return submit(batch, BinaryProtocol.MODE_BATCH, null);
+    }
+
+    /**
+     * Sends the batch in streaming mode: the listener is called (on the reader
+     * thread) with the results of each query transaction as soon as they are
+     * received. The returned future is completed with an empty array once the whole
+     * batch is executed.
+     */
+    public CompletableFuture<int[]> submitBatchStreaming(Operation[] batch, ResultListener listener)
+            throws RemoteException {
+        return submit(batch, BinaryProtocol.MODE_STREAMING, listener);
+    }
+
+    @Override
+    public List<Integer> executeBatch(Operation[] batch) throws RemoteException {
+        int[] result = await(submitBatch(batch));
+        List<Integer> resultList = new ArrayList<>(result.length);
+        for (int value : result)
+            resultList.add(value);
+        return resultList;
+    }
+
+    @Override
+    public void executeBatchStreaming(Operation[] batch, ResultListener listener) throws RemoteException {
+        await(submitBatchStreaming(batch, listener));
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    //
+    // Private Methods
+    //
+
+    private CompletableFuture<int[]> submit(Operation[] batch, byte mode, ResultListener listener)
+            throws RemoteException {
+        CompletableFuture<int[]> future = new CompletableFuture<>();
+        synchronized (this) {
+            long requestId = nextRequestId++;
+            ByteBuffer request = BinaryProtocol.encodeBatch(requestId, mode, batch);
+            synchronized (pendingRequests) {
+                if (failure != null)
+                    throw new RemoteException("Connection to the server is broken", failure);
+                pendingRequests.add(new PendingRequest(requestId, future, listener));
+            }
+            try {
+                while (request.hasRemaining())
+                    channel.write(request);
+            } catch (IOException e) {
+                fail(e);
+                throw new RemoteException("Failed to send the batch", e);
+            }
+        }
+        return future;
+    }
+
+    private int[] await(CompletableFuture<int[]> future) throws RemoteException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw new RemoteException("Failed to execute the batch", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Interrupted while waiting for the result", e);
+        }
+    }
+
+    private void readResponses() {
+        ByteBuffer header = ByteBuffer.allocate(BinaryProtocol.FRAME_HEADER_SIZE);
+        try {
+            while (true) {
+                readFully(header.clear());
+                int frameLength = header.flip().getInt();
+                if (frameLength < 0 || frameLength > BinaryProtocol.MAX_FRAME_SIZE)
+                    throw new IOException("Invalid frame length " + frameLength);
+                ByteBuffer frame = ByteBuffer.allocate(frameLength);
+                readFully(frame);
+                frame.flip();
+                long requestId = frame.getLong();
+                byte status = frame.get();
+                PendingRequest pendingRequest;
+                synchronized (pendingRequests) {
+                    pendingRequest = status == BinaryProtocol.STATUS_PARTIAL
+                            ? pendingRequests.peek()
+                            : pendingRequests.poll();
+                }
+                if (pendingRequest == null || pendingRequest.requestId != requestId)
+                    throw new IOException("Received an out of order response " + requestId);
+                if (status == BinaryProtocol.STATUS_PARTIAL)
+                    deliverPartialResult(pendingRequest, BinaryProtocol.decodeResult(frame));
+                else if (status == BinaryProtocol.STATUS_OK)
+                    pendingRequest.future.complete(BinaryProtocol.decodeResult(frame));
+                else if (status == BinaryProtocol.STATUS_OVERLOADED)
+                    pendingRequest.future.completeExceptionally(BinaryProtocol.decodeOverloaded(frame));
+                else pendingRequest.future.completeExceptionally
+                        (new RemoteException(BinaryProtocol.decodeError(frame)));
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private void deliverPartialResult(PendingRequest pendingRequest, int[] partialResult) {
+        if (pendingRequest.listener == null || pendingRequest.future.isDone()) return;
+        try {
+            pendingRequest.listener.onResults(partialResult);
+        } catch (Exception e) {
+            pendingRequest.future.completeExceptionally(e);
+        }
+    }
+
+    private void readFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0)
+                throw new EOFException("Connection closed by the server");
+        }
+    }
+
+    /**
+     * Marks the connection as broken and fails all the pending requests.
+     */
+    private void fail(IOException exception) {
+        synchronized (pendingRequests) {
+            failure = exception;
+            PendingRequest pendingRequest;
+            while ((pendingRequest = pendingRequests.poll()) != null)
+                pendingRequest.future.completeExceptionally(exception);
+        }
+    }
+
+    /**
+     * Request sent to the server whose response isn't received yet.
+     */
+    private static final class PendingRequest {
+        private final long requestId;
+        private final CompletableFuture<int[]> future;
+        private final ResultListener listener; // Only set in streaming mode
+
+        private PendingRequest(long requestId, CompletableFuture<int[]> future, ResultListener listener) {
+            this.requestId = requestId;
+            this.future = future;
+            this.listener = listener;
+        }
+    }
+}
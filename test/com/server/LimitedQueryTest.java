@@ -0,0 +1,110 @@
+package com.server;
+
+import com.Operation;
+import com.Operation.OperationType;
+import com.server.algorithm.LandmarkShortestPath;
+import com.server.algorithm.LazyStatefulShortestPath;
+import com.server.algorithm.MemoizedShortestPath;
+import com.server.algorithm.StatefulShortestPath;
+import com.server.algorithm.StatelessShortestPath;
+import com.server.graph.CompressedGraphStore;
+import com.server.graph.OffHeapGraphStore;
+import com.server.shard.Shard;
+import com.server.shard.ShardServer;
+import com.server.shard.ShardedShortestPath;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LimitedQueryTest {
+
+    private static final String INITIAL_GRAPH_FILENAME = "InitialGraph.txt";
+    private static final int TRIALS = 10;
+    private static final int OPERATIONS_PER_BATCH = 500;
+    private static final int NODES_RANGE = 60;
+
+    /**
+     * Tests that all the algorithms return the same results for batches mixing the
+     * bounded, nearest and approximate (without error) queries with the other
+     * operations.
+     */
+    @Test
+    public void testAlgorithmsAgree() throws Exception {
+        Shard[] shards = new Shard[2];
+        for (int i = 0 ; i < shards.length ; i++)
+            shards[i] = new ShardServer(i, shards.length, INITIAL_GRAPH_FILENAME);
+        ServerImpl[] servers = {
+                new ServerImpl(new StatelessShortestPath(INITIAL_GRAPH_FILENAME), 50, 4),
+                new ServerImpl(new MemoizedShortestPath(INITIAL_GRAPH_FILENAME), 50, 4),
+                new ServerImpl(new StatefulShortestPath(INITIAL_GRAPH_FILENAME), 50, 4),
+                new ServerImpl(new LazyStatefulShortestPath(INITIAL_GRAPH_FILENAME), 50, 4),
+                new ServerImpl(new LandmarkShortestPath(INITIAL_GRAPH_FILENAME), 50, 4),
+                new ServerImpl(new MemoizedShortestPath(INITIAL_GRAPH_FILENAME, new CompressedGraphStore()),
+                        50, 4),
+                new ServerImpl(new StatefulShortestPath(INITIAL_GRAPH_FILENAME, new OffHeapGraphStore()),
+                        50, 4),
+                new ServerImpl(new ShardedShortestPath(shards), 50, 4)
+        };
+        Random random = new Random(34);
+        for (int i = 0 ; i < TRIALS ; i++) {
+            Operation[] batch = generateBatch(random);
+            Object[] expectedResult = servers[0].executeBatch(batch).toArray();
+            for (int j = 1 ; j < servers.length ; j++)
+                assertArrayEquals(expectedResult, servers[j].executeBatch(batch).toArray());
+        }
+    }
+
+    /**
+     * Tests the bounded and nearest queries against the full distance queries.
+     */
+    @Test
+    public void testLimitedQueries() throws Exception {
+        ServerImpl server = new ServerImpl(new StatelessShortestPath(INITIAL_GRAPH_FILENAME), 50, 4);
+        Random random = new Random(43);
+        for (int i = 0 ; i < OPERATIONS_PER_BATCH ; i++) {
+            int a = random.nextInt(NODES_RANGE), b = random.nextInt(NODES_RANGE), k = random.nextInt(4);
+            List<Integer> result = server.executeBatch(new Operation[] {
+                    new LocalOperation(a, b, OperationType.QUERY),
+                    new LocalOperation(a, b, k, OperationType.BOUNDED_QUERY),
+                    new LocalOperation(a, 0, k, OperationType.NEAREST_QUERY)
+            });
+            int path = result.get(0);
+            assertEquals(path != -1 && path <= k ? path : -1, result.get(1));
+
+            // The nearest nodes are ordered by their distance then by their id
+            assertEquals(result.size() - 3, result.get(2));
+            int previousPath = 0, previousNode = Integer.MIN_VALUE;
+            for (int j = 3 ; j < result.size() ; j++) {
+                int node = result.get(j);
+                int nodePath = server.executeBatch(new Operation[] {
+                        new LocalOperation(a, node, OperationType.QUERY)}).get(0);
+                assertTrue(nodePath > previousPath
+                        || nodePath == previousPath && node > previousNode);
+                previousPath = nodePath;
+                previousNode = node;
+            }
+        }
+    }
+
+    //
+    // Private Methods
+    //
+
+    private static Operation[] generateBatch(Random random) {
+        OperationType[] operationTypes = OperationType.values();
+        Operation[] batch = new Operation[OPERATIONS_PER_BATCH];
+        for (int i = 0 ; i < batch.length ; i++) {
+            OperationType operationType = operationTypes[random.nextInt(operationTypes.length)];
+            int limit = random.nextInt(5);
+            if (operationType == OperationType.APPROXIMATE_QUERY) limit = 0; // Exact with any algorithm
+            batch[i] = new LocalOperation(random.nextInt(NODES_RANGE), random.nextInt(NODES_RANGE),
+                                          limit, operationType);
+        }
+        return batch;
+    }
+}
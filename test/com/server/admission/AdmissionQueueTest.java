@@ -0,0 +1,146 @@
+package com.server.admission;
+
+import com.Operation;
+import com.Operation.OperationType;
+import com.ServerOverloadedException;
+import com.server.LocalOperation;
+import com.server.ServerImpl;
+import com.server.algorithm.StatelessShortestPath;
+import com.server.metrics.LatencyHistogram;
+import com.server.metrics.ServerMetrics;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdmissionQueueTest {
+
+    private static final String INITIAL_GRAPH_FILENAME = "InitialGraph.txt";
+    private static final int NODES_RANGE = 60;
+    private static final int CLIENTS_COUNT = 32;
+    private static final int BATCHES_PER_CLIENT = 20;
+    private static final int OPERATIONS_PER_BATCH = 2_000;
+
+    /**
+     * Tests the rejection of a full queue, the priority of the query-only batches and
+     * the timeout of the waiting batches.
+     */
+    @Test
+    public void testAdmission() throws Exception {
+        AdmissionQueue admissionQueue = new AdmissionQueue(2, 60_000);
+        assertEquals(0, admissionQueue.admit(false)); // Admitted right away
+
+        // An update batch then a query-only batch wait for the running one
+        List<String> admissionOrder = new CopyOnWriteArrayList<>();
+        Thread updateBatch = startBatch(admissionQueue, false, admissionOrder, "update");
+        awaitDepth(admissionQueue, 1);
+        Thread queryBatch = startBatch(admissionQueue, true, admissionOrder, "query");
+        awaitDepth(admissionQueue, 2);
+        ServerOverloadedException exception = assertThrows
+                (ServerOverloadedException.class, () -> admissionQueue.admit(true));
+        assertTrue(exception.getRetryAfterMillis() > 0);
+
+        admissionQueue.release(1_000_000);
+        updateBatch.join();
+        queryBatch.join();
+        assertEquals(List.of("query", "update"), admissionOrder);
+
+        // A batch not admitted within the timeout is rejected
+        AdmissionQueue shortQueue = new AdmissionQueue(10, 50);
+        shortQueue.admit(true);
+        long startTime = System.nanoTime();
+        assertThrows(ServerOverloadedException.class, () -> shortQueue.admit(true));
+        assertTrue(System.nanoTime() - startTime >= 50_000_000);
+        assertEquals(0, shortQueue.depth());
+    }
+
+    /**
+     * Tests that a server flooded by many clients rejects the batches beyond the
+     * queue depth, executes the others correctly and reports their wait time apart
+     * from their execution time.
+     */
+    @Test
+    public void testServerOverload() throws Exception {
+        ServerImpl server = new ServerImpl(new StatelessShortestPath(INITIAL_GRAPH_FILENAME), 50, 4);
+        ServerImpl referenceServer = new ServerImpl(new StatelessShortestPath(INITIAL_GRAPH_FILENAME), 50, 4);
+        server.setAdmissionQueue(new AdmissionQueue(CLIENTS_COUNT / 4, 0));
+        Operation[] queryBatch = generateQueryBatch(new Random(41));
+        List<Integer> expectedResult = referenceServer.executeBatch(queryBatch);
+
+        LongAdder rejectedBatches = new LongAdder(), executedBatches = new LongAdder();
+        LatencyHistogram latency = new LatencyHistogram();
+        CountDownLatch finished = new CountDownLatch(CLIENTS_COUNT);
+        for (int i = 0 ; i < CLIENTS_COUNT ; i++) {
+            new Thread(() -> {
+                try {
+                    for (int j = 0 ; j < BATCHES_PER_CLIENT ; j++) {
+                        long startTime = System.nanoTime();
+                        try {
+                            assertEquals(expectedResult, server.executeBatch(queryBatch));
+                            executedBatches.increment();
+                            latency.record(System.nanoTime() - startTime);
+                        } catch (ServerOverloadedException e) {
+                            rejectedBatches.increment();
+                            Thread.sleep(Math.min(e.getRetryAfterMillis(), 5));
+                        }
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                } finally {
+                    finished.countDown();
+                }
+            }).start();
+        }
+        finished.await();
+
+        ServerMetrics metrics = server.getMetrics();
+        assertEquals(CLIENTS_COUNT * BATCHES_PER_CLIENT, rejectedBatches.sum() + executedBatches.sum());
+        assertTrue(rejectedBatches.sum() > 0);
+        assertEquals(rejectedBatches.sum(), metrics.admissionRejections.sum());
+        assertEquals(executedBatches.sum(), metrics.admissionWaitLatency.snapshot(1).getCount());
+        assertEquals(0, metrics.getAdmissionQueueDepth());
+        System.out.println("Executed " + executedBatches.sum() + " batches, rejected " + rejectedBatches.sum()
+                + ", p99 latency " + String.format("%.2f", latency.getValueAtPercentile(99) / 1e6) + " ms"
+                + " (p99 admission wait " + String.format("%.2f",
+                    metrics.admissionWaitLatency.getValueAtPercentile(99) / 1e6) + " ms)");
+    }
+
+    //
+    // Private Methods
+    //
+
+    private static Thread startBatch(AdmissionQueue admissionQueue, boolean queryOnly,
+                                     List<String> admissionOrder, String name) {
+        Thread thread = new Thread(() -> {
+            try {
+                admissionQueue.admit(queryOnly);
+                admissionOrder.add(name);
+                admissionQueue.release(1_000_000);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private static void awaitDepth(AdmissionQueue admissionQueue, int depth) throws InterruptedException {
+        while (admissionQueue.depth() < depth)
+            Thread.sleep(1);
+    }
+
+    private static Operation[] generateQueryBatch(Random random) {
+        Operation[] batch = new Operation[OPERATIONS_PER_BATCH];
+        for (int i = 0 ; i < batch.length ; i++)
+            batch[i] = new LocalOperation(random.nextInt(NODES_RANGE), random.nextInt(NODES_RANGE),
+                                          OperationType.QUERY);
+        return batch;
+    }
+}
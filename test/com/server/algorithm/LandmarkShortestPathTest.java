@@ -0,0 +1,171 @@
+package com.server.algorithm;
+
+import com.Operation;
+import com.Operation.OperationType;
+import com.server.LocalOperation;
+import com.server.ServerImpl;
+import com.server.graph.ArrayGraphStore;
+import com.server.graph.NodeOrdering;
+import com.server.metrics.ServerMetrics;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LandmarkShortestPathTest {
+
+    private static final String INITIAL_GRAPH_FILENAME = "InitialGraph.txt";
+    private static final int NODES_RANGE = 80;
+    private static final int OPERATIONS_COUNT = 20_000;
+    private static final int GRID_SIDE = 300;
+    private static final int BENCHMARK_QUERIES = 200;
+
+    /**
+     * Tests that the exact queries match the stateless algorithm and that the bounds
+     * of the approximate queries contain the shortest path and are at most the
+     * accepted error apart while the graph is updated.
+     */
+    @Test
+    public void testBounds() throws Exception {
+        LandmarkShortestPath landmark = new LandmarkShortestPath
+                (INITIAL_GRAPH_FILENAME, new ArrayGraphStore(), NodeOrdering.NONE, 4);
+        StatelessShortestPath stateless = new StatelessShortestPath(INITIAL_GRAPH_FILENAME);
+        Random random = new Random(42);
+        for (int i = 0 ; i < OPERATIONS_COUNT ; i++) {
+            int a = random.nextInt(NODES_RANGE), b = random.nextInt(NODES_RANGE);
+            double operation = random.nextDouble();
+            if (operation < 0.1) assertEquals(stateless.addNewEdge(a, b), landmark.addNewEdge(a, b));
+            else if (operation < 0.2) assertEquals(stateless.deleteEdge(a, b), landmark.deleteEdge(a, b));
+            else {
+                landmark.updateStateIfAny();
+                int path = stateless.queryShortestPath(a, b), maxError = random.nextInt(4);
+                assertEquals(path, landmark.queryShortestPath(a, b));
+                assertEquals(stateless.queryBoundedShortestPath(a, b, maxError),
+                             landmark.queryBoundedShortestPath(a, b, maxError));
+                assertBounds(path, landmark.queryApproximateShortestPath(a, b, maxError), maxError);
+                assertBounds(path, landmark.queryApproximateShortestPath(a, b, Integer.MAX_VALUE),
+                             Integer.MAX_VALUE);
+            }
+        }
+    }
+
+    /**
+     * Tests the results of the approximate queries sent in batches updating the graph:
+     * two values per query, exact when no error is accepted and exact with any
+     * algorithm.
+     */
+    @Test
+    public void testApproximateBatch() throws Exception {
+        ServerImpl server = new ServerImpl(new LandmarkShortestPath(INITIAL_GRAPH_FILENAME), 50, 4);
+        ServerImpl exactServer = new ServerImpl(new StatefulShortestPath(INITIAL_GRAPH_FILENAME), 50, 4);
+        Random random = new Random(43);
+        for (int i = 0 ; i < 2_000 ; i++) {
+            int a = random.nextInt(NODES_RANGE), b = random.nextInt(NODES_RANGE);
+            Operation[] batch = {
+                    new LocalOperation(random.nextInt(NODES_RANGE), random.nextInt(NODES_RANGE),
+                            random.nextInt(3) == 0 ? OperationType.DELETE : OperationType.ADD),
+                    new LocalOperation(a, b, OperationType.QUERY),
+                    new LocalOperation(a, b, 0, OperationType.APPROXIMATE_QUERY),
+                    new LocalOperation(a, b, Integer.MAX_VALUE, OperationType.APPROXIMATE_QUERY)
+            };
+            List<Integer> result = server.executeBatch(batch);
+            int path = result.get(0);
+            assertEquals(5, result.size());
+            assertEquals(path, (int) result.get(1));
+            assertEquals(path, (int) result.get(2));
+            assertBounds(path, new int[] {result.get(3), result.get(4)}, Integer.MAX_VALUE);
+            assertEquals(List.of(path, path, path, path, path), exactServer.executeBatch(batch));
+        }
+        ServerMetrics metrics = server.getMetrics();
+        assertTrue(metrics.approximateAnswers.sum() > metrics.approximateFallbacks.sum());
+        System.out.println(metrics.approximateAnswers.sum() + " approximate queries answered from the landmarks, "
+                + metrics.approximateFallbacks.sum() + " fell back to an exact search");
+    }
+
+    /**
+     * Reports the latency of the exact and the approximate queries on a grid along
+     * with the average error of the estimates.
+     */
+    @Test
+    public void testApproximateLatency() throws Exception {
+        File gridFile = createGridFile();
+        LandmarkShortestPath landmark = new LandmarkShortestPath(gridFile.getPath());
+        ServerMetrics metrics = new ServerMetrics();
+        landmark.setMetrics(metrics);
+        Random random = new Random(42);
+        int[][] pairs = new int[BENCHMARK_QUERIES][];
+        for (int i = 0 ; i < pairs.length ; i++)
+            pairs[i] = new int[] {random.nextInt(GRID_SIDE * GRID_SIDE), random.nextInt(GRID_SIDE * GRID_SIDE)};
+
+        long exactStartTime = System.nanoTime();
+        int[] paths = new int[pairs.length];
+        for (int i = 0 ; i < pairs.length ; i++)
+            paths[i] = landmark.queryShortestPath(pairs[i][0], pairs[i][1]);
+        long exactTime = System.nanoTime() - exactStartTime;
+
+        long approximateStartTime = System.nanoTime();
+        int[][] estimates = new int[pairs.length][];
+        for (int i = 0 ; i < pairs.length ; i++)
+            estimates[i] = landmark.queryApproximateShortestPath(pairs[i][0], pairs[i][1], Integer.MAX_VALUE);
+        long approximateTime = System.nanoTime() - approximateStartTime;
+
+        long totalError = 0;
+        for (int i = 0 ; i < pairs.length ; i++) {
+            assertBounds(paths[i], estimates[i], Integer.MAX_VALUE);
+            if (paths[i] != -1) totalError += estimates[i][0] - paths[i];
+        }
+        assertEquals(0, metrics.approximateFallbacks.sum()); // Every node of the grid reaches the landmarks
+        System.out.println("Exact query " + String.format("%.1f", exactTime / 1e3 / pairs.length)
+                + " us, approximate query " + String.format("%.1f", approximateTime / 1e3 / pairs.length)
+                + " us, average error " + String.format("%.2f", (double) totalError / pairs.length) + " hops");
+    }
+
+    //
+    // Private Methods
+    //
+
+    /**
+     * Asserts that the bounds contain the shortest path and are at most maxError
+     * apart, or that they are -1 if the nodes aren't connected.
+     */
+    private static void assertBounds(int path, int[] bounds, int maxError) {
+        assertEquals(2, bounds.length);
+        if (path == -1) {
+            assertEquals(-1, bounds[0]);
+            assertEquals(-1, bounds[1]);
+            return;
+        }
+        assertTrue(bounds[1] <= path && path <= bounds[0]);
+        assertTrue(bounds[0] - bounds[1] <= maxError);
+    }
+
+    /**
+     * Writes a grid (with edges in both directions) in the initial graph format.
+     */
+    private static File createGridFile() throws Exception {
+        File gridFile = File.createTempFile("grid", ".txt");
+        gridFile.deleteOnExit();
+        try (PrintWriter writer = new PrintWriter(gridFile)) {
+            for (int row = 0 ; row < GRID_SIDE ; row++) {
+                for (int column = 0 ; column < GRID_SIDE ; column++) {
+                    int node = row * GRID_SIDE + column;
+                    if (column + 1 < GRID_SIDE) {
+                        writer.println(node + " " + (node + 1));
+                        writer.println((node + 1) + " " + node);
+                    }
+                    if (row + 1 < GRID_SIDE) {
+                        writer.println(node + " " + (node + GRID_SIDE));
+                        writer.println((node + GRID_SIDE) + " " + node);
+                    }
+                }
+            }
+            writer.println("S");
+        }
+        return gridFile;
+    }
+}
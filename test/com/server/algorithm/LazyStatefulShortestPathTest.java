@@ -0,0 +1,70 @@
+package com.server.algorithm;
+
+import com.server.metrics.ServerMetrics;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LazyStatefulShortestPathTest {
+
+    private static final String INITIAL_GRAPH_FILENAME = "InitialGraph.txt";
+    private static final int NODES_RANGE = 60;
+
+    /**
+     * Tests that the stale rows are re-calculated on query and refreshed in the
+     * background after an update.
+     */
+    @Test
+    public void testLazyRefresh() throws Exception {
+        LazyStatefulShortestPath lazy = new LazyStatefulShortestPath(INITIAL_GRAPH_FILENAME);
+        StatelessShortestPath stateless = new StatelessShortestPath(INITIAL_GRAPH_FILENAME);
+        ServerMetrics metrics = new ServerMetrics();
+        lazy.setMetrics(metrics);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(2, 2, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>());
+        lazy.setExecutor(executor);
+        Random random = new Random(35);
+        try {
+            for (int i = 0 ; i < 20 ; i++) {
+                // Using all the sources so that they all have rows
+                for (int a = 0 ; a < NODES_RANGE ; a++) {
+                    int b = random.nextInt(NODES_RANGE);
+                    assertEquals(stateless.queryShortestPath(a, b), lazy.queryShortestPath(a, b));
+                }
+
+                // Updating the graph and waiting for the background refresh
+                for (int j = 0 ; j < 10 ; j++) {
+                    int a = random.nextInt(NODES_RANGE), b = random.nextInt(NODES_RANGE);
+                    if (random.nextBoolean()) {
+                        lazy.addNewEdge(a, b);
+                        stateless.addNewEdge(a, b);
+                    }
+                    else {
+                        lazy.deleteEdge(a, b);
+                        stateless.deleteEdge(a, b);
+                    }
+                }
+                lazy.updateStateIfAny();
+                long deadline = System.currentTimeMillis() + 10_000;
+                while (executor.getActiveCount() + executor.getQueue().size() > 0
+                        && System.currentTimeMillis() < deadline)
+                    Thread.sleep(5);
+            }
+
+            // All the rows are refreshed so the queries don't re-calculate any row
+            long misses = metrics.cacheMisses.sum();
+            for (int a = 0 ; a < NODES_RANGE ; a++)
+                assertEquals(stateless.queryShortestPath(a, 0), lazy.queryShortestPath(a, 0));
+            assertEquals(misses, metrics.cacheMisses.sum());
+            assertTrue(metrics.cacheHits.sum() >= NODES_RANGE);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
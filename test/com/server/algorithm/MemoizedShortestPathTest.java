@@ -0,0 +1,75 @@
+package com.server.algorithm;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.concurrent.CyclicBarrier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MemoizedShortestPathTest {
+
+    private static final int CHAIN_LENGTH = 4000;
+    private static final int RUNS_COUNT = 2000;
+
+    /**
+     * Tests that concurrent first queries from the same source never leave a row
+     * marked as completed without the distances of the search which completed it:
+     * one query exhausts the chain (its target is unreachable) while the other
+     * stops after one hop.
+     */
+    @Test
+    public void testConcurrentQueriesFromSameSource() throws Exception {
+        File chainFile = createChainFile();
+        for (int run = 0 ; run < RUNS_COUNT ; run++) {
+            MemoizedShortestPath memoized = new MemoizedShortestPath(chainFile.getPath());
+            CyclicBarrier barrier = new CyclicBarrier(2);
+            int[] results = new int[2];
+            Thread exhaustingQuery = new Thread(() -> {
+                await(barrier);
+                results[0] = memoized.queryShortestPath(0, CHAIN_LENGTH + 1);
+            });
+            Thread shortQuery = new Thread(() -> {
+                await(barrier);
+                results[1] = memoized.queryShortestPath(0, 1);
+            });
+            exhaustingQuery.start();
+            shortQuery.start();
+            exhaustingQuery.join();
+            shortQuery.join();
+            assertEquals(-1, results[0]);
+            assertEquals(1, results[1]);
+            assertEquals(3000, memoized.queryShortestPath(0, 3000));
+            assertEquals(CHAIN_LENGTH - 1, memoized.queryShortestPath(0, CHAIN_LENGTH - 1));
+        }
+    }
+
+    //
+    // Private Methods
+    //
+
+    /**
+     * Writes a chain 0 -> 1 -> ... -> CHAIN_LENGTH - 1 and an edge between two nodes
+     * unreachable from the chain in the initial graph format.
+     */
+    private static File createChainFile() throws Exception {
+        File chainFile = File.createTempFile("chain", ".txt");
+        chainFile.deleteOnExit();
+        try (PrintWriter writer = new PrintWriter(chainFile)) {
+            for (int node = 0 ; node + 1 < CHAIN_LENGTH ; node++)
+                writer.println(node + " " + (node + 1));
+            writer.println(CHAIN_LENGTH + " " + (CHAIN_LENGTH + 1));
+            writer.println("S");
+        }
+        return chainFile;
+    }
+
+    private static void await(CyclicBarrier barrier) {
+        try {
+            barrier.await();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.server.cache;
+
+import com.Operation;
+import com.Operation.OperationType;
+import com.server.LocalOperation;
+import com.server.ServerImpl;
+import com.server.algorithm.StatelessShortestPath;
+import com.server.metrics.ServerMetrics;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResultCacheTest {
+
+    private static final String INITIAL_GRAPH_FILENAME = "InitialGraph.txt";
+    private static final int TRIALS = 20;
+    private static final int OPERATIONS_PER_BATCH = 500;
+    private static final int NODES_RANGE = 60;
+
+    /**
+     * Tests the lookups, the invalidation by the version and the clock eviction.
+     */
+    @Test
+    public void testCache() {
+        ResultCache resultCache = new ResultCache(16);
+        resultCache.put(1, 2, 0, 3);
+        resultCache.put(2, 1, 0, -1);
+        assertEquals(3, resultCache.get(1, 2, 0));
+        assertEquals(-1, resultCache.get(2, 1, 0));
+        assertEquals(ResultCache.MISSING, resultCache.get(1, 3, 0));
+        assertEquals(ResultCache.MISSING, resultCache.get(1, 2, 1));
+
+        // Filling the cache while using the first entry keeps it cached
+        resultCache.put(1, 2, 1, 4);
+        for (int b = 0 ; b < 100 * resultCache.capacity() ; b++) {
+            assertEquals(4, resultCache.get(1, 2, 1));
+            resultCache.put(0, b, 1, b);
+        }
+        assertEquals(4, resultCache.get(1, 2, 1));
+    }
+
+    /**
+     * Tests that a server using the cache returns the same results and only misses
+     * the cache after an effective change of the graph.
+     */
+    @Test
+    public void testServerCache() throws Exception {
+        ServerImpl server = new ServerImpl(new StatelessShortestPath(INITIAL_GRAPH_FILENAME), 50, 4);
+        ServerImpl cachedServer = new ServerImpl(new StatelessShortestPath(INITIAL_GRAPH_FILENAME), 50, 4);
+        cachedServer.setResultCache(new ResultCache(1 << 12));
+        ServerMetrics metrics = cachedServer.getMetrics();
+        Random random = new Random(39);
+        for (int i = 0 ; i < TRIALS ; i++) {
+            Operation[] batch = generateBatch(random);
+            assertArrayEquals(server.executeBatch(batch).toArray(), cachedServer.executeBatch(batch).toArray());
+        }
+
+        // Repeating the queries after adding an existing edge
+        Operation[] queries = new Operation[NODES_RANGE];
+        for (int a = 0 ; a < NODES_RANGE ; a++)
+            queries[a] = new LocalOperation(a, (a + 1) % NODES_RANGE, OperationType.QUERY);
+        cachedServer.executeBatch(new Operation[] {new LocalOperation(0, 1, OperationType.ADD)});
+        server.executeBatch(new Operation[] {new LocalOperation(0, 1, OperationType.ADD)});
+        Object[] expectedResult = cachedServer.executeBatch(queries).toArray();
+        long misses = metrics.resultCacheMisses.sum();
+        cachedServer.executeBatch(new Operation[] {new LocalOperation(0, 1, OperationType.ADD)});
+        long hits = metrics.resultCacheHits.sum();
+        assertArrayEquals(expectedResult, cachedServer.executeBatch(queries).toArray());
+        assertEquals(misses, metrics.resultCacheMisses.sum());
+        assertEquals(hits + NODES_RANGE, metrics.resultCacheHits.sum());
+
+        // Removing the edge invalidates the results
+        cachedServer.executeBatch(new Operation[] {new LocalOperation(0, 1, OperationType.DELETE)});
+        server.executeBatch(new Operation[] {new LocalOperation(0, 1, OperationType.DELETE)});
+        assertArrayEquals(server.executeBatch(queries).toArray(), cachedServer.executeBatch(queries).toArray());
+        assertTrue(metrics.resultCacheMisses.sum() >= misses + NODES_RANGE);
+    }
+
+    //
+    // Private Methods
+    //
+
+    private static Operation[] generateBatch(Random random) {
+        Operation[] batch = new Operation[OPERATIONS_PER_BATCH];
+        for (int i = 0 ; i < batch.length ; i++) {
+            double operation = random.nextDouble();
+            OperationType operationType = operation < 0.8 ? OperationType.QUERY
+                    : operation < 0.85 ? OperationType.BOUNDED_QUERY
+                    : operation < 0.95 ? OperationType.ADD : OperationType.DELETE;
+            batch[i] = new LocalOperation(random.nextInt(NODES_RANGE), random.nextInt(NODES_RANGE),
+                                          random.nextInt(5), operationType);
+        }
+        return batch;
+    }
+}
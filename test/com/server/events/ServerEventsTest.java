@@ -0,0 +1,153 @@
+package com.server.events;
+
+import com.Operation;
+import com.Operation.OperationType;
+import com.server.LocalOperation;
+import com.server.ServerImpl;
+import com.server.algorithm.StatefulShortestPath;
+import com.server.algorithm.StatelessShortestPath;
+import com.server.logging.SlowQueryLog;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.apache.logging.log4j.LogManager;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ServerEventsTest {
+
+    private static final String INITIAL_GRAPH_FILENAME = "InitialGraph.txt";
+    private static final int NODES_RANGE = 60;
+    private static final int BATCHES_COUNT = 20;
+    private static final int OPERATIONS_PER_BATCH = 500;
+
+    /**
+     * Tests that a flight recording contains an event per batch, per transaction, per
+     * query (with its BFS work) and per state rebuild.
+     */
+    @Test
+    public void testFlightRecorderEvents() throws Exception {
+        ServerImpl server = new ServerImpl(new StatelessShortestPath(INITIAL_GRAPH_FILENAME), 50, 4);
+        File recordingFile = File.createTempFile("server", ".jfr");
+        recordingFile.deleteOnExit();
+        int transactions = 0;
+        try (Recording recording = new Recording()) {
+            recording.enable(BatchEvent.class);
+            recording.enable(TransactionEvent.class);
+            recording.enable(QueryEvent.class).withThreshold(Duration.ZERO);
+            recording.enable(StateRebuildEvent.class);
+            recording.start();
+            Random random = new Random(44);
+            for (int i = 0 ; i < BATCHES_COUNT ; i++) {
+                // A batch with updates has a query and an update transaction
+                int results = server.executeBatch(generateBatch(random)).size();
+                transactions += results == OPERATIONS_PER_BATCH ? 1 : 2;
+            }
+            recording.stop();
+            recording.dump(recordingFile.toPath());
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(recordingFile.toPath());
+        int batches = 0, queries = 0, rebuilds = 0, recordedTransactions = 0;
+        long visitedNodes = 0;
+        for (RecordedEvent event : events) {
+            switch (event.getEventType().getName()) {
+                case "com.server.Batch" -> {
+                    batches++;
+                    assertEquals(OPERATIONS_PER_BATCH, event.getInt("operations"));
+                }
+                case "com.server.Transaction" -> recordedTransactions++;
+                case "com.server.Query" -> {
+                    queries++;
+                    assertEquals("StatelessShortestPath", event.getString("algorithm"));
+                    assertTrue(event.getLong("batchId") > 0);
+                    visitedNodes += event.getLong("visitedNodes");
+                }
+                case "com.server.StateRebuild" -> rebuilds++;
+                default -> { }
+            }
+        }
+        assertEquals(BATCHES_COUNT, batches);
+        assertEquals(transactions, recordedTransactions);
+        assertEquals(server.getMetrics().queries.sum(), queries);
+        assertEquals(server.getMetrics().updateTransactionLatency.snapshot(1).getCount(), rebuilds);
+        assertTrue(visitedNodes > 0);
+    }
+
+    /**
+     * Tests that only the queries above the threshold are counted as slow and that the
+     * results aren't affected by the tracing.
+     */
+    @Test
+    public void testSlowQueryLog() throws Exception {
+        ServerImpl server = new ServerImpl(new StatefulShortestPath(INITIAL_GRAPH_FILENAME), 50, 4);
+        ServerImpl referenceServer = new ServerImpl(new StatefulShortestPath(INITIAL_GRAPH_FILENAME), 50, 4);
+        SlowQueryLog allQueriesLog = new SlowQueryLog(LogManager.getLogger(ServerEventsTest.class), 0, 100, 64);
+        server.setSlowQueryLog(allQueriesLog);
+        Random random = new Random(45);
+        for (int i = 0 ; i < BATCHES_COUNT ; i++) {
+            Operation[] batch = generateBatch(random);
+            assertEquals(referenceServer.executeBatch(batch), server.executeBatch(batch));
+        }
+        assertEquals(server.getMetrics().queries.sum(), allQueriesLog.getSlowQueries());
+
+        SlowQueryLog noQueriesLog = new SlowQueryLog(LogManager.getLogger(ServerEventsTest.class),
+                                                     60_000_000, 1, 64);
+        server.setSlowQueryLog(noQueriesLog);
+        server.executeBatch(generateBatch(random));
+        assertEquals(0, noQueriesLog.getSlowQueries());
+        allQueriesLog.close();
+        server.shutdown();
+        referenceServer.shutdown();
+    }
+
+    /**
+     * Tests that shutting down the server stops the drainer threads of its batch log
+     * and of its slow query log.
+     */
+    @Test
+    public void testShutdownStopsLogs() throws Exception {
+        int batchLogDrainers = countThreads("batch-log-drainer");
+        int slowQueryLogDrainers = countThreads("slow-query-log-drainer");
+        ServerImpl server = new ServerImpl(new StatelessShortestPath(INITIAL_GRAPH_FILENAME), 50, 4);
+        server.setSlowQueryLog(new SlowQueryLog(LogManager.getLogger(ServerEventsTest.class), 0, 1, 64));
+        server.executeBatch(generateBatch(new Random(46)));
+        assertEquals(batchLogDrainers + 1, countThreads("batch-log-drainer"));
+        assertEquals(slowQueryLogDrainers + 1, countThreads("slow-query-log-drainer"));
+        server.shutdown();
+        assertEquals(batchLogDrainers, countThreads("batch-log-drainer"));
+        assertEquals(slowQueryLogDrainers, countThreads("slow-query-log-drainer"));
+    }
+
+    //
+    // Private Methods
+    //
+
+    private static int countThreads(String name) {
+        return (int) Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.isAlive() && thread.getName().equals(name)).count();
+    }
+
+    /**
+     * Generates a batch whose last operations are updates, so it has one or two
+     * transactions.
+     */
+    private static Operation[] generateBatch(Random random) {
+        Operation[] batch = new Operation[OPERATIONS_PER_BATCH];
+        int queries = OPERATIONS_PER_BATCH - random.nextInt(2) * 10;
+        for (int i = 0 ; i < batch.length ; i++) {
+            OperationType operationType = i < queries ? OperationType.QUERY
+                    : random.nextBoolean() ? OperationType.ADD : OperationType.DELETE;
+            batch[i] = new LocalOperation(random.nextInt(NODES_RANGE), random.nextInt(NODES_RANGE),
+                                          operationType);
+        }
+        return batch;
+    }
+}
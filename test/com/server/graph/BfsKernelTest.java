@@ -0,0 +1,161 @@
+package com.server.graph;
+
+import com.server.algorithm.StatelessShortestPath;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BfsKernelTest {
+
+    private static final int NODES_RANGE = 100_000;
+    private static final int EDGES_COUNT = 400_000;
+    private static final int WARM_UP_QUERIES = 2_000;
+    private static final int MEASURED_QUERIES = 1_000;
+    private static final long MAX_BYTES_PER_QUERY = 64;
+    private static final int PARALLEL_NODES_RANGE = 200_000;
+    private static final int PARALLEL_EDGES_COUNT = 1_600_000;
+    private static final int PARALLEL_SEARCHES = 20;
+
+    /**
+     * Tests adding and removing edges of the graph store.
+     */
+    @Test
+    public void testGraphStore() {
+        ArrayGraphStore graph = new ArrayGraphStore();
+        assertTrue(graph.addEdge(1, 2));
+        assertFalse(graph.addEdge(1, 2));
+        assertTrue(graph.addEdge(1, 3));
+        assertTrue(graph.addEdge(3, 1));
+        assertEquals(3, graph.nodeCount());
+        assertEquals(-1, graph.indexOf(4));
+        assertEquals(2, graph.degree(graph.indexOf(1)));
+        assertEquals(0, graph.degree(graph.indexOf(2)));
+
+        assertTrue(graph.removeEdge(1, 2));
+        assertFalse(graph.removeEdge(1, 2));
+        assertFalse(graph.removeEdge(4, 1));
+        int indexOfOne = graph.indexOf(1);
+        int[] neighbours = graph.neighbours(indexOfOne, new int[graph.degree(indexOfOne)]);
+        assertEquals(1, graph.degree(indexOfOne));
+        assertEquals(3, graph.nodeAt(neighbours[0]));
+
+        // Growing beyond the initial capacity
+        graph = new ArrayGraphStore();
+        for (int node = 0 ; node < 1_000 ; node++)
+            graph.addEdge(node, node + 1);
+        BfsKernel bfsKernel = BfsKernel.forCurrentThread();
+        assertEquals(999, bfsKernel.search(graph, graph.indexOf(0), graph.indexOf(999),
+                Integer.MAX_VALUE, null));
+        assertEquals(-1, bfsKernel.search(graph, graph.indexOf(0), graph.indexOf(999), 998, null));
+        assertArrayEquals(new int[] {1, 2, 3},
+                bfsKernel.nearest(graph, graph.indexOf(0), 3, null));
+    }
+
+    /**
+     * Measures the bytes allocated per query by the stateless algorithm on a large
+     * random graph after warming up, which should be almost zero.
+     */
+    @Test
+    public void testAllocationRate() throws IOException {
+        File graphFile = File.createTempFile("LargeGraph", ".txt");
+        graphFile.deleteOnExit();
+        Random random = new Random(36);
+        try (PrintWriter writer = new PrintWriter(graphFile)) {
+            for (int i = 0 ; i < EDGES_COUNT ; i++)
+                writer.println(random.nextInt(NODES_RANGE) + " " + random.nextInt(NODES_RANGE));
+            writer.println("S");
+        }
+        StatelessShortestPath stateless = new StatelessShortestPath(graphFile.getPath());
+        int[] sources = new int[MEASURED_QUERIES], targets = new int[MEASURED_QUERIES];
+        for (int i = 0 ; i < MEASURED_QUERIES ; i++) {
+            sources[i] = random.nextInt(NODES_RANGE);
+            targets[i] = random.nextInt(NODES_RANGE);
+        }
+        for (int i = 0 ; i < WARM_UP_QUERIES ; i++)
+            stateless.queryShortestPath(random.nextInt(NODES_RANGE), random.nextInt(NODES_RANGE));
+
+        com.sun.management.ThreadMXBean threadMXBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long startTime = System.nanoTime();
+        long startBytes = threadMXBean.getThreadAllocatedBytes(threadId);
+        long checksum = 0;
+        for (int i = 0 ; i < MEASURED_QUERIES ; i++)
+            checksum += stateless.queryShortestPath(sources[i], targets[i]);
+        long allocatedBytes = threadMXBean.getThreadAllocatedBytes(threadId) - startBytes;
+        long elapsedTime = System.nanoTime() - startTime;
+
+        long bytesPerQuery = allocatedBytes / MEASURED_QUERIES;
+        System.out.println("Allocated bytes per query: " + bytesPerQuery
+                + ", average query time: " + elapsedTime / MEASURED_QUERIES / 1_000 + " us"
+                + " (checksum " + checksum + ")");
+        assertTrue(bytesPerQuery <= MAX_BYTES_PER_QUERY);
+    }
+
+    /**
+     * Tests that the searches whose levels are expanded in parallel find the same
+     * distances and paths as the serial ones and reports their time (the speed-up
+     * depends on the number of cores).
+     */
+    @Test
+    public void testParallelSearch() {
+        Random random = new Random(37);
+        ArrayGraphStore graph = new ArrayGraphStore();
+        for (int i = 0 ; i < PARALLEL_EDGES_COUNT ; i++)
+            graph.addEdge(random.nextInt(PARALLEL_NODES_RANGE), random.nextInt(PARALLEL_NODES_RANGE));
+        graph.compact();
+        int nodeCount = graph.nodeCount();
+        int[] sources = new int[PARALLEL_SEARCHES], targets = new int[PARALLEL_SEARCHES];
+        for (int i = 0 ; i < PARALLEL_SEARCHES ; i++) {
+            sources[i] = random.nextInt(nodeCount);
+            targets[i] = random.nextInt(nodeCount);
+        }
+
+        BfsKernel bfsKernel = BfsKernel.forCurrentThread();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            BfsKernel.setParallelExpansion(Integer.MAX_VALUE, pool);
+            int[][] serialDistances = new int[PARALLEL_SEARCHES][nodeCount];
+            int[] serialPaths = new int[PARALLEL_SEARCHES];
+            long serialStartTime = System.nanoTime();
+            for (int i = 0 ; i < PARALLEL_SEARCHES ; i++) {
+                bfsKernel.search(graph, sources[i], -1, Integer.MAX_VALUE, serialDistances[i]);
+                serialPaths[i] = bfsKernel.search(graph, sources[i], targets[i], Integer.MAX_VALUE, null);
+                assertEquals(0, bfsKernel.getParallelLevels());
+            }
+            long serialTime = System.nanoTime() - serialStartTime;
+
+            BfsKernel.setParallelExpansion(1024, pool);
+            int[] parallelDistances = new int[nodeCount];
+            long parallelStartTime = System.nanoTime();
+            for (int i = 0 ; i < PARALLEL_SEARCHES ; i++) {
+                Arrays.fill(parallelDistances, 0);
+                bfsKernel.search(graph, sources[i], -1, Integer.MAX_VALUE, parallelDistances);
+                assertTrue(bfsKernel.getParallelLevels() > 0);
+                assertArrayEquals(serialDistances[i], parallelDistances);
+                assertEquals(serialPaths[i],
+                             bfsKernel.search(graph, sources[i], targets[i], Integer.MAX_VALUE, null));
+                assertEquals(serialPaths[i],
+                             bfsKernel.search(graph, sources[i], targets[i], serialPaths[i], null));
+            }
+            long parallelTime = System.nanoTime() - parallelStartTime;
+            System.out.println("Serial search " + serialTime / PARALLEL_SEARCHES / 1_000 + " us, parallel search "
+                    + parallelTime / PARALLEL_SEARCHES / 1_000 + " us (" + pool.getParallelism()
+                    + " workers, " + Runtime.getRuntime().availableProcessors() + " cores)");
+        } finally {
+            BfsKernel.setParallelExpansion(BfsKernel.DEFAULT_PARALLEL_THRESHOLD, ForkJoinPool.commonPool());
+            pool.shutdown();
+        }
+    }
+}
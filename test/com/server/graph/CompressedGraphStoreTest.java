@@ -0,0 +1,92 @@
+package com.server.graph;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompressedGraphStoreTest {
+
+    private static final int NODES_RANGE = 2_000;
+    private static final int OPERATIONS_COUNT = 300_000;
+    private static final int BENCHMARK_NODES = 200_000;
+    private static final int BENCHMARK_EDGES = 2_000_000;
+    private static final int BENCHMARK_QUERIES = 200;
+
+    /**
+     * Tests that the compressed store has the same edges as the uncompressed one
+     * after random updates (spanning several compactions).
+     */
+    @Test
+    public void testSameEdges() {
+        ArrayGraphStore expected = new ArrayGraphStore();
+        CompressedGraphStore actual = new CompressedGraphStore();
+        Random random = new Random(37);
+        for (int i = 0 ; i < OPERATIONS_COUNT ; i++) {
+            int a = random.nextInt(NODES_RANGE), b = random.nextInt(NODES_RANGE);
+            if (random.nextDouble() < 0.7) assertEquals(expected.addEdge(a, b), actual.addEdge(a, b));
+            else assertEquals(expected.removeEdge(a, b), actual.removeEdge(a, b));
+            if (i == OPERATIONS_COUNT / 3) actual.compact();
+        }
+        assertEquals(expected.nodeCount(), actual.nodeCount());
+        assertEquals(expected.edgeCount(), actual.edgeCount());
+        int[] buffer = new int[NODES_RANGE];
+        for (int index = 0 ; index < expected.nodeCount() ; index++) {
+            assertEquals(expected.nodeAt(index), actual.nodeAt(index));
+            assertArrayEquals(sortedNeighbours(expected, index, buffer),
+                              sortedNeighbours(actual, index, buffer));
+        }
+    }
+
+    /**
+     * Reports the memory per edge and the BFS throughput of both stores on a large
+     * random graph. The compressed store must use less memory.
+     */
+    @Test
+    public void testMemoryAndThroughput() {
+        GraphStore[] graphStores = {new ArrayGraphStore(), new CompressedGraphStore()};
+        long[] sizes = new long[graphStores.length];
+        for (int i = 0 ; i < graphStores.length ; i++) {
+            GraphStore graph = graphStores[i];
+            Random random = new Random(37);
+            for (int j = 0 ; j < BENCHMARK_EDGES ; j++) {
+                // Most edges connect close nodes like in real graphs
+                int a = random.nextInt(BENCHMARK_NODES);
+                int b = random.nextInt(4) == 0 ? random.nextInt(BENCHMARK_NODES)
+                        : Math.floorMod(a + random.nextInt(64) - 32, BENCHMARK_NODES);
+                graph.addEdge(a, b);
+            }
+            graph.compact();
+            sizes[i] = graph.sizeInBytes();
+
+            BfsKernel bfsKernel = BfsKernel.forCurrentThread();
+            long checksum = 0, startTime = 0;
+            for (int j = -BENCHMARK_QUERIES ; j < BENCHMARK_QUERIES ; j++) {
+                if (j == 0) startTime = System.nanoTime(); // The first half warms up
+                checksum += bfsKernel.search(graph, random.nextInt(graph.nodeCount()),
+                        random.nextInt(graph.nodeCount()), Integer.MAX_VALUE, null);
+            }
+            long elapsedTime = System.nanoTime() - startTime;
+            System.out.println(graph.getClass().getSimpleName() + ": "
+                    + String.format("%.2f", (double) sizes[i] / graph.edgeCount()) + " bytes per edge, "
+                    + String.format("%.0f", BENCHMARK_QUERIES * 1e9 / elapsedTime) + " BFS per second"
+                    + " (checksum " + checksum + ")");
+        }
+        assertEquals(graphStores[0].edgeCount(), graphStores[1].edgeCount());
+        assertTrue(sizes[1] < sizes[0]);
+    }
+
+    //
+    // Private Methods
+    //
+
+    private static int[] sortedNeighbours(GraphStore graph, int index, int[] buffer) {
+        int[] neighbours = Arrays.copyOf(graph.neighbours(index, buffer), graph.degree(index));
+        Arrays.sort(neighbours);
+        return neighbours;
+    }
+}
@@ -0,0 +1,174 @@
+package com.server.graph;
+
+import com.server.algorithm.StatelessShortestPath;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NodeOrderingTest {
+
+    private static final String INITIAL_GRAPH_FILENAME = "InitialGraph.txt";
+    private static final int NODES_RANGE = 80;
+    private static final int OPERATIONS_COUNT = 5_000;
+    private static final int GRID_SIDE = 400;
+    private static final int BENCHMARK_QUERIES = 100;
+
+    /**
+     * Tests that the algorithms answer the same with any node ordering, including
+     * after updates adding new nodes.
+     */
+    @Test
+    public void testSameAnswers() throws Exception {
+        for (NodeOrdering nodeOrdering : NodeOrdering.values()) {
+            StatelessShortestPath actual = new StatelessShortestPath
+                    (INITIAL_GRAPH_FILENAME, new ArrayGraphStore(), nodeOrdering);
+            StatelessShortestPath reference = new StatelessShortestPath(INITIAL_GRAPH_FILENAME);
+            Random random = new Random(42);
+            for (int i = 0 ; i < OPERATIONS_COUNT ; i++) {
+                int a = random.nextInt(NODES_RANGE), b = random.nextInt(NODES_RANGE);
+                double operation = random.nextDouble();
+                if (operation < 0.1) assertEquals(reference.addNewEdge(a, b), actual.addNewEdge(a, b));
+                else if (operation < 0.15) assertEquals(reference.deleteEdge(a, b), actual.deleteEdge(a, b));
+                else assertEquals(reference.queryShortestPath(a, b), actual.queryShortestPath(a, b));
+            }
+        }
+    }
+
+    /**
+     * Tests that the order is a permutation, that the copied graph indexes the nodes
+     * in that order and that it has the same edges.
+     */
+    @Test
+    public void testCopy() {
+        GraphStore graph = createShuffledGrid(new Random(42));
+        for (NodeOrdering nodeOrdering : NodeOrdering.values()) {
+            int[] order = nodeOrdering.order(graph);
+            int[] sortedOrder = order.clone();
+            Arrays.sort(sortedOrder);
+            for (int index = 0 ; index < graph.nodeCount() ; index++)
+                assertEquals(index, sortedOrder[index]);
+
+            GraphStore copiedGraph = new CompressedGraphStore();
+            nodeOrdering.copy(graph, copiedGraph);
+            assertEquals(graph.nodeCount(), copiedGraph.nodeCount());
+            assertEquals(graph.edgeCount(), copiedGraph.edgeCount());
+            int[] buffer = new int[8], copiedBuffer = new int[8];
+            for (int index = 0 ; index < graph.nodeCount() ; index++) {
+                assertEquals(graph.nodeAt(order[index]), copiedGraph.nodeAt(index));
+                int copiedIndex = copiedGraph.indexOf(graph.nodeAt(index));
+                assertArrayEquals(neighbourIds(graph, index, buffer),
+                                  neighbourIds(copiedGraph, copiedIndex, copiedBuffer));
+            }
+        }
+    }
+
+    /**
+     * Reports the average index gap of the edges and the BFS throughput of a grid
+     * whose node ids are shuffled with every ordering. The reordered graphs must
+     * have closer neighbours.
+     */
+    @Test
+    public void testLocality() {
+        GraphStore graph = createShuffledGrid(new Random(42));
+        double[] averageGaps = new double[NodeOrdering.values().length];
+        long[] checksums = new long[averageGaps.length];
+        for (NodeOrdering nodeOrdering : NodeOrdering.values()) {
+            GraphStore orderedGraph = new ArrayGraphStore();
+            nodeOrdering.copy(graph, orderedGraph);
+            orderedGraph.compact();
+            long totalGap = 0;
+            int[] buffer = new int[8];
+            for (int index = 0 ; index < orderedGraph.nodeCount() ; index++) {
+                int degree = orderedGraph.degree(index);
+                int[] neighbours = orderedGraph.neighbours(index, buffer);
+                for (int i = 0 ; i < degree ; i++)
+                    totalGap += Math.abs(neighbours[i] - index);
+            }
+            averageGaps[nodeOrdering.ordinal()] = (double) totalGap / orderedGraph.edgeCount();
+
+            Random random = new Random(42);
+            BfsKernel bfsKernel = BfsKernel.forCurrentThread();
+            long startTime = 0;
+            for (int j = -BENCHMARK_QUERIES ; j < BENCHMARK_QUERIES ; j++) {
+                if (j == 0) startTime = System.nanoTime(); // The first half warms up
+                int a = graph.nodeAt(random.nextInt(graph.nodeCount()));
+                int b = graph.nodeAt(random.nextInt(graph.nodeCount()));
+                checksums[nodeOrdering.ordinal()] += bfsKernel.search(orderedGraph, orderedGraph.indexOf(a),
+                        orderedGraph.indexOf(b), Integer.MAX_VALUE, null);
+            }
+            long elapsedTime = System.nanoTime() - startTime;
+            System.out.println(nodeOrdering + ": average edge gap "
+                    + String.format("%.1f", averageGaps[nodeOrdering.ordinal()]) + ", "
+                    + String.format("%.0f", BENCHMARK_QUERIES * 1e9 / elapsedTime) + " BFS per second");
+        }
+        assertEquals(checksums[NodeOrdering.NONE.ordinal()], checksums[NodeOrdering.BFS.ordinal()]);
+        assertEquals(checksums[NodeOrdering.NONE.ordinal()], checksums[NodeOrdering.RCM.ordinal()]);
+        assertTrue(averageGaps[NodeOrdering.BFS.ordinal()] < averageGaps[NodeOrdering.NONE.ordinal()] / 10);
+        assertTrue(averageGaps[NodeOrdering.RCM.ordinal()] < averageGaps[NodeOrdering.NONE.ordinal()] / 10);
+    }
+
+    //
+    // Private Methods
+    //
+
+    /**
+     * Returns a grid (with edges in both directions) whose node ids and edges are
+     * shuffled, so the file order has no locality.
+     */
+    private static GraphStore createShuffledGrid(Random random) {
+        int nodeCount = GRID_SIDE * GRID_SIDE;
+        int[] ids = new int[nodeCount];
+        for (int i = 0 ; i < nodeCount ; i++)
+            ids[i] = i;
+        shuffle(ids, random);
+        long[] edges = new long[4 * nodeCount];
+        int edgeCount = 0;
+        for (int row = 0 ; row < GRID_SIDE ; row++) {
+            for (int column = 0 ; column < GRID_SIDE ; column++) {
+                int node = row * GRID_SIDE + column;
+                if (column + 1 < GRID_SIDE) {
+                    edges[edgeCount++] = ((long) ids[node] << 32) | ids[node + 1];
+                    edges[edgeCount++] = ((long) ids[node + 1] << 32) | ids[node];
+                }
+                if (row + 1 < GRID_SIDE) {
+                    edges[edgeCount++] = ((long) ids[node] << 32) | ids[node + GRID_SIDE];
+                    edges[edgeCount++] = ((long) ids[node + GRID_SIDE] << 32) | ids[node];
+                }
+            }
+        }
+        for (int i = edgeCount - 1 ; i > 0 ; i--) {
+            int j = random.nextInt(i + 1);
+            long edge = edges[i];
+            edges[i] = edges[j];
+            edges[j] = edge;
+        }
+        GraphStore graph = new ArrayGraphStore();
+        for (int i = 0 ; i < edgeCount ; i++)
+            graph.addEdge((int) (edges[i] >>> 32), (int) edges[i]);
+        return graph;
+    }
+
+    private static void shuffle(int[] array, Random random) {
+        for (int i = array.length - 1 ; i > 0 ; i--) {
+            int j = random.nextInt(i + 1);
+            int value = array[i];
+            array[i] = array[j];
+            array[j] = value;
+        }
+    }
+
+    private static int[] neighbourIds(GraphStore graph, int index, int[] buffer) {
+        int degree = graph.degree(index);
+        int[] neighbours = graph.neighbours(index, buffer);
+        int[] ids = new int[degree];
+        for (int i = 0 ; i < degree ; i++)
+            ids[i] = graph.nodeAt(neighbours[i]);
+        Arrays.sort(ids);
+        return ids;
+    }
+}
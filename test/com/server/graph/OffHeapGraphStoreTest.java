@@ -0,0 +1,105 @@
+package com.server.graph;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class OffHeapGraphStoreTest {
+
+    private static final int NODES_RANGE = 2_000;
+    private static final int OPERATIONS_COUNT = 300_000;
+    private static final int SMALL_CHUNK_SHIFT = 6; // Forces the lists to straddle the chunks
+    private static final int BENCHMARK_NODES = 500_000;
+    private static final int BENCHMARK_EDGES = 5_000_000;
+    private static final int BENCHMARK_QUERIES = 100;
+
+    /**
+     * Tests that the off-heap store (direct and mapped) has the same edges as the
+     * uncompressed one after random updates (spanning several compactions).
+     */
+    @Test
+    public void testSameEdges() throws Exception {
+        File directory = Files.createTempDirectory("graph").toFile();
+        directory.deleteOnExit();
+        assertSameEdges(new OffHeapGraphStore(null, SMALL_CHUNK_SHIFT));
+        assertSameEdges(new OffHeapGraphStore(directory, SMALL_CHUNK_SHIFT + 4));
+    }
+
+    /**
+     * Reports the time of a full GC and the BFS throughput with the graph in the
+     * heap and outside it.
+     */
+    @Test
+    public void testGarbageCollection() {
+        GraphStore[] graphStores = {new ArrayGraphStore(), new OffHeapGraphStore()};
+        long[] checksums = new long[graphStores.length];
+        for (int i = 0 ; i < graphStores.length ; i++) {
+            GraphStore graph = graphStores[i];
+            Random random = new Random(38);
+            for (int j = 0 ; j < BENCHMARK_EDGES ; j++)
+                graph.addEdge(random.nextInt(BENCHMARK_NODES), random.nextInt(BENCHMARK_NODES));
+            graph.compact();
+
+            long gcTime = totalGcTime();
+            System.gc();
+            gcTime = totalGcTime() - gcTime;
+
+            BfsKernel bfsKernel = BfsKernel.forCurrentThread();
+            long startTime = 0;
+            for (int j = -BENCHMARK_QUERIES ; j < BENCHMARK_QUERIES ; j++) {
+                if (j == 0) startTime = System.nanoTime(); // The first half warms up
+                checksums[i] += bfsKernel.search(graph, random.nextInt(graph.nodeCount()),
+                        random.nextInt(graph.nodeCount()), Integer.MAX_VALUE, null);
+            }
+            long elapsedTime = System.nanoTime() - startTime;
+            System.out.println(graph.getClass().getSimpleName() + ": full GC " + gcTime + " ms, "
+                    + String.format("%.0f", BENCHMARK_QUERIES * 1e9 / elapsedTime) + " BFS per second");
+            graphStores[i] = null; // Leaving the heap to the next store
+        }
+        assertEquals(checksums[0], checksums[1]);
+    }
+
+    //
+    // Private Methods
+    //
+
+    private static void assertSameEdges(OffHeapGraphStore actual) {
+        ArrayGraphStore expected = new ArrayGraphStore();
+        Random random = new Random(38);
+        for (int i = 0 ; i < OPERATIONS_COUNT ; i++) {
+            int a = random.nextInt(NODES_RANGE), b = random.nextInt(NODES_RANGE);
+            if (random.nextDouble() < 0.7) assertEquals(expected.addEdge(a, b), actual.addEdge(a, b));
+            else assertEquals(expected.removeEdge(a, b), actual.removeEdge(a, b));
+            if (i == OPERATIONS_COUNT / 3) actual.compact();
+        }
+        assertEquals(expected.nodeCount(), actual.nodeCount());
+        assertEquals(expected.edgeCount(), actual.edgeCount());
+        int[] buffer = new int[NODES_RANGE];
+        for (int index = 0 ; index < expected.nodeCount() ; index++) {
+            assertEquals(expected.nodeAt(index), actual.nodeAt(index));
+            assertArrayEquals(sortedNeighbours(expected, index, buffer),
+                              sortedNeighbours(actual, index, buffer));
+        }
+    }
+
+    private static int[] sortedNeighbours(GraphStore graph, int index, int[] buffer) {
+        int[] neighbours = Arrays.copyOf(graph.neighbours(index, buffer), graph.degree(index));
+        Arrays.sort(neighbours);
+        return neighbours;
+    }
+
+    private static long totalGcTime() {
+        long gcTime = 0;
+        for (GarbageCollectorMXBean garbageCollector : ManagementFactory.getGarbageCollectorMXBeans())
+            gcTime += garbageCollector.getCollectionTime();
+        return gcTime;
+    }
+}
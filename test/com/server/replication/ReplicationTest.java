@@ -0,0 +1,133 @@
+package com.server.replication;
+
+import com.Operation;
+import com.Operation.OperationType;
+import com.VersionedServer;
+import com.client.BatchGenerator;
+import com.client.OperationImpl;
+import com.client.ReplicatedServer;
+import com.server.LocalOperation;
+import com.server.ServerImpl;
+import com.server.algorithm.LandmarkShortestPath;
+import com.server.algorithm.MemoizedShortestPath;
+import com.server.algorithm.StatefulShortestPath;
+import com.server.algorithm.StatelessShortestPath;
+import com.server.graph.ArrayGraphStore;
+import com.server.graph.NodeOrdering;
+import org.junit.jupiter.api.Test;
+
+import java.net.ServerSocket;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ReplicationTest {
+
+    private static final String INITIAL_GRAPH_FILENAME = "InitialGraph.txt";
+    private static final int TRIALS = 20;
+
+    /**
+     * Tests that the query-only batches served by the replicas (while reading our
+     * own writes) give the same results as a single server receiving all the batches.
+     */
+    @Test
+    public void testReadYourWrites() throws Exception {
+        ServerImpl referenceServer = new ServerImpl
+                (new StatelessShortestPath(INITIAL_GRAPH_FILENAME), 4, 4);
+        ServerImpl primary = new ServerImpl(new MemoizedShortestPath(INITIAL_GRAPH_FILENAME), 4, 4);
+        ReplicaServer[] replicas = {
+                new ReplicaServer(new StatefulShortestPath(INITIAL_GRAPH_FILENAME), 4, 4, 5_000),
+                new ReplicaServer(new MemoizedShortestPath(INITIAL_GRAPH_FILENAME), 4, 4, 5_000)
+        };
+        for (ReplicaServer replica : replicas)
+            primary.addReplica(replica);
+        ReplicatedServer replicatedServer = new ReplicatedServer(primary, replicas, true);
+
+        BatchGenerator updateGenerator = new BatchGenerator(200, 30, 0.5, 0.7);
+        BatchGenerator queryGenerator = new BatchGenerator(200, 30, 1, 0.7);
+        for (int i = 0 ; i < TRIALS ; i++) {
+            Operation[] batch = (i % 3 == 0 ? updateGenerator : queryGenerator).generateBatch();
+            assertArrayEquals(referenceServer.executeBatch(batch).toArray(),
+                              replicatedServer.executeBatch(batch).toArray());
+        }
+    }
+
+    /**
+     * Tests that a landmark replica running in a separate process (with the landmark
+     * count and the node ordering of the primary) gives the same approximate bounds as
+     * the primary while the updates are streamed to it.
+     */
+    @Test
+    public void testLandmarkReplicaProcess() throws Exception {
+        int registryPortNumber;
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            registryPortNumber = serverSocket.getLocalPort();
+        }
+        Registry registry = LocateRegistry.createRegistry(registryPortNumber);
+        ServerImpl primary = new ServerImpl(new LandmarkShortestPath
+                (INITIAL_GRAPH_FILENAME, new ArrayGraphStore(), NodeOrdering.BFS, 3), 4, 4);
+        Process process = ReplicaLauncher.startReplicaProcess(0, "localhost", registryPortNumber,
+                "landmark", "array", INITIAL_GRAPH_FILENAME, 4, 4, 5_000, NodeOrdering.BFS, 3);
+        try {
+            VersionedServer replica = ReplicaLauncher.lookupReplicas(registry, 1, 30_000)[0];
+            primary.addReplica((Replica) replica);
+            BatchGenerator updateGenerator = new BatchGenerator(50, 30, 0, 0.7);
+            Random random = new Random(43);
+            for (int i = 0 ; i < TRIALS ; i++) {
+                long version = primary.executeVersionedBatch(updateGenerator.generateBatch(), 0).getVersion();
+                Operation[] queryBatch = new Operation[100];
+                for (int j = 0 ; j < queryBatch.length ; j++)
+                    queryBatch[j] = new OperationImpl(random.nextInt(30), random.nextInt(30),
+                            Integer.MAX_VALUE, OperationType.APPROXIMATE_QUERY);
+                assertArrayEquals(primary.executeVersionedBatch(queryBatch, version).getResults(),
+                                  replica.executeVersionedBatch(queryBatch, version).getResults());
+            }
+        } finally {
+            process.destroy();
+        }
+    }
+
+    /**
+     * Tests that a replica receiving an update transaction which skips a version
+     * rejects it without applying it, and so gets detached from the update stream.
+     */
+    @Test
+    public void testUpdateStreamGap() throws Exception {
+        ReplicaServer replica = new ReplicaServer
+                (new StatelessShortestPath(INITIAL_GRAPH_FILENAME), 4, 4, 100);
+        Operation[] queryBatch = new BatchGenerator(10, 30, 1, 1).generateBatch();
+        List<Operation> updateTransaction = List.of(new LocalOperation(1, 2, OperationType.ADD));
+        UpdateStream updateStream = new UpdateStream();
+        updateStream.addReplica(replica);
+        updateStream.publish(1, updateTransaction);
+        updateStream.publish(3, updateTransaction);
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (updateStream.hasReplicas() && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertFalse(updateStream.hasReplicas());
+        replica.executeVersionedBatch(queryBatch, 1);
+        assertThrows(RemoteException.class, () -> replica.executeVersionedBatch(queryBatch, 2));
+        assertThrows(RemoteException.class, () -> replica.applyUpdates(3, new int[0]));
+    }
+
+    /**
+     * Tests that replicas reject batches containing updates and batches asking for a
+     * version they can't reach.
+     */
+    @Test
+    public void testReplicaRejections() throws Exception {
+        ReplicaServer replica = new ReplicaServer
+                (new StatelessShortestPath(INITIAL_GRAPH_FILENAME), 4, 4, 100);
+        VersionedServer server = replica;
+        Operation[] updateBatch = new BatchGenerator(10, 30, 0, 1).generateBatch();
+        Operation[] queryBatch = new BatchGenerator(10, 30, 1, 1).generateBatch();
+        assertThrows(RemoteException.class, () -> server.executeBatch(updateBatch));
+        assertThrows(RemoteException.class, () -> server.executeVersionedBatch(queryBatch, 1));
+    }
+}
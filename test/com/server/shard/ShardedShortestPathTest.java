@@ -0,0 +1,102 @@
+package com.server.shard;
+
+import com.Operation;
+import com.client.BatchGenerator;
+import com.server.ServerImpl;
+import com.server.algorithm.StatelessShortestPath;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ShardedShortestPathTest {
+
+    private static final String INITIAL_GRAPH_FILENAME = "InitialGraph.txt";
+    private static final int TRIALS = 10;
+
+    /**
+     * Tests the distributed BFS against the stateless implementation using shards
+     * running in the same process.
+     */
+    @Test
+    public void testInProcessShards() throws Exception {
+        Shard[] shards = new Shard[3];
+        for (int i = 0 ; i < shards.length ; i++)
+            shards[i] = new ShardServer(i, shards.length, INITIAL_GRAPH_FILENAME);
+        compareWithStateless(shards);
+    }
+
+    /**
+     * Tests the distributed BFS against the stateless implementation using shards
+     * running in separate processes on localhost.
+     */
+    @Test
+    public void testMultiProcessShards() throws Exception {
+        int registryPortNumber;
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            registryPortNumber = serverSocket.getLocalPort();
+        }
+        Registry registry = LocateRegistry.createRegistry(registryPortNumber);
+        int shardCount = 2;
+        List<Process> processes = new ArrayList<>();
+        try {
+            for (int i = 0 ; i < shardCount ; i++)
+                processes.add(ShardLauncher.startShardProcess(i, shardCount, "localhost",
+                        registryPortNumber, INITIAL_GRAPH_FILENAME));
+            compareWithStateless(ShardLauncher.lookupShards(registry, shardCount, 30_000));
+        } finally {
+            for (Process process : processes)
+                process.destroy();
+        }
+    }
+
+    /**
+     * Tests that the shards load the nodes of the initial graph which only appear as
+     * destinations, same as the single process algorithms.
+     */
+    @Test
+    public void testInitialGraphNodes() throws Exception {
+        File graphFile = File.createTempFile("graph", ".txt");
+        graphFile.deleteOnExit();
+        try (PrintWriter writer = new PrintWriter(graphFile)) {
+            writer.println("1 2");
+            writer.println("2 3");
+            writer.println("3 7"); // 7, 8 & 9 are only destinations
+            writer.println("2 8");
+            writer.println("5 9");
+            writer.println("S");
+        }
+        Shard[] shards = new Shard[3];
+        for (int i = 0 ; i < shards.length ; i++)
+            shards[i] = new ShardServer(i, shards.length, graphFile.getPath());
+        StatelessShortestPath stateless = new StatelessShortestPath(graphFile.getPath());
+        ShardedShortestPath sharded = new ShardedShortestPath(shards);
+        for (int a = 0 ; a < 10 ; a++)
+            for (int b = 0 ; b < 10 ; b++)
+                assertEquals(stateless.queryShortestPath(a, b), sharded.queryShortestPath(a, b));
+    }
+
+    //
+    // Private Methods
+    //
+
+    private static void compareWithStateless(Shard[] shards) throws Exception {
+        ServerImpl statelessServer = new ServerImpl
+                (new StatelessShortestPath(INITIAL_GRAPH_FILENAME), 4, 4);
+        ServerImpl shardedServer = new ServerImpl(new ShardedShortestPath(shards), 4, 4);
+        BatchGenerator batchGenerator = new BatchGenerator(300, 30, 0.7, 0.7);
+        for (int i = 0 ; i < TRIALS ; i++) {
+            Operation[] batch = batchGenerator.generateBatch();
+            assertArrayEquals(statelessServer.executeBatch(batch).toArray(),
+                              shardedServer.executeBatch(batch).toArray());
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.server.snapshot;
+
+import com.server.algorithm.LazyStatefulShortestPath;
+import com.server.algorithm.MemoizedShortestPath;
+import com.server.algorithm.ShortestPathAlgorithm;
+import com.server.algorithm.StatefulShortestPath;
+import com.server.graph.ArrayGraphStore;
+import com.server.metrics.ServerMetrics;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DistanceSnapshotTest {
+
+    private static final String INITIAL_GRAPH_FILENAME = "InitialGraph.txt";
+    private static final int NODES_RANGE = 60;
+    private static final int QUERIES_COUNT = 2_000;
+
+    /**
+     * Tests that a stateful algorithm saves its state when it starts cold and that
+     * the next one restores it with the same answers.
+     */
+    @Test
+    public void testStatefulRestore() throws Exception {
+        File snapshotFile = createSnapshotFile();
+        StatefulShortestPath coldAlgorithm = new StatefulShortestPath
+                (INITIAL_GRAPH_FILENAME, new ArrayGraphStore(), snapshotFile);
+        assertTrue(snapshotFile.exists());
+        StatefulShortestPath warmAlgorithm = new StatefulShortestPath
+                (INITIAL_GRAPH_FILENAME, new ArrayGraphStore(), snapshotFile);
+        assertSameAnswers(coldAlgorithm, warmAlgorithm);
+
+        // Changing the graph stops saving until it's back to the initial one
+        coldAlgorithm.addNewEdge(NODES_RANGE, NODES_RANGE + 1);
+        coldAlgorithm.updateStateIfAny();
+        assertFalse(coldAlgorithm.saveSnapshot(snapshotFile));
+    }
+
+    /**
+     * Tests that a snapshot of another graph or another algorithm is ignored.
+     */
+    @Test
+    public void testMismatchedSnapshot() throws Exception {
+        File snapshotFile = createSnapshotFile();
+        new StatefulShortestPath(INITIAL_GRAPH_FILENAME, new ArrayGraphStore(), snapshotFile);
+        File otherGraphFile = File.createTempFile("graph", ".txt");
+        otherGraphFile.deleteOnExit();
+        try (PrintWriter writer = new PrintWriter(otherGraphFile)) {
+            writer.println("1 2");
+            writer.println("2 3");
+            writer.println("S");
+        }
+        StatefulShortestPath otherAlgorithm = new StatefulShortestPath
+                (otherGraphFile.getPath(), new ArrayGraphStore(), snapshotFile);
+        assertEquals(2, otherAlgorithm.queryShortestPath(1, 3));
+        assertEquals(-1, otherAlgorithm.queryShortestPath(3, 1));
+        assertNull(DistanceSnapshot.read(snapshotFile, "MemoizedShortestPath", 0, 3));
+    }
+
+    /**
+     * Tests that the memoized and the lazy algorithms restore the rows they had
+     * cached, so repeating the queries after a restart only hits the cache.
+     */
+    @Test
+    public void testWarmRowsRestore() throws Exception {
+        assertWarmRowsRestored(createSnapshotFile(), snapshotFile -> new MemoizedShortestPath
+                (INITIAL_GRAPH_FILENAME, new ArrayGraphStore(), snapshotFile));
+        assertWarmRowsRestored(createSnapshotFile(), snapshotFile -> new LazyStatefulShortestPath
+                (INITIAL_GRAPH_FILENAME, new ArrayGraphStore(), snapshotFile));
+    }
+
+    /**
+     * Tests that a truncated snapshot or a snapshot with an invalid source is ignored
+     * instead of failing the algorithm.
+     */
+    @Test
+    public void testCorruptedSnapshot() throws Exception {
+        File snapshotFile = createSnapshotFile();
+        MemoizedShortestPath coldAlgorithm = new MemoizedShortestPath
+                (INITIAL_GRAPH_FILENAME, new ArrayGraphStore(), snapshotFile);
+        int[] expectedPaths = runQueries(coldAlgorithm);
+        assertTrue(coldAlgorithm.saveSnapshot(snapshotFile));
+        byte[] snapshot = Files.readAllBytes(snapshotFile.toPath());
+
+        // Truncating the last row
+        Files.write(snapshotFile.toPath(), Arrays.copyOf(snapshot, snapshot.length - 4));
+        assertColdRestore(snapshotFile, expectedPaths);
+
+        // Replacing the source of the first row in the directory (after the header)
+        int directoryOffset = 12 + (("MemoizedShortestPath".length() + 3) & ~3) + 16;
+        ByteBuffer.wrap(snapshot).putInt(directoryOffset, 1_000_000);
+        Files.write(snapshotFile.toPath(), snapshot);
+        assertColdRestore(snapshotFile, expectedPaths);
+    }
+
+    //
+    // Private Methods
+    //
+
+    private static void assertColdRestore(File snapshotFile, int[] expectedPaths) throws Exception {
+        MemoizedShortestPath algorithm = new MemoizedShortestPath
+                (INITIAL_GRAPH_FILENAME, new ArrayGraphStore(), snapshotFile);
+        ServerMetrics metrics = new ServerMetrics();
+        algorithm.setMetrics(metrics);
+        int[] actualPaths = runQueries(algorithm);
+        for (int i = 0 ; i < QUERIES_COUNT ; i++)
+            assertEquals(expectedPaths[i], actualPaths[i]);
+        assertTrue(metrics.cacheMisses.sum() > 0); // Nothing was restored
+    }
+
+    private interface AlgorithmFactory {
+        ShortestPathAlgorithm create(File snapshotFile) throws Exception;
+    }
+
+    private static void assertWarmRowsRestored(File snapshotFile, AlgorithmFactory algorithmFactory)
+            throws Exception {
+        ShortestPathAlgorithm coldAlgorithm = algorithmFactory.create(snapshotFile);
+        ServerMetrics coldMetrics = new ServerMetrics();
+        coldAlgorithm.setMetrics(coldMetrics);
+        int[] expectedPaths = runQueries(coldAlgorithm);
+        assertTrue(coldAlgorithm.saveSnapshot(snapshotFile));
+
+        ShortestPathAlgorithm warmAlgorithm = algorithmFactory.create(snapshotFile);
+        ServerMetrics metrics = new ServerMetrics();
+        warmAlgorithm.setMetrics(metrics);
+        int[] actualPaths = runQueries(warmAlgorithm);
+        for (int i = 0 ; i < QUERIES_COUNT ; i++)
+            assertEquals(expectedPaths[i], actualPaths[i]);
+        assertTrue(coldMetrics.cacheMisses.sum() > 0);
+        assertEquals(0, metrics.cacheMisses.sum());
+        assertEquals(coldMetrics.cacheHits.sum() + coldMetrics.cacheMisses.sum(), metrics.cacheHits.sum());
+    }
+
+    private static int[] runQueries(ShortestPathAlgorithm algorithm) {
+        Random random = new Random(40);
+        int[] paths = new int[QUERIES_COUNT];
+        for (int i = 0 ; i < QUERIES_COUNT ; i++) {
+            // The sources are limited so every query after the first ones hits a row
+            int a = random.nextInt(NODES_RANGE / 10), b = random.nextInt(NODES_RANGE);
+            paths[i] = algorithm.queryShortestPath(a, b);
+        }
+        return paths;
+    }
+
+    private static void assertSameAnswers(ShortestPathAlgorithm expected, ShortestPathAlgorithm actual) {
+        for (int a = 0 ; a < NODES_RANGE ; a++)
+            for (int b = 0 ; b < NODES_RANGE ; b++)
+                assertEquals(expected.queryShortestPath(a, b), actual.queryShortestPath(a, b));
+    }
+
+    private static File createSnapshotFile() throws Exception {
+        File directory = Files.createTempDirectory("snapshot").toFile();
+        directory.deleteOnExit();
+        File snapshotFile = new File(directory, "state.snapshot");
+        snapshotFile.deleteOnExit();
+        return snapshotFile;
+    }
+}
@@ -0,0 +1,314 @@
+package com.transport;
+
+import com.Operation;
+import com.client.AsyncClient;
+import com.client.BatchGenerator;
+import com.server.LocalOperation;
+import com.server.ServerImpl;
+import com.server.algorithm.StatelessShortestPath;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TcpTransportTest {
+
+    private static final String INITIAL_GRAPH_FILENAME = "InitialGraph.txt";
+    private static final int BATCHES = 10;
+
+    /**
+     * Tests that the batches sent over TCP (pipelined on the same connection) give
+     * the same results as the batches executed directly on the server.
+     */
+    @Test
+    public void testPipelinedBatches() throws Exception {
+        ServerImpl directServer = new ServerImpl
+                (new StatelessShortestPath(INITIAL_GRAPH_FILENAME), 4, 4);
+        ServerImpl remoteServer = new ServerImpl
+                (new StatelessShortestPath(INITIAL_GRAPH_FILENAME), 4, 4);
+        BatchGenerator batchGenerator = new BatchGenerator(500, 30, 0.7, 0.7);
+
+        try (TcpServer tcpServer = new TcpServer(remoteServer, 0)) {
+            tcpServer.start();
+            try (TcpServerStub stub = new TcpServerStub("localhost", tcpServer.getPortNumber())) {
+                List<Operation[]> batches = new ArrayList<>();
+                List<CompletableFuture<int[]>> futures = new ArrayList<>();
+                for (int i = 0 ; i < BATCHES ; i++) {
+                    Operation[] batch = batchGenerator.generateBatch();
+                    batches.add(batch);
+                    futures.add(stub.submitBatch(batch));
+                }
+                for (int i = 0 ; i < BATCHES ; i++) {
+                    Object[] expected = directServer.executeBatch(batches.get(i)).toArray();
+                    Object[] actual = Arrays.stream(futures.get(i).get()).boxed().toArray();
+                    assertArrayEquals(expected, actual);
+                }
+
+                // Blocking calls through the Server interface
+                Operation[] batch = batchGenerator.generateBatch();
+                assertArrayEquals(directServer.executeBatch(batch).toArray(),
+                                  stub.executeBatch(batch).toArray());
+            }
+        }
+    }
+
+    /**
+     * Tests that the async client completes the batches in order while keeping at
+     * most the configured number of batches in flight.
+     */
+    @Test
+    public void testAsyncClient() throws Exception {
+        ServerImpl directServer = new ServerImpl
+                (new StatelessShortestPath(INITIAL_GRAPH_FILENAME), 4, 4);
+        ServerImpl remoteServer = new ServerImpl
+                (new StatelessShortestPath(INITIAL_GRAPH_FILENAME), 4, 4);
+        BatchGenerator batchGenerator = new BatchGenerator(500, 30, 0.7, 0.7);
+
+        try (TcpServer tcpServer = new TcpServer(remoteServer, 0);
+             TcpServerStub stub = startAndConnect(tcpServer);
+             AsyncClient asyncClient = new AsyncClient(stub, 3)) {
+            List<Operation[]> batches = new ArrayList<>();
+            List<CompletableFuture<int[]>> futures = new ArrayList<>();
+            List<Integer> completionOrder = new ArrayList<>();
+            for (int i = 0 ; i < BATCHES ; i++) {
+                Operation[] batch = batchGenerator.generateBatch();
+                final int batchIndex = i;
+                batches.add(batch);
+                futures.add(asyncClient.submitBatch(batch).whenComplete((result, exception) -> {
+                    synchronized (completionOrder) {
+                        completionOrder.add(batchIndex);
+                    }
+                }));
+            }
+            for (int i = 0 ; i < BATCHES ; i++) {
+                Object[] expected = directServer.executeBatch(batches.get(i)).toArray();
+                Object[] actual = Arrays.stream(futures.get(i).get()).boxed().toArray();
+                assertArrayEquals(expected, actual);
+            }
+            for (int i = 0 ; i < BATCHES ; i++)
+                assertEquals(i, completionOrder.get(i));
+            assertEquals(BATCHES, asyncClient.getLatency().getCount());
+        }
+    }
+
+    /**
+     * Tests that the results streamed per query transaction add up to the result of
+     * the whole batch.
+     */
+    @Test
+    public void testStreamingBatches() throws Exception {
+        ServerImpl directServer = new ServerImpl
+                (new StatelessShortestPath(INITIAL_GRAPH_FILENAME), 4, 4);
+        ServerImpl remoteServer = new ServerImpl
+                (new StatelessShortestPath(INITIAL_GRAPH_FILENAME), 4, 4);
+        BatchGenerator batchGenerator = new BatchGenerator(500, 30, 0.7, 0.7);
+
+        try (TcpServer tcpServer = new TcpServer(remoteServer, 0);
+             TcpServerStub stub = startAndConnect(tcpServer);
+             AsyncClient asyncClient = new AsyncClient(stub, 2)) {
+            for (int i = 0 ; i < BATCHES ; i++) {
+                Operation[] batch = batchGenerator.generateBatch();
+                List<Integer> streamedResult = Collections.synchronizedList(new ArrayList<>());
+                CompletableFuture<Void> completed = new CompletableFuture<>();
+                asyncClient.submitBatchStreaming(batch, new Flow.Subscriber<>() {
+                    public void onSubscribe(Flow.Subscription subscription) {
+                        subscription.request(Long.MAX_VALUE);
+                    }
+                    public void onNext(int[] results) {
+                        for (int result : results) streamedResult.add(result);
+                    }
+                    public void onError(Throwable throwable) {
+                        completed.completeExceptionally(throwable);
+                    }
+                    public void onComplete() {
+                        completed.complete(null);
+                    }
+                });
+                completed.get();
+                assertArrayEquals(directServer.executeBatch(batch).toArray(), streamedResult.toArray());
+            }
+        }
+    }
+
+    /**
+     * Tests that the batches pipelined on several connections at the same time give
+     * their results in the order of each connection.
+     */
+    @Test
+    public void testConcurrentConnections() throws Exception {
+        ServerImpl directServer = new ServerImpl
+                (new StatelessShortestPath(INITIAL_GRAPH_FILENAME), 4, 4);
+        ServerImpl remoteServer = new ServerImpl
+                (new StatelessShortestPath(INITIAL_GRAPH_FILENAME), 4, 4);
+        BatchGenerator batchGenerator = new BatchGenerator(500, 30, 1.0, 0.7); // Query-only batches
+
+        try (TcpServer tcpServer = new TcpServer(remoteServer, 0)) {
+            tcpServer.start();
+            TcpServerStub[] stubs = new TcpServerStub[4];
+            for (int i = 0 ; i < stubs.length ; i++)
+                stubs[i] = new TcpServerStub("localhost", tcpServer.getPortNumber());
+            try {
+                List<Operation[]> batches = new ArrayList<>();
+                List<CompletableFuture<int[]>> futures = new ArrayList<>();
+                for (int i = 0 ; i < BATCHES * stubs.length ; i++) {
+                    Operation[] batch = batchGenerator.generateBatch();
+                    batches.add(batch);
+                    futures.add(stubs[i % stubs.length].submitBatch(batch));
+                }
+                for (int i = 0 ; i < batches.size() ; i++) {
+                    Object[] expected = directServer.executeBatch(batches.get(i)).toArray();
+                    Object[] actual = Arrays.stream(futures.get(i).get()).boxed().toArray();
+                    assertArrayEquals(expected, actual);
+                }
+            } finally {
+                for (TcpServerStub stub : stubs)
+                    stub.close();
+            }
+        }
+    }
+
+    /**
+     * Tests that a malformed request frame only closes its own connection while the
+     * other connections are still served.
+     */
+    @Test
+    public void testMalformedFrames() throws Exception {
+        ServerImpl directServer = new ServerImpl
+                (new StatelessShortestPath(INITIAL_GRAPH_FILENAME), 4, 4);
+        ServerImpl remoteServer = new ServerImpl
+                (new StatelessShortestPath(INITIAL_GRAPH_FILENAME), 4, 4);
+        BatchGenerator batchGenerator = new BatchGenerator(100, 30, 0.7, 0.7);
+        ByteBuffer[] malformedFrames = {
+                ByteBuffer.allocate(8).putInt(4).putInt(0), // Shorter than the request header
+                requestFrame(1).putInt(13, 5), // More operations than the frame holds
+                requestFrame(1).putInt(13, -1), // Negative operations count
+                requestFrame(1).put(17, (byte) 100), // Unknown operation type
+        };
+
+        try (TcpServer tcpServer = new TcpServer(remoteServer, 0);
+             TcpServerStub stub = startAndConnect(tcpServer)) {
+            for (ByteBuffer malformedFrame : malformedFrames) {
+                try (SocketChannel channel = SocketChannel.open
+                        (new InetSocketAddress("localhost", tcpServer.getPortNumber()))) {
+                    channel.write(malformedFrame.flip());
+                    assertEquals(-1, channel.read(ByteBuffer.allocate(64))); // Closed by the server
+                }
+                Operation[] batch = batchGenerator.generateBatch();
+                assertEquals(directServer.executeBatch(batch), stub.executeBatch(batch));
+            }
+        }
+    }
+
+    /**
+     * Tests that the streamed results exceeding the queued responses limit are all
+     * received by a client which only starts reading after a while.
+     */
+    @Test
+    public void testSlowStreamingReader() throws Exception {
+        ServerImpl server = new ServerImpl(new StatelessShortestPath(INITIAL_GRAPH_FILENAME), 4, 4);
+        int count = 1_200_000; // The results exceed the high water mark of the queued responses
+        try (TcpServer tcpServer = new TcpServer(server, 0);
+             SocketChannel channel = SocketChannel.open
+                     (new InetSocketAddress("localhost", startAndGetPort(tcpServer)))) {
+            Operation[] batch = new Operation[count];
+            for (int i = 0 ; i < count ; i++)
+                batch[i] = new LocalOperation(i % 5, 1, Operation.OperationType.QUERY);
+            channel.write(BinaryProtocol.encodeBatch(7, BinaryProtocol.MODE_STREAMING, batch));
+            Thread.sleep(500);
+
+            int results = 0;
+            while (true) {
+                ByteBuffer frame = readFrame(channel);
+                assertEquals(7, frame.getLong());
+                byte status = frame.get();
+                results += BinaryProtocol.decodeResult(frame).length;
+                if (status == BinaryProtocol.STATUS_OK) break;
+                assertEquals(BinaryProtocol.STATUS_PARTIAL, status);
+            }
+            assertEquals(count, results);
+        }
+    }
+
+    /**
+     * Tests that a client which never reads its responses doesn't hold the other
+     * connections: their results are received while its streamed results exceed the
+     * high water mark of its queued responses.
+     */
+    @Test
+    public void testStalledReader() throws Exception {
+        ServerImpl directServer = new ServerImpl
+                (new StatelessShortestPath(INITIAL_GRAPH_FILENAME), 4, 4);
+        ServerImpl remoteServer = new ServerImpl
+                (new StatelessShortestPath(INITIAL_GRAPH_FILENAME), 4, 4);
+        BatchGenerator batchGenerator = new BatchGenerator(500, 30, 0.7, 0.7);
+        Operation[] stalledBatch = new Operation[1_200_000]; // 200 query transactions
+        for (int i = 0 ; i < stalledBatch.length ; i++)
+            stalledBatch[i] = i % 6000 == 5999 ? new LocalOperation(1, 2, Operation.OperationType.ADD)
+                    : new LocalOperation(i % 5, 1, Operation.OperationType.QUERY);
+
+        try (TcpServer tcpServer = new TcpServer(remoteServer, 0);
+             SocketChannel stalledChannel = SocketChannel.open
+                     (new InetSocketAddress("localhost", startAndGetPort(tcpServer)));
+             TcpServerStub stub = new TcpServerStub("localhost", tcpServer.getPortNumber())) {
+            for (int i = 0 ; i < 3 ; i++) // Never read
+                stalledChannel.write(BinaryProtocol.encodeBatch
+                        (i, BinaryProtocol.MODE_STREAMING, stalledBatch));
+            for (int i = 0 ; i < BATCHES ; i++) {
+                Operation[] batch = batchGenerator.generateBatch();
+                int[] result = stub.submitBatch(batch).get(10, TimeUnit.SECONDS);
+                assertArrayEquals(directServer.executeBatch(batch).toArray(),
+                                  Arrays.stream(result).boxed().toArray());
+            }
+        }
+    }
+
+    //
+    // Private Methods
+    //
+
+    private static int startAndGetPort(TcpServer tcpServer) throws IOException {
+        tcpServer.start();
+        return tcpServer.getPortNumber();
+    }
+
+    private static ByteBuffer readFrame(SocketChannel channel) throws IOException {
+        ByteBuffer header = readFully(channel, ByteBuffer.allocate(BinaryProtocol.FRAME_HEADER_SIZE));
+        return readFully(channel, ByteBuffer.allocate(header.getInt()));
+    }
+
+    private static ByteBuffer readFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            if (channel.read(buffer) < 0) throw new IOException("Connection closed");
+        return buffer.flip();
+    }
+
+    /**
+     * Returns a well formed request frame with the given number of queries (written
+     * up to its end) whose fields can be corrupted.
+     */
+    private static ByteBuffer requestFrame(int count) {
+        int frameLength = BinaryProtocol.MIN_REQUEST_FRAME_SIZE + count * (1 + 3 * Integer.BYTES);
+        ByteBuffer frame = ByteBuffer.allocate(BinaryProtocol.FRAME_HEADER_SIZE + frameLength);
+        frame.putInt(frameLength).putLong(1).put(BinaryProtocol.MODE_BATCH).putInt(count);
+        for (int i = 0 ; i < count ; i++)
+            frame.put((byte) Operation.OperationType.QUERY.ordinal()).putInt(0).putInt(1).putInt(0);
+        return frame;
+    }
+
+    private static TcpServerStub startAndConnect(TcpServer tcpServer) throws IOException {
+        tcpServer.start();
+        return new TcpServerStub("localhost", tcpServer.getPortNumber());
+    }
+}